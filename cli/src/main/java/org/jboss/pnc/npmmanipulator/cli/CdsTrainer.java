@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs representative manipulations of a bundled sample workspace, so that the classes they need can be dumped to a
+ * Class Data Sharing archive by running it under {@code -XX:ArchiveClassesAtExit}. It is started by
+ * {@code Cli --train-cds}.
+ */
+public class CdsTrainer {
+
+    /** The files of the bundled sample workspace, relative to {@link #SAMPLE_RESOURCE}. */
+    static final String[] SAMPLE_FILES = { "package.json", "package-lock.json", "packages/lib/package.json" };
+
+    private static final String SAMPLE_RESOURCE = "cds-sample/";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CdsTrainer.class);
+
+    public static void main(String[] args) {
+        int failures;
+        try {
+            failures = train();
+        } catch (IOException ex) {
+            LOGGER.error("CDS training failed; original error is: {}", ex.getMessage());
+            LOGGER.debug("CDS training error trace is", ex);
+            failures = 1;
+        }
+        System.exit(failures == 0 ? 0 : 10);
+    }
+
+    /**
+     * Runs the training manipulations, each on a fresh copy of the sample workspace.
+     *
+     * @return the number of failed manipulations
+     * @throws IOException in case the sample cannot be extracted
+     */
+    static int train() throws IOException {
+        List<String[]> runs = new ArrayList<>();
+        runs.add(new String[] { "-DversionOverride=1.0.0-cds-1" });
+        runs.add(new String[] { "-DpackageScope=cds", "-Dworkspaces=true", "-DversionSuffixOverride=cds-1" });
+        runs.add(
+                new String[] { "-DdependencyOverride.express=4.17.1", "-DdevDependencyOverride.grunt=1.0.5",
+                        "-DregistryOverride.https://registry.npmjs.org/=https://mirror.example.com/npm/" });
+        runs.add(new String[] { "-Dworkspaces=true", "-DversionLockstep=true", "-DversionOverride=1.0.1" });
+
+        int failures = 0;
+        Path workDir = Files.createTempDirectory("npm-manipulator-cds");
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                File sample = extractSample(workDir.resolve("run" + i));
+                List<String> args = new ArrayList<>();
+                args.add("-f");
+                args.add(sample.getPath());
+                args.add("-r");
+                args.add(new File(sample, "result.json").getPath());
+                for (String arg : runs.get(i)) {
+                    args.add(arg);
+                }
+                if (new Cli(sample, true).run(args.toArray(new String[0])) != 0) {
+                    failures++;
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(workDir.toFile());
+        }
+        return failures;
+    }
+
+    private static File extractSample(Path dir) throws IOException {
+        for (String file : SAMPLE_FILES) {
+            Path target = dir.resolve(file);
+            Files.createDirectories(target.getParent());
+            try (InputStream in = CdsTrainer.class.getClassLoader().getResourceAsStream(SAMPLE_RESOURCE + file)) {
+                if (in == null) {
+                    throw new IOException("Missing bundled sample file " + SAMPLE_RESOURCE + file);
+                }
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return dir.toFile();
+    }
+
+}
@@ -21,14 +21,15 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import org.apache.commons.cli.CommandLine;
@@ -38,17 +39,23 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.io.FileUtils;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
 import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
+import org.jboss.pnc.npmmanipulator.api.VerificationException;
+import org.jboss.pnc.npmmanipulator.core.JfrMetricsObserver;
+import org.jboss.pnc.npmmanipulator.core.ManipulationManager;
+import org.jboss.pnc.npmmanipulator.impl.NpmManipulationSession;
 import org.jboss.pnc.npmmanipulator.impl.NpmManipulationSessionFactory;
+import org.jboss.pnc.npmmanipulator.impl.NpmResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
-import com.ongres.process.FluentProcess;
-import com.ongres.process.FluentProcessBuilder;
-import com.ongres.process.Output;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redhat.resilience.otel.OTelCLIHelper;
 
 import ch.qos.logback.classic.Level;
@@ -56,6 +63,7 @@ import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.FileAppender;
+import jdk.jfr.Recording;
 
 public class Cli {
 
@@ -68,7 +76,35 @@ public class Cli {
     private final ManipulationManager manipulationManager = new ManipulationManager<>();
 
     /** Properties a user may define on the command line. */
-    private Properties userProps;
+    private Properties userProps = new Properties();
+
+    /** The directory relative paths are resolved against, null for the current directory. */
+    private final File workingDir;
+
+    /**
+     * Whether the JVM is shared with other runs, e.g. in the daemon. In that case the logging configuration is restored
+     * after the run instead of being reset.
+     */
+    private final boolean sharedJvm;
+
+    /** The stream the patches of the dry run and verify modes are printed to when there is no result file. */
+    private final PrintStream out;
+
+    private File resultFile;
+
+    public Cli() {
+        this(null, false);
+    }
+
+    Cli(File workingDir, boolean sharedJvm) {
+        this(workingDir, sharedJvm, System.out);
+    }
+
+    Cli(File workingDir, boolean sharedJvm, PrintStream out) {
+        this.workingDir = workingDir;
+        this.sharedJvm = sharedJvm;
+        this.out = out;
+    }
 
     public static void main(String[] args) {
         System.exit(new Cli().run(args));
@@ -102,6 +138,36 @@ public class Cli {
                 Option.builder("l").longOpt("log").desc("Log file to output logging to").numberOfArgs(1).build());
         options.addOption(
                 Option.builder("D").hasArgs().numberOfArgs(2).valueSeparator('=').desc("Java Properties").build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("daemon")
+                        .desc("Start a daemon serving the manipulation requests of the DaemonClient launcher.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("daemon-file")
+                        .numberOfArgs(1)
+                        .desc("State file of the daemon. Defaults to a per-user file in the temporary directory.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("daemon-idle-timeout")
+                        .numberOfArgs(1)
+                        .desc("Minutes without requests after which the daemon stops. Defaults to 30.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("train-cds")
+                        .numberOfArgs(1)
+                        .desc(
+                                "Generate a Class Data Sharing archive by running sample manipulations. Requires Java 13 or newer.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("jfr")
+                        .numberOfArgs(1)
+                        .desc("Record the manipulation with Java Flight Recorder to the given file.")
+                        .build());
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd;
@@ -119,7 +185,13 @@ public class Cli {
         if (cmd.hasOption('h')) {
             HelpFormatter formatter = new HelpFormatter();
             formatter.printHelp("...", options);
-            System.exit(0);
+            return 0;
+        }
+        if (cmd.hasOption("daemon")) {
+            return runDaemon(cmd);
+        }
+        if (cmd.hasOption("train-cds")) {
+            return trainCds(resolve(cmd.getOptionValue("train-cds")));
         }
         if (cmd.hasOption('D')) {
             userProps = cmd.getOptionProperties("D");
@@ -127,14 +199,16 @@ public class Cli {
 
         File projectFile;
         if (cmd.hasOption('f')) {
-            projectFile = new File(cmd.getOptionValue('f'));
+            projectFile = resolve(cmd.getOptionValue('f'));
+        } else if (workingDir != null) {
+            projectFile = workingDir;
         } else {
             projectFile = new File(System.getProperty("user.dir"));
         }
 
         File result = null;
         if (cmd.hasOption('r')) {
-            result = new File(cmd.getOptionValue('r'));
+            result = resolve(cmd.getOptionValue('r'));
         }
 
         if (cmd.hasOption("log-context")) {
@@ -145,30 +219,37 @@ public class Cli {
             }
         }
 
+        resultFile = result;
         createSession(projectFile, result);
 
+        File jfrFile = cmd.hasOption("jfr") ? resolve(cmd.getOptionValue("jfr")) : null;
+
         final Logger rootLogger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
 
         final ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) rootLogger;
+        final Level originalLevel = root.getLevel();
+        FileAppender<ILoggingEvent> fileAppender = null;
 
         if (cmd.hasOption('l')) {
             if (runningInContainer()) {
                 logger.warn("Disabling log file as running in container!");
             } else {
                 LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-                loggerContext.reset();
+                if (!sharedJvm) {
+                    loggerContext.reset();
+                }
 
                 PatternLayoutEncoder ple = new PatternLayoutEncoder();
                 ple.setPattern("%mdc{LOG-CONTEXT}%level %logger{36} %msg%n");
                 ple.setContext(loggerContext);
                 ple.start();
 
-                FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+                fileAppender = new FileAppender<>();
                 fileAppender.setEncoder(ple);
                 fileAppender.setContext(loggerContext);
                 fileAppender.setName("fileLogging");
                 fileAppender.setAppend(false);
-                fileAppender.setFile(cmd.getOptionValue("l"));
+                fileAppender.setFile(resolve(cmd.getOptionValue("l")).getPath());
                 fileAppender.start();
 
                 root.addAppender(fileAppender);
@@ -183,15 +264,35 @@ public class Cli {
             root.setLevel(Level.TRACE);
         }
 
+        try {
+            return manipulate(projectFile, jfrFile);
+        } finally {
+            if (sharedJvm) {
+                // leave the logging as it was for the next run
+                root.setLevel(originalLevel);
+                if (fileAppender != null) {
+                    root.detachAppender(fileAppender);
+                    fileAppender.stop();
+                }
+            }
+        }
+    }
+
+    private int manipulate(File projectFile, File jfrFile) {
         if (!projectFile.exists()) {
             logger.info("NPM Manipulation failed. File {} cannot be found.", projectFile);
             return 10;
         }
 
+        // the OpenTelemetry classes are loaded only when it is enabled
+        boolean otelStarted = false;
+        AutoCloseable otelMetrics = null;
+        Recording recording = null;
+
         try {
-            if (userProps.containsKey("preScript")) {
-                // Value is a comma separated list of URLs
-                resolveScripts(userProps.getProperty("preScript").split(",")).forEach(this::executeScript);
+            if (jfrFile != null) {
+                recording = JfrMetricsObserver.startRecording(session.getMetrics(), jfrFile.toPath());
+                logger.info("Recording the manipulation to {}", jfrFile);
             }
 
             String endpoint = System.getenv("OTEL_EXPORTER_OTLP_ENDPOINT");
@@ -205,14 +306,55 @@ public class Cli {
                         service,
                         "cli",
                         OTelCLIHelper.defaultSpanProcessor(OTelCLIHelper.defaultSpanExporter(endpoint)));
+                otelStarted = true;
+                otelMetrics = OTelMetricsObserver.start(session.getMetrics(), endpoint, service);
+            }
+
+            // Values are comma separated stages of scripts run concurrently, all of them are downloaded at once and
+            // the post scripts are downloaded while the manipulation runs
+            List<List<String>> preScriptStages = userProps.containsKey("preScript")
+                    ? ScriptRunner.parseStages(userProps.getProperty("preScript"))
+                    : null;
+            List<List<String>> postScriptStages = userProps.containsKey("postScript")
+                    ? ScriptRunner.parseStages(userProps.getProperty("postScript"))
+                    : null;
+            CompletableFuture<List<File>> preScripts = null;
+            CompletableFuture<List<File>> postScripts = null;
+            ScriptRunner scriptRunner = null;
+            long stageTimeout = 0;
+            if (preScriptStages != null || postScriptStages != null) {
+                scriptRunner = createScriptRunner();
+                stageTimeout = getNonNegativeProperty(ScriptRunner.SCRIPT_STAGE_TIMEOUT_PARAM, 0);
+                ScriptCache scriptCache = ScriptCache.create(userProps, workingDir);
+                if (preScriptStages != null) {
+                    preScripts = scriptCache.fetch(flatten(preScriptStages));
+                }
+                if (postScriptStages != null) {
+                    postScripts = scriptCache.fetch(flatten(postScriptStages));
+                }
             }
+
+            if (preScripts != null) {
+                try (Timer timer = session.getMetrics().start(ManipulationMetrics.PRE_SCRIPT)) {
+                    executeScripts(scriptRunner, stageTimeout, preScriptStages, ScriptCache.get(preScripts));
+                }
+            }
+
             manipulationManager.init(session);
             manipulationManager.scanAndApply(session);
+            printPatches();
 
-            if (userProps.containsKey("postScript")) {
-                // Value is a comma separated list of URLs
-                resolveScripts(userProps.getProperty("postScript").split(",")).forEach(this::executeScript);
+            if (postScripts != null) {
+                try (Timer timer = session.getMetrics().start(ManipulationMetrics.POST_SCRIPT)) {
+                    executeScripts(scriptRunner, stageTimeout, postScriptStages, ScriptCache.get(postScripts));
+                }
+                // include the post script in the metrics of the result
+                session.writeResult();
             }
+        } catch (VerificationException ex) {
+            printPatches();
+            logger.error(ex.getMessage());
+            return 20;
         } catch (ManipulationException ex) {
             logger.error("Project Manipulation failed; original error is: {}", ex.getMessage());
             logger.debug("Project Manipulation error trace is", ex);
@@ -221,11 +363,91 @@ public class Cli {
             logger.error("Project Manipulation failed.", ex);
             return 100;
         } finally {
-            OTelCLIHelper.stopOTel();
+            if (otelMetrics != null) {
+                try {
+                    otelMetrics.close();
+                } catch (Exception ex) {
+                    logger.warn("Exporting the OpenTelemetry metrics failed: {}", ex.getMessage());
+                }
+            }
+            if (otelStarted) {
+                OTelCLIHelper.stopOTel();
+            }
+            if (recording != null) {
+                // stopping writes the recording to its destination
+                recording.stop();
+                recording.close();
+            }
         }
         return 0;
     }
 
+    private int runDaemon(CommandLine cmd) {
+        Path stateFile = cmd.hasOption("daemon-file") ? resolve(cmd.getOptionValue("daemon-file")).toPath()
+                : DaemonProtocol.getStateFile();
+        Duration idleTimeout = Daemon.DEFAULT_IDLE_TIMEOUT;
+        if (cmd.hasOption("daemon-idle-timeout")) {
+            try {
+                idleTimeout = Duration.ofMinutes(Long.parseLong(cmd.getOptionValue("daemon-idle-timeout")));
+            } catch (NumberFormatException ex) {
+                System.err.println("Invalid daemon idle timeout: " + cmd.getOptionValue("daemon-idle-timeout"));
+                return 10;
+            }
+        }
+        try {
+            new Daemon(stateFile, idleTimeout).run();
+        } catch (IOException ex) {
+            logger.error("Daemon failed; original error is: {}", ex.getMessage());
+            logger.debug("Daemon error trace is", ex);
+            return 100;
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the {@link CdsTrainer} in a new JVM dumping the loaded classes to the archive at exit. The launcher script
+     * uses the archive when it is found next to the jar.
+     */
+    private int trainCds(File archive) {
+        if (Runtime.version().feature() < 13) {
+            logger.error("Generating a CDS archive requires Java 13 or newer, running on {}.", Runtime.version());
+            return 10;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CdsTrainer.class.getName());
+
+        logger.info("Generating CDS archive {}", archive);
+        try {
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || !archive.isFile()) {
+                logger.error("Generating CDS archive {} failed with exit code {}.", archive, exitCode);
+                return exitCode == 0 ? 100 : exitCode;
+            }
+        } catch (IOException ex) {
+            logger.error("Generating CDS archive failed; original error is: {}", ex.getMessage());
+            logger.debug("CDS archive error trace is", ex);
+            return 100;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 100;
+        }
+        logger.info("CDS archive {} was generated.", archive);
+        return 0;
+    }
+
+    private File resolve(String path) {
+        File file = new File(path);
+        if (workingDir == null || file.isAbsolute()) {
+            return file;
+        }
+        return new File(workingDir, path);
+    }
+
     private void createSession(File projectFile, File resultFile) {
         session = NpmManipulationSessionFactory
                 .createSession(projectFile, resultFile, System.getProperties(), userProps);
@@ -256,40 +478,84 @@ public class Cli {
         return result;
     }
 
-    List<File> resolveScripts(String[] scripts) throws IOException {
-        final List<File> results = new ArrayList<>(scripts.length);
-        for (final String script : scripts) {
-            logger.info("Attempting to read URL {}", script);
-            URL ref = new URL(script);
-            File result;
-            if (!"file".equals(ref.getProtocol())) {
-                result = Files.createTempFile(UUID.randomUUID().toString(), null).toFile();
-                FileUtils.copyURLToFile(ref, result);
-            } else {
-                result = new File(ref.getPath());
+    /**
+     * Prints the patches recorded in the dry run or verify mode when there is no result file to record them in.
+     */
+    private void printPatches() {
+        boolean verify = Boolean.parseBoolean(userProps.getProperty(ManipulationManager.VERIFY_PROPERTY));
+        boolean dryRun = Boolean.parseBoolean(userProps.getProperty(NpmManipulationSession.DRY_RUN_PARAM));
+        if (resultFile == null && (dryRun || verify) && session.getResult() instanceof NpmResult) {
+            try {
+                out.println(
+                        new ObjectMapper().writer(new DefaultPrettyPrinter())
+                                .writeValueAsString(((NpmResult) session.getResult()).getPatches()));
+            } catch (JsonProcessingException ex) {
+                logger.error("Error when printing the patches: " + ex.getMessage(), ex);
             }
-            results.add(result);
         }
-        return results;
     }
 
-    void executeScript(File resolvedScript) {
-        // https://gitlab.com/ongresinc/fluent-process
-        logger.info("Executing script {}", resolvedScript);
-        FluentProcessBuilder builder = new FluentProcessBuilder(resolvedScript.toString())
-                .allowedExitCode(0)
-                .dontCloseAfterLast();
-        try (FluentProcess process = builder.start()) {
-            Output output = process.tryGet();
-            if (output.error().isPresent()) {
-                logger.error(output.error().get());
-            }
-            if (output.output().isPresent()) {
-                logger.info(output.output().get());
+    List<File> resolveScripts(String[] scripts) throws IOException {
+        return ScriptCache.get(ScriptCache.create(userProps, workingDir).fetch(scripts));
+    }
+
+    void executeScript(File resolvedScript) throws ManipulationException {
+        createScriptRunner().run(resolvedScript, resolvedScript.getName());
+    }
+
+    /**
+     * Executes the script stages one by one, naming the scripts by the last segment of their URLs.
+     */
+    private static void executeScripts(
+            ScriptRunner runner,
+            long timeout,
+            List<List<String>> stages,
+            List<File> resolvedScripts) {
+        int index = 0;
+        for (List<String> stage : stages) {
+            List<String> names = new ArrayList<>();
+            for (String url : stage) {
+                names.add(ScriptRunner.scriptName(url));
             }
-            if (output.exception().isPresent()) {
-                throw new RuntimeException("Problem executing script", output.exception().get());
+            runner.runStage(resolvedScripts.subList(index, index + stage.size()), names, timeout);
+            index += stage.size();
+        }
+    }
+
+    private ScriptRunner createScriptRunner() throws ManipulationException {
+        ManipulationMetrics metrics = session == null ? ManipulationMetrics.disabled() : session.getMetrics();
+        long outputLimit = getNonNegativeProperty(
+                ScriptRunner.SCRIPT_OUTPUT_LIMIT_PARAM,
+                ScriptRunner.DEFAULT_OUTPUT_LIMIT);
+        return new ScriptRunner(metrics, (int) Math.min(outputLimit, Integer.MAX_VALUE), workingDir);
+    }
+
+    /**
+     * @param name the name of the user property
+     * @param defaultValue the value used when the property is not set
+     * @return the non-negative number the property is set to
+     * @throws ManipulationException in case the property is not a non-negative number
+     */
+    private long getNonNegativeProperty(String name, long defaultValue) throws ManipulationException {
+        String value = userProps.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= 0) {
+                return number;
             }
+        } catch (NumberFormatException ex) {
+            // reported below
         }
+        throw new ManipulationException(
+                "Invalid value '{}' of property {}, a non-negative number is expected.",
+                value,
+                name);
+    }
+
+    private static String[] flatten(List<List<String>> stages) {
+        return stages.stream().flatMap(List::stream).toArray(String[]::new);
     }
 }
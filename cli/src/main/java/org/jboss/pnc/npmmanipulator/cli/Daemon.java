@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Long-running process keeping a warmed-up JVM to serve manipulation requests of the {@link DaemonClient}, so that the
+ * JVM startup, class loading and JIT warm-up are paid only once. The daemon listens on an ephemeral loopback port that
+ * is written to the state file together with a random token the clients have to send. The requests are served one at
+ * a time, each with a clean MDC, and the log messages of a request are streamed back to its client. The daemon stops
+ * when no request arrives within the idle timeout.
+ */
+public class Daemon {
+
+    /** The default time after the last request when the daemon stops. */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    /** The time a client has to send each part of its request. */
+    static final Duration READ_TIMEOUT = Duration.ofSeconds(30);
+
+    /** MDC key identifying the request the log messages belong to. */
+    static final String REQUEST_ID = "DAEMON-REQUEST";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path stateFile;
+
+    private final Duration idleTimeout;
+
+    private final String token;
+
+    public Daemon(Path stateFile, Duration idleTimeout) {
+        this.stateFile = stateFile;
+        this.idleTimeout = idleTimeout;
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Serves the requests until the idle timeout passes.
+     *
+     * @throws IOException in case the daemon cannot listen or write its state file
+     */
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) idleTimeout.toMillis());
+            writeStateFile(server.getLocalPort());
+            logger.info("Daemon is listening on port {}, state file is {}", server.getLocalPort(), stateFile);
+
+            while (true) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException ex) {
+                    logger.info("No request received in {}, stopping the daemon.", idleTimeout);
+                    break;
+                }
+                // a stalled or broken client must not block or stop the daemon
+                try (Socket s = socket) {
+                    s.setSoTimeout((int) READ_TIMEOUT.toMillis());
+                    handle(s);
+                } catch (IOException ex) {
+                    logger.warn("Daemon request failed: {}", ex.getMessage());
+                    logger.debug("Daemon request error trace is", ex);
+                } catch (RuntimeException | OutOfMemoryError ex) {
+                    logger.error("Daemon request failed.", ex);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    private void writeStateFile(int port) throws IOException {
+        Properties state = new Properties();
+        state.setProperty(DaemonProtocol.PORT_KEY, String.valueOf(port));
+        state.setProperty(DaemonProtocol.TOKEN_KEY, token);
+
+        // the token must not be readable by other users
+        Path temp = stateFile.toAbsolutePath().resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, "npm-manipulator daemon");
+        }
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        if (!token.equals(DaemonProtocol.readString(in))) {
+            logger.warn("Rejecting daemon request with an invalid token.");
+            return;
+        }
+        File workingDir = new File(DaemonProtocol.readString(in));
+        String[] args = new String[DaemonProtocol.readCount(in, DaemonProtocol.MAX_ARGUMENTS, "argument count")];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = DaemonProtocol.readString(in);
+        }
+
+        String requestId = UUID.randomUUID().toString();
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        ch.qos.logback.classic.Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        ForwardingAppender appender = new ForwardingAppender(out, requestId);
+        appender.setContext(loggerContext);
+        appender.start();
+        root.addAppender(appender);
+
+        // the printed output, i.e. the patches of a dry run, follows the log of the request
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode;
+        MDC.clear();
+        MDC.put(REQUEST_ID, requestId);
+        try {
+            logger.debug("Serving request {} in {}", requestId, workingDir);
+            exitCode = new Cli(workingDir, true, new PrintStream(output, true, StandardCharsets.UTF_8)).run(args);
+        } catch (RuntimeException ex) {
+            logger.error("Project Manipulation failed.", ex);
+            exitCode = 100;
+        } finally {
+            root.detachAppender(appender);
+            appender.stop();
+            MDC.clear();
+        }
+
+        synchronized (out) {
+            DaemonProtocol.writeFrames(out, DaemonProtocol.OUTPUT_FRAME, output.toString(StandardCharsets.UTF_8));
+            out.writeByte(DaemonProtocol.EXIT_FRAME);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /** Appender sending the log messages of one request to its client. */
+    private static final class ForwardingAppender extends AppenderBase<ILoggingEvent> {
+
+        private final DataOutputStream out;
+
+        private final String requestId;
+
+        private final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+
+        private boolean broken;
+
+        ForwardingAppender(DataOutputStream out, String requestId) {
+            this.out = out;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void start() {
+            encoder.setContext(getContext());
+            encoder.setPattern("%mdc{LOG-CONTEXT}%level %logger{36} - %msg%n");
+            encoder.start();
+            super.start();
+        }
+
+        @Override
+        public void stop() {
+            super.stop();
+            encoder.stop();
+        }
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            if (broken || !requestId.equals(event.getMDCPropertyMap().get(REQUEST_ID))) {
+                return;
+            }
+            String message = new String(encoder.encode(event), StandardCharsets.UTF_8);
+            synchronized (out) {
+                try {
+                    DaemonProtocol.writeFrames(out, DaemonProtocol.LOG_FRAME, message);
+                    out.flush();
+                } catch (IOException ex) {
+                    // the client went away, the request is still finished
+                    broken = true;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Thin launcher forwarding the {@link Cli} arguments to a running {@link Daemon} and printing the log messages and
+ * returning the exit code it sends back. When no daemon is running, the manipulation is run in this JVM instead. The
+ * client itself uses only JDK classes, so it starts quickly.
+ */
+public class DaemonClient {
+
+    private final Path stateFile;
+
+    public DaemonClient(Path stateFile) {
+        this.stateFile = stateFile;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new DaemonClient(DaemonProtocol.getStateFile()).run(args));
+    }
+
+    /**
+     * Runs the manipulation in the daemon if it is running, otherwise in this JVM.
+     *
+     * @param args the CLI arguments
+     * @return the exit code
+     */
+    public int run(String[] args) {
+        try {
+            Integer exitCode = send(System.getProperty("user.dir"), args, System.out);
+            if (exitCode != null) {
+                return exitCode;
+            }
+        } catch (IOException ex) {
+            System.err.println("Communication with the daemon failed: " + ex.getMessage());
+            return 100;
+        }
+        return new Cli().run(args);
+    }
+
+    /**
+     * Sends a manipulation request to the daemon.
+     *
+     * @param workingDir the directory relative paths in the arguments are resolved against
+     * @param args the CLI arguments
+     * @param output stream the log messages are printed to
+     * @return the exit code or null if the daemon is not running
+     * @throws IOException in case of a communication error with a running daemon
+     */
+    Integer send(String workingDir, String[] args, PrintStream output) throws IOException {
+        if (!Files.isRegularFile(stateFile)) {
+            return null;
+        }
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            state.load(in);
+        }
+
+        Socket socket;
+        try {
+            socket = new Socket(
+                    InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(state.getProperty(DaemonProtocol.PORT_KEY)));
+        } catch (ConnectException | NumberFormatException ex) {
+            // stale state file of a daemon that was killed
+            return null;
+        }
+
+        try (Socket s = socket;
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()))) {
+            DaemonProtocol.writeString(out, state.getProperty(DaemonProtocol.TOKEN_KEY, ""));
+            DaemonProtocol.writeString(out, workingDir);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                DaemonProtocol.writeString(out, arg);
+            }
+            out.flush();
+
+            while (true) {
+                byte frame = in.readByte();
+                if (frame == DaemonProtocol.LOG_FRAME || frame == DaemonProtocol.OUTPUT_FRAME) {
+                    output.print(DaemonProtocol.readString(in));
+                } else if (frame == DaemonProtocol.EXIT_FRAME) {
+                    output.flush();
+                    return in.readInt();
+                } else {
+                    throw new IOException("Unexpected response frame " + frame);
+                }
+            }
+        }
+    }
+
+}
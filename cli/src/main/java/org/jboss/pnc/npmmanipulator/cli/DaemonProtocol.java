@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Wire format shared by the {@link Daemon} and the {@link DaemonClient}. It uses only JDK classes, so that the client
+ * does not load any of the manipulation or logging libraries.
+ *
+ * <p>
+ * A request consists of the token from the state file, the client working directory and the CLI arguments. The
+ * response is a sequence of log and output frames followed by a single exit frame with the exit code.
+ */
+final class DaemonProtocol {
+
+    /** System property with the path of the daemon state file. */
+    static final String STATE_FILE_PROPERTY = "npmManipulator.daemonFile";
+
+    /** State file key of the daemon port. */
+    static final String PORT_KEY = "port";
+
+    /** State file key of the token authenticating the clients. */
+    static final String TOKEN_KEY = "token";
+
+    /** Response frame with a formatted log message. */
+    static final byte LOG_FRAME = 'L';
+
+    /** Response frame with a part of the text the CLI printed to its standard output. */
+    static final byte OUTPUT_FRAME = 'O';
+
+    /** Response frame with the exit code, which is always the last one. */
+    static final byte EXIT_FRAME = 'X';
+
+    /** The maximum length in bytes of a string frame, so that a corrupted length cannot exhaust the memory. */
+    static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    /** The maximum number of the CLI arguments of a request. */
+    static final int MAX_ARGUMENTS = 4096;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * @return the daemon state file set by the system property, or a per-user file in the temporary directory
+     */
+    static Path getStateFile() {
+        String stateFile = System.getProperty(STATE_FILE_PROPERTY);
+        if (stateFile == null) {
+            return Paths.get(
+                    System.getProperty("java.io.tmpdir"),
+                    "npm-manipulator-" + System.getProperty("user.name") + ".daemon");
+        }
+        return Paths.get(stateFile);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a text in as many frames of given type as needed to keep each of them within {@link #MAX_STRING_LENGTH}.
+     *
+     * @param out the output
+     * @param frame the frame type
+     * @param text the text
+     * @throws IOException in case of a writing error
+     */
+    static void writeFrames(DataOutputStream out, byte frame, String text) throws IOException {
+        // a character takes at most 3 bytes in UTF-8, a surrogate pair 4 bytes
+        int chunk = MAX_STRING_LENGTH / 3;
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + chunk);
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            out.writeByte(frame);
+            writeString(out, text.substring(start, end));
+            start = end;
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readCount(in, MAX_STRING_LENGTH, "string length")];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length or a number of items.
+     *
+     * @param in the input
+     * @param max the maximum accepted value
+     * @param what the description of the value for the error message
+     * @return the read value
+     * @throws IOException in case of a reading error or if the value is negative or greater than the maximum
+     */
+    static int readCount(DataInputStream in, int max, String what) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("Invalid " + what + " " + count + " in the daemon protocol, the maximum is " + max);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.exporter.otlp.metrics.OtlpGrpcMetricExporter;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.resources.Resource;
+
+/**
+ * Exports the {@link ManipulationMetrics} to OpenTelemetry. Each timer becomes a span, a child of the span current when
+ * it started, with the timer attributes. The tasks {@link ManipulationMetrics#wrap(Callable) wrapped} to run in other
+ * threads carry the current span, so the spans started there get the right parent. The durations of all the timers are
+ * recorded in a histogram by the timer name, the Dependency Analysis requests also in histograms of their latency and
+ * payload size, and the counters are exported as OpenTelemetry counters. The metrics are exported to the same OTLP
+ * endpoint as the spans.
+ *
+ * <p>
+ * The class is used only when OpenTelemetry is enabled, so the OpenTelemetry classes are not loaded otherwise.
+ */
+final class OTelMetricsObserver implements ManipulationMetrics.Observer, AutoCloseable {
+
+    private static final String INSTRUMENTATION_NAME = "npm-manipulator";
+
+    private static final String METRIC_PREFIX = "npm_manipulator.";
+
+    private static final AttributeKey<String> PHASE = AttributeKey.stringKey("phase");
+
+    private final SdkMeterProvider meterProvider;
+
+    private final Tracer tracer;
+
+    private final Meter meter;
+
+    private final DoubleHistogram durations;
+
+    private final DoubleHistogram daLatency;
+
+    private final LongHistogram daRequestPackages;
+
+    private final LongHistogram daResponseVersions;
+
+    private final Map<String, LongCounter> counters = new ConcurrentHashMap<>();
+
+    private OTelMetricsObserver(String endpoint, String service) {
+        this(createMeterProvider(endpoint, service), GlobalOpenTelemetry.getTracer(INSTRUMENTATION_NAME));
+    }
+
+    /**
+     * Constructor used in tests.
+     *
+     * @param meterProvider the provider of the meter recording the metrics, it is closed with the observer
+     * @param tracer the tracer of the spans
+     */
+    OTelMetricsObserver(SdkMeterProvider meterProvider, Tracer tracer) {
+        this.meterProvider = meterProvider;
+        this.tracer = tracer;
+        meter = meterProvider.get(INSTRUMENTATION_NAME);
+        durations = meter.histogramBuilder(METRIC_PREFIX + "phase.duration")
+                .setDescription("Duration of the manipulation phases")
+                .setUnit("ms")
+                .build();
+        daLatency = meter.histogramBuilder(METRIC_PREFIX + "da.request.duration")
+                .setDescription("Latency of the Dependency Analysis requests")
+                .setUnit("ms")
+                .build();
+        daRequestPackages = meter.histogramBuilder(METRIC_PREFIX + "da.request.packages")
+                .setDescription("Number of packages in the Dependency Analysis requests")
+                .setUnit("{package}")
+                .ofLongs()
+                .build();
+        daResponseVersions = meter.histogramBuilder(METRIC_PREFIX + "da.response.versions")
+                .setDescription("Number of versions in the Dependency Analysis responses")
+                .setUnit("{version}")
+                .ofLongs()
+                .build();
+    }
+
+    private static SdkMeterProvider createMeterProvider(String endpoint, String service) {
+        return SdkMeterProvider.builder()
+                .setResource(
+                        Resource.getDefault()
+                                .merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), service))))
+                .registerMetricReader(
+                        PeriodicMetricReader.builder(OtlpGrpcMetricExporter.builder().setEndpoint(endpoint).build())
+                                .build())
+                .build();
+    }
+
+    /**
+     * Starts exporting the measurements of the metrics.
+     *
+     * @param metrics the metrics of the session
+     * @param endpoint the OTLP endpoint
+     * @param service the service name
+     * @return the observer to be closed at the end of the manipulation to export the remaining metrics
+     */
+    static AutoCloseable start(ManipulationMetrics metrics, String endpoint, String service) {
+        OTelMetricsObserver observer = new OTelMetricsObserver(endpoint, service);
+        metrics.addObserver(observer);
+        return observer;
+    }
+
+    @Override
+    public Object started(String name) {
+        Span span = tracer.spanBuilder(name).startSpan();
+        return new SpanScope(span, span.makeCurrent());
+    }
+
+    @Override
+    public void stopped(Object context, String name, long nanos, Map<String, Object> attributes) {
+        SpanScope spanScope = (SpanScope) context;
+        for (Entry<String, Object> attribute : attributes.entrySet()) {
+            Object value = attribute.getValue();
+            if (value instanceof Number) {
+                spanScope.span.setAttribute(attribute.getKey(), ((Number) value).longValue());
+            } else {
+                spanScope.span.setAttribute(attribute.getKey(), String.valueOf(value));
+            }
+        }
+        spanScope.scope.close();
+        spanScope.span.end();
+
+        double millis = nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        durations.record(millis, Attributes.of(PHASE, name));
+        if (ManipulationMetrics.DA_REQUEST.equals(name)) {
+            daLatency.record(millis);
+            recordCount(daRequestPackages, attributes.get(ManipulationMetrics.PACKAGES_ATTRIBUTE));
+            recordCount(daResponseVersions, attributes.get(ManipulationMetrics.VERSIONS_ATTRIBUTE));
+        }
+    }
+
+    private static void recordCount(LongHistogram histogram, Object value) {
+        if (value instanceof Number) {
+            histogram.record(((Number) value).longValue());
+        }
+    }
+
+    @Override
+    public void incremented(String name, long delta) {
+        counters.computeIfAbsent(name, k -> meter.counterBuilder(METRIC_PREFIX + k).build()).add(delta);
+    }
+
+    @Override
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return Context.current().wrap(task);
+    }
+
+    @Override
+    public void close() {
+        meterProvider.close();
+    }
+
+    private static final class SpanScope {
+
+        private final Span span;
+
+        private final Scope scope;
+
+        SpanScope(Span span, Scope scope) {
+            this.span = span;
+            this.scope = scope;
+        }
+    }
+
+}
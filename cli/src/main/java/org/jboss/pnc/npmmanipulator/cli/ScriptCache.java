@@ -0,0 +1,441 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Content-addressed local cache of the pre and post scripts. Each downloaded script is stored under its SHA-256 hash
+ * and the URL is mapped to the hash together with the ETag and Last-Modified validators of the response, so a later
+ * run only revalidates the cached copy with a conditional request. A script URL may pin the expected content with a
+ * {@code #sha256=<hex>} fragment; a pinned script already in the cache is used without any request and a downloaded
+ * one is rejected when its hash does not match.
+ *
+ * <p>
+ * All the scripts passed to {@link #fetch(String[])} are downloaded concurrently. Scripts referenced by {@code file:}
+ * URLs are used in place.
+ *
+ * <p>
+ * As the cached scripts are executed, the cache directory is created accessible only by the current user and an
+ * existing one is used only if it is owned by the current user and not writable by anybody else.
+ */
+class ScriptCache {
+
+    /** The property with the directory of the cache. */
+    static final String SCRIPT_CACHE_DIR_PARAM = "scriptCacheDir";
+
+    /** The URL fragment prefix pinning the SHA-256 hash of the script. */
+    static final String SHA256_FRAGMENT = "sha256=";
+
+    private static final String HASH_KEY = "sha256";
+
+    private static final String ETAG_KEY = "etag";
+
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private static final int MAX_THREADS = 8;
+
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScriptCache.class);
+
+    private final Path cacheDir;
+
+    private final Path blobDir;
+
+    private final Path indexDir;
+
+    private final File baseDir;
+
+    private boolean cacheDirChecked;
+
+    /**
+     * @param cacheDir the cache directory, it is created when needed
+     */
+    ScriptCache(Path cacheDir) {
+        this(cacheDir, null);
+    }
+
+    /**
+     * @param cacheDir the cache directory, it is created when needed
+     * @param baseDir the directory relative {@code file:} URLs are resolved against, null for the current directory
+     */
+    ScriptCache(Path cacheDir, File baseDir) {
+        this.cacheDir = cacheDir;
+        this.blobDir = cacheDir.resolve("sha256");
+        this.indexDir = cacheDir.resolve("urls");
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * @param userProps the user properties possibly setting the cache directory
+     * @param baseDir the directory relative paths are resolved against, null for the current directory
+     * @return the cache in the configured directory or in {@code .cache/npm-manipulator/scripts} in the user home
+     */
+    static ScriptCache create(Properties userProps, File baseDir) {
+        String dir = userProps.getProperty(SCRIPT_CACHE_DIR_PARAM);
+        if (dir == null) {
+            return new ScriptCache(
+                    Paths.get(System.getProperty("user.home"), ".cache", "npm-manipulator", "scripts"),
+                    baseDir);
+        }
+        Path path = Paths.get(dir);
+        return new ScriptCache(baseDir == null ? path : baseDir.toPath().resolve(path), baseDir);
+    }
+
+    /**
+     * Starts resolving the scripts concurrently.
+     *
+     * @param scripts the script URLs
+     * @return the resolved script files in the order of the URLs
+     */
+    CompletableFuture<List<File>> fetch(String[] scripts) {
+        List<CompletableFuture<File>> files = new ArrayList<>(scripts.length);
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        ExecutorService executor = null;
+        for (String script : scripts) {
+            if (script.startsWith("file:")) {
+                files.add(CompletableFuture.supplyAsync(() -> resolve(script), Runnable::run));
+                continue;
+            }
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(Math.min(scripts.length, MAX_THREADS), new FetchThreads());
+            }
+            files.add(CompletableFuture.supplyAsync(() -> {
+                if (logContext != null) {
+                    MDC.setContextMap(logContext);
+                }
+                try {
+                    return resolve(script);
+                } finally {
+                    MDC.clear();
+                }
+            }, executor));
+        }
+        if (executor != null) {
+            // the threads end when the submitted downloads are done
+            executor.shutdown();
+        }
+        return CompletableFuture.allOf(files.toArray(new CompletableFuture[0])).thenApply(done -> {
+            List<File> results = new ArrayList<>(files.size());
+            files.forEach(file -> results.add(file.join()));
+            return results;
+        });
+    }
+
+    /**
+     * Waits for the scripts to be resolved.
+     *
+     * @param scripts the result of {@link #fetch(String[])}
+     * @return the resolved script files
+     * @throws IOException in case any of the scripts cannot be resolved
+     */
+    static List<File> get(CompletableFuture<List<File>> scripts) throws IOException {
+        try {
+            return scripts.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private File resolve(String script) {
+        try {
+            LOGGER.info("Attempting to read URL {}", script);
+            URL ref = new URL(script);
+            if ("file".equals(ref.getProtocol())) {
+                File file = new File(ref.getPath());
+                return baseDir == null || file.isAbsolute() ? file : new File(baseDir, ref.getPath());
+            }
+            return download(ref);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private File download(URL ref) throws IOException {
+        checkCacheDir();
+        String pinned = null;
+        if (ref.getRef() != null && ref.getRef().startsWith(SHA256_FRAGMENT)) {
+            pinned = ref.getRef().substring(SHA256_FRAGMENT.length()).toLowerCase(Locale.ROOT);
+            if (!HASH_PATTERN.matcher(pinned).matches()) {
+                throw new IOException(
+                        "Invalid SHA-256 " + pinned + " pinned by script " + ref + ", 64 hex digits are expected");
+            }
+            Path blob = blobDir.resolve(pinned);
+            if (Files.isRegularFile(blob)) {
+                LOGGER.debug("Using cached script {} pinned to {}", ref, pinned);
+                return blob.toFile();
+            }
+        }
+        URL url = new URL(ref.getProtocol(), ref.getHost(), ref.getPort(), ref.getFile());
+
+        Path indexFile = indexDir.resolve(sha256(url.toString().getBytes(StandardCharsets.UTF_8)));
+        Properties cached = readIndex(indexFile);
+        Path cachedBlob = cached == null ? null : blobDir.resolve(cached.getProperty(HASH_KEY));
+        if (cachedBlob != null && !Files.isRegularFile(cachedBlob)) {
+            cached = null;
+            cachedBlob = null;
+        }
+
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        if (cached != null && connection instanceof HttpURLConnection) {
+            if (cached.getProperty(ETAG_KEY) != null) {
+                connection.setRequestProperty("If-None-Match", cached.getProperty(ETAG_KEY));
+            }
+            if (cached.getProperty(LAST_MODIFIED_KEY) != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.getProperty(LAST_MODIFIED_KEY));
+            }
+        }
+        try {
+            if (connection instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) connection).getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cachedBlob != null) {
+                    LOGGER.debug("Cached script {} is up to date", url);
+                    return checkPinned(url, cachedBlob, cached.getProperty(HASH_KEY), pinned);
+                }
+                if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    throw new IOException("Received response status " + status + " for script " + url);
+                }
+            }
+            String hash = store(connection);
+            Path blob = blobDir.resolve(hash);
+            checkPinned(url, blob, hash, pinned);
+
+            Properties index = new Properties();
+            index.setProperty(HASH_KEY, hash);
+            if (connection.getHeaderField("ETag") != null) {
+                index.setProperty(ETAG_KEY, connection.getHeaderField("ETag"));
+            }
+            if (connection.getHeaderField("Last-Modified") != null) {
+                index.setProperty(LAST_MODIFIED_KEY, connection.getHeaderField("Last-Modified"));
+            }
+            writeIndex(indexFile, index, url);
+            return blob.toFile();
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
+    private static File checkPinned(URL url, Path blob, String hash, String pinned) throws IOException {
+        if (pinned != null && !pinned.equals(hash)) {
+            throw new IOException(
+                    "SHA-256 of script " + url + " is " + hash + ", but " + pinned + " is expected");
+        }
+        return blob.toFile();
+    }
+
+    /**
+     * Streams the response to a temporary file computing its hash and moves it to the blob named by the hash.
+     *
+     * @return the SHA-256 hash of the content
+     */
+    private String store(URLConnection connection) throws IOException {
+        Files.createDirectories(blobDir);
+        Path temp = Files.createTempFile(blobDir, "download", ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            try (InputStream in = connection.getInputStream(); OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = toHex(digest.digest());
+            Path blob = blobDir.resolve(hash);
+            if (!Files.isRegularFile(blob)) {
+                // the scripts are executed directly
+                temp.toFile().setExecutable(true);
+                move(temp, blob);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Properties readIndex(Path indexFile) {
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        Properties index = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            index.load(reader);
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot read script cache entry {}: {}", indexFile, ex.getMessage());
+            return null;
+        }
+        String hash = index.getProperty(HASH_KEY);
+        return hash == null || !HASH_PATTERN.matcher(hash).matches() ? null : index;
+    }
+
+    private void writeIndex(Path indexFile, Properties index, URL url) throws IOException {
+        Files.createDirectories(indexDir);
+        Path temp = Files.createTempFile(indexDir, "entry", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                index.store(writer, url.toString());
+            }
+            move(temp, indexFile);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates the cache directory accessible only by the current user, or checks that an existing one is owned by the
+     * current user and not writable by anybody else, so nobody else can plant a script in it. The check is skipped on
+     * file systems without POSIX permissions.
+     */
+    private synchronized void checkCacheDir() throws IOException {
+        if (cacheDirChecked) {
+            return;
+        }
+        if (!cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(cacheDir);
+            cacheDirChecked = true;
+            return;
+        }
+
+        if (!Files.isDirectory(cacheDir)) {
+            Path parent = cacheDir.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try {
+                Files.createDirectory(
+                        cacheDir,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (FileAlreadyExistsException ex) {
+                // created concurrently, checked below
+            }
+        }
+        UserPrincipal owner = Files.getOwner(cacheDir);
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(cacheDir);
+        if (!owner.equals(currentUser()) || permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException(
+                    "Script cache directory " + cacheDir + " owned by " + owner.getName() + " with permissions "
+                            + PosixFilePermissions.toString(permissions) + " has to be owned by the current user and "
+                            + "must not be writable by anybody else");
+        }
+        cacheDirChecked = true;
+    }
+
+    /**
+     * @return the owner of a file created by this process
+     */
+    private static UserPrincipal currentUser() throws IOException {
+        Path probe = Files.createTempFile("npm-manipulator", ".owner");
+        try {
+            return Files.getOwner(probe);
+        } finally {
+            Files.delete(probe);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws IOException {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not supported by the JVM", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /** Daemon threads for the downloads, so they never keep the JVM running. */
+    private static final class FetchThreads implements ThreadFactory {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "script-fetch-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,371 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Runs a pre or post script. Its standard output and error are pumped concurrently by two threads and logged line by
+ * line while the script runs, with the log context of the calling thread. Only the tail of each stream up to the
+ * configured limit is kept, to be reported when the script fails, so the memory use does not depend on the amount of
+ * output. Overlong lines are logged in parts.
+ *
+ * <p>
+ * The scripts of a property are organized in stages, which run one after another, while the scripts within a stage
+ * run concurrently, e.g. {@code fetch-config.sh|clean-cache.sh,build.sh}. A stage fails fast, killing its remaining
+ * scripts when one of them fails or when the stage exceeds its timeout.
+ */
+class ScriptRunner {
+
+    /**
+     * The property limiting the number of characters of each of the script output streams kept for the failure
+     * report.
+     */
+    static final String SCRIPT_OUTPUT_LIMIT_PARAM = "scriptOutputLimit";
+
+    /** The default output limit. */
+    static final int DEFAULT_OUTPUT_LIMIT = 64 * 1024;
+
+    /** The property limiting the duration of each script stage in seconds. */
+    static final String SCRIPT_STAGE_TIMEOUT_PARAM = "scriptStageTimeout";
+
+    /** The separator of the script stages run one after another. */
+    static final String STAGE_SEPARATOR = ",";
+
+    /** The separator of the scripts run concurrently within a stage. */
+    static final String CONCURRENT_SEPARATOR = "|";
+
+    /** How long to wait for the cancelled scripts and their children to be killed. */
+    private static final long CANCEL_TIMEOUT_SECONDS = 10;
+
+    /** The longest part of a line logged at once. */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScriptRunner.class);
+
+    private final ManipulationMetrics metrics;
+
+    private final int outputLimit;
+
+    private final File workingDir;
+
+    /**
+     * @param metrics the metrics to record the script durations to
+     * @param outputLimit the number of the last characters of each output stream kept for the failure report
+     */
+    ScriptRunner(ManipulationMetrics metrics, int outputLimit) {
+        this(metrics, outputLimit, null);
+    }
+
+    /**
+     * @param metrics the metrics to record the script durations to
+     * @param outputLimit the number of the last characters of each output stream kept for the failure report
+     * @param workingDir the working directory of the scripts, null for the current directory
+     */
+    ScriptRunner(ManipulationMetrics metrics, int outputLimit, File workingDir) {
+        this.metrics = metrics;
+        this.outputLimit = outputLimit;
+        this.workingDir = workingDir;
+    }
+
+    /**
+     * Runs the script and waits for it to finish. The duration is recorded both in the
+     * {@link ManipulationMetrics#SCRIPT} timer and in a timer named by {@link ManipulationMetrics#SCRIPT_PREFIX} and
+     * the script name.
+     *
+     * @param script the script file
+     * @param name the script name, e.g. the file name from its URL
+     * @throws RuntimeException in case the script cannot be executed or ends with a non-zero exit code
+     */
+    void run(File script, String name) {
+        LOGGER.info("Executing script {}", script);
+        long start = System.nanoTime();
+        Process process = null;
+        try (Timer timer = metrics.start(ManipulationMetrics.SCRIPT)) {
+            timer.attribute(ManipulationMetrics.FILE_PATH_ATTRIBUTE, script.getPath());
+            process = new ProcessBuilder(script.getAbsolutePath()).directory(workingDir).start();
+            process.getOutputStream().close();
+
+            OutputTail outputTail = new OutputTail(outputLimit);
+            OutputTail errorTail = new OutputTail(outputLimit);
+            Map<String, String> logContext = MDC.getCopyOfContextMap();
+            Thread stdout = pump(process.getInputStream(), LOGGER::info, outputTail, logContext, name + "-stdout");
+            Thread stderr = pump(process.getErrorStream(), LOGGER::error, errorTail, logContext, name + "-stderr");
+            int exitCode = process.waitFor();
+            stdout.join();
+            stderr.join();
+
+            if (exitCode != 0) {
+                throw new RuntimeException(
+                        "Problem executing script " + script + ", exit code " + exitCode + ", standard error:\n"
+                                + errorTail + "\nstandard output:\n" + outputTail);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Problem executing script " + script, ex);
+        } catch (InterruptedException ex) {
+            if (process != null) {
+                LOGGER.warn("Killing script {}", script);
+                kill(process);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Execution of script " + script + " was cancelled", ex);
+        } finally {
+            metrics.record(ManipulationMetrics.SCRIPT_PREFIX + name, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the scripts of one stage concurrently and waits for all of them to finish. As soon as one of them fails or
+     * the stage does not finish in time, the remaining ones are cancelled and their processes are killed.
+     *
+     * @param scripts the script files
+     * @param names the script names on the same positions as the files
+     * @param timeout the maximum duration of the stage in seconds, 0 for no limit
+     * @throws RuntimeException in case one of the scripts fails or the stage times out
+     */
+    void runStage(List<File> scripts, List<String> names, long timeout) {
+        if (scripts.size() == 1 && timeout <= 0) {
+            run(scripts.get(0), names.get(0));
+            return;
+        }
+
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        ExecutorService executor = Executors.newFixedThreadPool(scripts.size(), runnable -> {
+            Thread thread = new Thread(runnable, "script-stage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        int finished = 0;
+        try {
+            for (int i = 0; i < scripts.size(); i++) {
+                File script = scripts.get(i);
+                String name = names.get(i);
+                // the script timers are nested in the timers of the calling thread
+                completion.submit(metrics.wrap(() -> {
+                    if (logContext != null) {
+                        MDC.setContextMap(logContext);
+                    }
+                    try {
+                        run(script, name);
+                    } finally {
+                        MDC.clear();
+                    }
+                    return null;
+                }));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+            for (; finished < scripts.size(); finished++) {
+                Future<Void> done;
+                if (timeout > 0) {
+                    done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        throw new RuntimeException(
+                                "Script stage " + names + " did not finish in " + timeout + " seconds");
+                    }
+                } else {
+                    done = completion.take();
+                }
+                done.get();
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Execution of script stage " + names + " was cancelled", ex);
+        } finally {
+            if (finished < scripts.size()) {
+                LOGGER.warn("Cancelling the remaining scripts of stage {}", names);
+            }
+            // interrupting the running scripts kills their processes
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Splits the value of a script property into stages run one after another, each of the stages consisting of the
+     * URLs of the scripts run concurrently.
+     *
+     * @param value comma separated list of stages, the concurrent scripts of a stage separated by {@code |}
+     * @return the stages of script URLs
+     */
+    static List<List<String>> parseStages(String value) {
+        List<List<String>> stages = new ArrayList<>();
+        for (String stage : value.split(STAGE_SEPARATOR)) {
+            List<String> urls = new ArrayList<>();
+            for (String url : stage.split(Pattern.quote(CONCURRENT_SEPARATOR))) {
+                if (!url.trim().isEmpty()) {
+                    urls.add(url.trim());
+                }
+            }
+            if (!urls.isEmpty()) {
+                stages.add(urls);
+            }
+        }
+        return stages;
+    }
+
+    /**
+     * @param url the script URL
+     * @return the last segment of the URL path
+     */
+    static String scriptName(String url) {
+        String path = url.replaceFirst("[?#].*$", "");
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Kills the script process first, so it cannot go on with its next command when one of its children dies, then
+     * its children and waits for all of them to exit.
+     */
+    private static void kill(Process process) {
+        List<ProcessHandle> children = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        children.forEach(ProcessHandle::destroyForcibly);
+
+        List<CompletableFuture<?>> exits = new ArrayList<>();
+        exits.add(process.onExit());
+        children.forEach(child -> exits.add(child.onExit()));
+        try {
+            CompletableFuture.allOf(exits.toArray(new CompletableFuture[0]))
+                    .get(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException ex) {
+            LOGGER.warn("Killed script process {} did not exit in {} seconds", process.pid(), CANCEL_TIMEOUT_SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread pump(
+            InputStream stream,
+            Consumer<String> log,
+            OutputTail tail,
+            Map<String, String> logContext,
+            String threadName) {
+        Thread thread = new Thread(() -> {
+            if (logContext != null) {
+                MDC.setContextMap(logContext);
+            }
+            try (Reader reader = new InputStreamReader(stream, Charset.defaultCharset())) {
+                StringBuilder line = new StringBuilder();
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = reader.read(buffer)) > 0) {
+                    for (int i = 0; i < read; i++) {
+                        char c = buffer[i];
+                        if (c == '\n' || line.length() == MAX_LINE_LENGTH) {
+                            flush(line, log, tail);
+                        }
+                        if (c != '\n' && c != '\r') {
+                            line.append(c);
+                        }
+                    }
+                }
+                if (line.length() > 0) {
+                    flush(line, log, tail);
+                }
+            } catch (IOException ex) {
+                LOGGER.warn("Reading the script output failed: {}", ex.getMessage());
+            } finally {
+                MDC.clear();
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void flush(StringBuilder line, Consumer<String> log, OutputTail tail) {
+        String text = line.toString();
+        line.setLength(0);
+        log.accept(text);
+        tail.add(text);
+    }
+
+    /** The last lines of an output stream. */
+    private static final class OutputTail {
+
+        private final int limit;
+
+        private final Deque<String> lines = new ArrayDeque<>();
+
+        private int length;
+
+        private OutputTail(int limit) {
+            this.limit = limit;
+        }
+
+        private void add(String line) {
+            if (line.length() >= limit) {
+                lines.clear();
+                length = 0;
+                if (limit > 0) {
+                    lines.add(line.substring(line.length() - limit));
+                    length = limit;
+                }
+                return;
+            }
+            lines.add(line);
+            length += line.length() + 1;
+            while (length > limit) {
+                length -= lines.removeFirst().length() + 1;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.join("\n", lines);
+        }
+    }
+
+}
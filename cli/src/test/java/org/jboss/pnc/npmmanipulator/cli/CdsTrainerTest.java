@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Generates a CDS archive and compares the startup of an override-only run with and without it.
+ */
+public class CdsTrainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTrainAndCompareStartup() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 13);
+
+        // classes loaded from directories are not archived, so package them the way they are shipped
+        String classPath = jarClassPath();
+        File archive = new File(folder.getRoot(), "npm-manipulator-cli.jsa");
+        assertEquals(
+                0,
+                run(classPath, Arrays.asList("-XX:ArchiveClassesAtExit=" + archive), CdsTrainer.class.getName()));
+        assertTrue(archive.isFile());
+
+        long withoutArchive = measure(classPath, "-Xshare:auto");
+        long withArchive = measure(classPath, "-XX:SharedArchiveFile=" + archive);
+        System.out.println(
+                "Override-only run took " + withoutArchive + " ms without and " + withArchive
+                        + " ms with the CDS archive");
+
+        File classLog = new File(folder.getRoot(), "classes.log");
+        assertEquals(
+                0,
+                run(
+                        classPath,
+                        Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xlog:class+load=info:file=" + classLog),
+                        Cli.class.getName(),
+                        "-f",
+                        createProject().getPath(),
+                        "-DversionOverride=2.0.0"));
+        assertTrue(
+                Files.readAllLines(classLog.toPath())
+                        .stream()
+                        .anyMatch(line -> line.contains(Cli.class.getName() + " source: shared objects file")));
+    }
+
+    private long measure(String classPath, String shareOption) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            File project = createProject();
+            long start = System.nanoTime();
+            assertEquals(
+                    0,
+                    run(
+                            classPath,
+                            Arrays.asList(shareOption),
+                            Cli.class.getName(),
+                            "-f",
+                            project.getPath(),
+                            "-DversionOverride=2.0.0"));
+            best = Math.min(best, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return best;
+    }
+
+    private File createProject() throws IOException {
+        File dir = folder.newFolder();
+        FileUtils.writeStringToFile(
+                new File(dir, "package.json"),
+                "{\n  \"name\": \"cds-test\",\n  \"version\": \"1.0.0\"\n}\n",
+                StandardCharsets.UTF_8);
+        return dir;
+    }
+
+    private int run(String classPath, List<String> jvmOptions, String... mainClassAndArgs) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classPath);
+        command.addAll(Arrays.asList(mainClassAndArgs));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(folder.newFile())
+                .start();
+        assertTrue(process.waitFor(120, TimeUnit.SECONDS));
+        return process.exitValue();
+    }
+
+    private String jarClassPath() throws IOException {
+        String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        List<String> entries = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            File file = new File(entry);
+            if (file.isDirectory()) {
+                entries.add(jar(file).getPath());
+            } else if (file.isFile()) {
+                entries.add(entry);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private File jar(File dir) throws IOException {
+        File jar = folder.newFile();
+        Path root = dir.toPath();
+        try (OutputStream out = Files.newOutputStream(jar.toPath());
+                JarOutputStream jarOut = new JarOutputStream(out);
+                Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                jarOut.putNextEntry(new JarEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, jarOut);
+                jarOut.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+}
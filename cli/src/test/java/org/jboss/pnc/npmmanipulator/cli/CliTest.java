@@ -2,19 +2,26 @@ package org.jboss.pnc.npmmanipulator.cli;
 
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static uk.org.webcompere.systemstubs.SystemStubs.tapSystemErrAndOut;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 public class CliTest {
 
     @Rule
@@ -71,4 +78,97 @@ public class CliTest {
         });
         assertTrue(text.contains("### HELLO!"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testInvalidScriptProperties() throws Exception {
+        File script = folder.newFile("script.sh");
+        FileUtils.writeStringToFile(script, "#!/bin/sh\necho \"### HELLO!\"\n", Charset.defaultCharset());
+        //noinspection ResultOfMethodCallIgnored
+        script.setExecutable(true);
+        File dir = folder.newFolder();
+        FileUtils.writeStringToFile(
+                new File(dir, "package.json"),
+                "{\"name\": \"scripted\", \"version\": \"1.0.0\"}",
+                Charset.defaultCharset());
+        Cli cli = new Cli(dir, true);
+
+        String preScript = "-DpreScript=" + script.toURI();
+        String text = tapSystemErrAndOut(
+                () -> assertEquals(10, cli.run(new String[] { preScript, "-DscriptOutputLimit=-1" })));
+        assertTrue(text.contains("Invalid value '-1' of property scriptOutputLimit"));
+        assertFalse(text.contains("### HELLO!"));
+
+        text = tapSystemErrAndOut(
+                () -> assertEquals(10, cli.run(new String[] { preScript, "-DscriptStageTimeout=soon" })));
+        assertTrue(text.contains("Invalid value 'soon' of property scriptStageTimeout"));
+        assertFalse(text.contains("### HELLO!"));
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        File dir = folder.newFolder();
+        File packageFile = new File(dir, "package.json");
+        String contents = "{\"name\": \"verified\", \"version\": \"1.0.0-redhat-00001\"}";
+        FileUtils.writeStringToFile(packageFile, contents, Charset.defaultCharset());
+        Cli cli = new Cli(dir, true);
+
+        assertEquals(0, cli.run(new String[] { "-Dverify=true", "-DversionOverride=1.0.0-redhat-00001" }));
+        assertEquals(20, cli.run(new String[] { "-Dverify=true", "-DversionOverride=1.0.0-redhat-00002" }));
+        assertEquals(contents, FileUtils.readFileToString(packageFile, Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testVerifyRegistryOverride() throws Exception {
+        File dir = folder.newFolder();
+        FileUtils.writeStringToFile(
+                new File(dir, "package.json"),
+                "{\"name\": \"verified\", \"version\": \"1.0.0\"}",
+                Charset.defaultCharset());
+        File lockFile = new File(dir, "package-lock.json");
+        String lock = "{\"name\": \"verified\", \"version\": \"1.0.0\", \"lockfileVersion\": 2, \"packages\": {"
+                + "\"\": {\"name\": \"verified\", \"version\": \"1.0.0\"}, "
+                + "\"node_modules/a\": {\"version\": \"1.0.0\", "
+                + "\"resolved\": \"https://mirror.example.com/npm/a/-/a-1.0.0.tgz\"}}}";
+        FileUtils.writeStringToFile(lockFile, lock, Charset.defaultCharset());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Cli cli = new Cli(dir, true, new PrintStream(output, true, "UTF-8"));
+
+        String mirrored = "-DregistryOverride.https://registry.npmjs.org/=https://mirror.example.com/npm/";
+        assertEquals(0, cli.run(new String[] { "-Dverify=true", mirrored }));
+        assertFalse(output.toString("UTF-8"), output.toString("UTF-8").contains("package-lock.json"));
+        String unmirrored = "-DregistryOverride.https://mirror.example.com/npm/=https://registry.npmjs.org/";
+        assertEquals(20, cli.run(new String[] { "-Dverify=true", unmirrored }));
+        assertEquals(lock, FileUtils.readFileToString(lockFile, Charset.defaultCharset()));
+        String patches = output.toString("UTF-8");
+        assertTrue(patches, patches.contains("\"package-lock.json\""));
+        assertTrue(patches, patches.contains("https://registry.npmjs.org/a/-/a-1.0.0.tgz"));
+    }
+
+    @Test
+    public void testJfr() throws Exception {
+        File dir = folder.newFolder();
+        FileUtils.writeStringToFile(
+                new File(dir, "package.json"),
+                "{\"name\": \"recorded\", \"version\": \"1.0.0\"}",
+                Charset.defaultCharset());
+        File recording = new File(dir, "manipulation.jfr");
+
+        Cli cli = new Cli(dir, true);
+        assertEquals(0, cli.run(new String[] { "--jfr", recording.getName(), "-DversionOverride=2.0.0" }));
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recording.toPath())
+                .stream()
+                .filter(e -> "org.jboss.pnc.npmmanipulator.Phase".equals(e.getEventType().getName()))
+                .collect(Collectors.toList());
+        assertTrue(
+                events.stream()
+                        .anyMatch(
+                                e -> "parse".equals(e.getString("phase"))
+                                        && "recorded".equals(e.getString("packageName"))
+                                        && e.getLong("fileSize") > 0));
+        assertTrue(
+                events.stream()
+                        .anyMatch(e -> "manipulator.NpmPackageVersionManipulator".equals(e.getString("phase"))));
+        assertTrue(events.stream().anyMatch(e -> "update".equals(e.getString("phase"))));
+    }
+}
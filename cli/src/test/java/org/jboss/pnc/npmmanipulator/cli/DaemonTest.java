@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRequestAndIdleShutdown() throws Exception {
+        Path stateFile = folder.getRoot().toPath().resolve("daemon.state");
+        File project = folder.newFolder("project");
+        FileUtils.writeStringToFile(
+                new File(project, "package.json"),
+                "{\n  \"name\": \"daemon-test\",\n  \"version\": \"1.0.0\"\n}\n",
+                StandardCharsets.UTF_8);
+
+        DaemonClient client = new DaemonClient(stateFile);
+        assertNull(client.send(project.getPath(), new String[0], System.out));
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread daemon = new Thread(() -> {
+            try {
+                new Daemon(stateFile, Duration.ofSeconds(2)).run();
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        daemon.start();
+        for (int i = 0; i < 100 && !Files.exists(stateFile); i++) {
+            Thread.sleep(50);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Integer exitCode = client.send(
+                project.getPath(),
+                new String[] { "-f", "package.json", "-DversionOverride=2.0.0", "--log-context", "ctx" },
+                new PrintStream(output, true, "UTF-8"));
+
+        assertEquals(Integer.valueOf(0), exitCode);
+        String log = output.toString("UTF-8");
+        assertTrue(log, log.contains("ctx INFO"));
+        assertTrue(log, log.contains("Updating package version: 1.0.0 -> 2.0.0"));
+        assertTrue(
+                FileUtils.readFileToString(new File(project, "package.json"), StandardCharsets.UTF_8)
+                        .contains("\"version\" : \"2.0.0\""));
+
+        // the patches of a dry run are forwarded instead of being printed by the daemon
+        output.reset();
+        exitCode = client.send(
+                project.getPath(),
+                new String[] { "-DversionOverride=3.0.0", "-DdryRun=true" },
+                new PrintStream(output, true, "UTF-8"));
+        assertEquals(Integer.valueOf(0), exitCode);
+        log = output.toString("UTF-8");
+        assertTrue(log, log.contains("\"value\" : \"3.0.0\""));
+
+        daemon.join(10000);
+        assertFalse(daemon.isAlive());
+        assertNull(failure.get());
+        assertFalse(Files.exists(stateFile));
+    }
+
+    @Test
+    public void testScriptInClientWorkingDirectory() throws Exception {
+        Path stateFile = folder.getRoot().toPath().resolve("daemon.state");
+        File project = folder.newFolder("project");
+        FileUtils.writeStringToFile(
+                new File(project, "package.json"),
+                "{\n  \"name\": \"daemon-test\",\n  \"version\": \"1.0.0\"\n}\n",
+                StandardCharsets.UTF_8);
+        File script = new File(project, "pre.sh");
+        FileUtils.writeStringToFile(script, "#!/bin/sh\necho done > pre.out\n", StandardCharsets.UTF_8);
+        assertTrue(script.setExecutable(true));
+
+        Thread daemon = new Thread(() -> {
+            try {
+                new Daemon(stateFile, Duration.ofSeconds(2)).run();
+            } catch (Exception e) {
+                // the assertions below fail
+            }
+        });
+        daemon.start();
+        for (int i = 0; i < 100 && !Files.exists(stateFile); i++) {
+            Thread.sleep(50);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Integer exitCode = new DaemonClient(stateFile).send(
+                project.getPath(),
+                new String[] { "-f", "package.json", "-DpreScript=file:pre.sh" },
+                new PrintStream(output, true, "UTF-8"));
+
+        assertEquals(output.toString("UTF-8"), Integer.valueOf(0), exitCode);
+        assertEquals("done\n", FileUtils.readFileToString(new File(project, "pre.out"), StandardCharsets.UTF_8));
+        daemon.join(10000);
+        assertFalse(daemon.isAlive());
+    }
+}
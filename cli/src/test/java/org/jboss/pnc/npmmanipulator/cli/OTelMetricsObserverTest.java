@@ -0,0 +1,205 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+public class OTelMetricsObserverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the timers are exported as nested spans with their attributes, also when they run in the script stage
+     * threads, and that the Dependency Analysis requests are recorded in the latency histogram.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void exportSpansAndMetrics() throws Exception {
+        InMemorySpanExporter spanExporter = new InMemorySpanExporter();
+        InMemoryMetricExporter metricExporter = new InMemoryMetricExporter();
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                .build();
+        SdkMeterProvider meterProvider = SdkMeterProvider.builder()
+                .registerMetricReader(PeriodicMetricReader.builder(metricExporter).build())
+                .build();
+        File first = script("first.sh");
+        File second = script("second.sh");
+
+        ManipulationMetrics metrics = new ManipulationMetrics();
+        try (OTelMetricsObserver observer = new OTelMetricsObserver(meterProvider, tracerProvider.get("test"))) {
+            metrics.addObserver(observer);
+            try (Timer manipulation = metrics.start("manipulation")) {
+                try (Timer parse = metrics.start(ManipulationMetrics.PARSE)) {
+                    parse.attribute(ManipulationMetrics.PACKAGE_NAME_ATTRIBUTE, "traced")
+                            .attribute(ManipulationMetrics.FILE_PATH_ATTRIBUTE, "package.json")
+                            .attribute(ManipulationMetrics.FILE_SIZE_ATTRIBUTE, 42L);
+                }
+                try (Timer request = metrics.start(ManipulationMetrics.DA_REQUEST)) {
+                    request.attribute(ManipulationMetrics.PACKAGES_ATTRIBUTE, 3);
+                }
+                try (Timer preScript = metrics.start(ManipulationMetrics.PRE_SCRIPT)) {
+                    new ScriptRunner(metrics, 1000).runStage(
+                            Arrays.asList(first, second),
+                            Arrays.asList("first.sh", "second.sh"),
+                            0);
+                }
+            }
+        }
+        tracerProvider.close();
+
+        Map<String, List<SpanData>> spans = spanExporter.getSpans()
+                .stream()
+                .collect(Collectors.groupingBy(SpanData::getName));
+        SpanData manipulation = spans.get("manipulation").get(0);
+        SpanData parse = spans.get(ManipulationMetrics.PARSE).get(0);
+        assertEquals(manipulation.getSpanId(), parse.getParentSpanId());
+        assertEquals(manipulation.getTraceId(), parse.getTraceId());
+        assertEquals(
+                "traced",
+                parse.getAttributes().get(AttributeKey.stringKey(ManipulationMetrics.PACKAGE_NAME_ATTRIBUTE)));
+        assertEquals(
+                "package.json",
+                parse.getAttributes().get(AttributeKey.stringKey(ManipulationMetrics.FILE_PATH_ATTRIBUTE)));
+        assertEquals(
+                Long.valueOf(42),
+                parse.getAttributes().get(AttributeKey.longKey(ManipulationMetrics.FILE_SIZE_ATTRIBUTE)));
+
+        SpanData preScript = spans.get(ManipulationMetrics.PRE_SCRIPT).get(0);
+        assertEquals(manipulation.getSpanId(), preScript.getParentSpanId());
+        List<SpanData> scripts = spans.get(ManipulationMetrics.SCRIPT);
+        assertEquals(2, scripts.size());
+        for (SpanData script : scripts) {
+            assertEquals(preScript.getSpanId(), script.getParentSpanId());
+            assertEquals(manipulation.getTraceId(), script.getTraceId());
+        }
+
+        Map<String, MetricData> exported = metricExporter.getMetrics()
+                .stream()
+                .collect(Collectors.toMap(MetricData::getName, Function.identity(), (a, b) -> b));
+        MetricData latency = exported.get("npm_manipulator.da.request.duration");
+        assertEquals("ms", latency.getUnit());
+        Collection<HistogramPointData> points = latency.getHistogramData().getPoints();
+        assertEquals(1, points.size());
+        assertEquals(1, points.iterator().next().getCount());
+        HistogramPointData packages = exported.get("npm_manipulator.da.request.packages")
+                .getHistogramData()
+                .getPoints()
+                .iterator()
+                .next();
+        assertEquals(3, packages.getSum(), 0);
+        assertTrue(exported.containsKey("npm_manipulator.phase.duration"));
+    }
+
+    private File script(String name) throws Exception {
+        File script = folder.newFile(name);
+        FileUtils.writeStringToFile(script, "#!/bin/sh\necho " + name + "\n", StandardCharsets.UTF_8);
+        assertTrue(script.setExecutable(true));
+        return script;
+    }
+
+    private static final class InMemorySpanExporter implements SpanExporter {
+
+        private final List<SpanData> spans = new ArrayList<>();
+
+        @Override
+        public synchronized CompletableResultCode export(Collection<SpanData> exported) {
+            spans.addAll(exported);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        synchronized List<SpanData> getSpans() {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    private static final class InMemoryMetricExporter implements MetricExporter {
+
+        private final List<MetricData> metrics = new ArrayList<>();
+
+        @Override
+        public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+            return AggregationTemporality.CUMULATIVE;
+        }
+
+        @Override
+        public synchronized CompletableResultCode export(Collection<MetricData> exported) {
+            metrics.addAll(exported);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        synchronized List<MetricData> getMetrics() {
+            return new ArrayList<>(metrics);
+        }
+    }
+
+}
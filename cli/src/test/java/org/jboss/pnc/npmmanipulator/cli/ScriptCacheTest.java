@@ -0,0 +1,233 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ScriptCacheTest {
+
+    private static final String SCRIPT = "#!/bin/sh\necho \"### CACHED\"\n";
+
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private final CountDownLatch concurrent = new CountDownLatch(3);
+
+    private final Map<String, Integer> requests = new ConcurrentHashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/script.sh", exchange -> {
+            requests.merge(exchange.getRequestURI().getPath(), 1, Integer::sum);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            downloads.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            send(exchange, 200, SCRIPT);
+        });
+        server.createContext("/concurrent/", exchange -> {
+            // answers only when all the scripts are requested at once
+            concurrent.countDown();
+            try {
+                if (concurrent.await(10, TimeUnit.SECONDS)) {
+                    send(exchange, 200, "#!/bin/sh\necho " + exchange.getRequestURI().getPath() + "\n");
+                } else {
+                    send(exchange, 500, "not concurrent");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                send(exchange, 500, "interrupted");
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Tests that a cached script is revalidated by its ETag instead of being downloaded again.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void revalidate() throws Exception {
+        ScriptCache cache = new ScriptCache(cacheDir("cache"));
+        String[] scripts = { url("/script.sh") };
+
+        File first = ScriptCache.get(cache.fetch(scripts)).get(0);
+        File second = ScriptCache.get(cache.fetch(scripts)).get(0);
+
+        assertEquals(first, second);
+        assertEquals(SCRIPT, FileUtils.readFileToString(second, StandardCharsets.UTF_8));
+        assertTrue(second.canExecute());
+        assertEquals(1, downloads.get());
+        assertEquals(1, notModified.get());
+    }
+
+    /**
+     * Tests that a pinned script is used from the cache without any request and that a script not matching its pin is
+     * rejected.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void pinned() throws Exception {
+        String hash = hex(MessageDigest.getInstance("SHA-256").digest(SCRIPT.getBytes(StandardCharsets.UTF_8)));
+        ScriptCache cache = new ScriptCache(cacheDir("cache"));
+        String[] scripts = { url("/script.sh") + "#" + ScriptCache.SHA256_FRAGMENT + hash };
+
+        File first = ScriptCache.get(cache.fetch(scripts)).get(0);
+        File second = ScriptCache.get(cache.fetch(scripts)).get(0);
+
+        assertEquals(first, second);
+        assertEquals(hash, second.getName());
+        assertEquals(Integer.valueOf(1), requests.get("/script.sh"));
+
+        ScriptCache emptyCache = new ScriptCache(cacheDir("empty"));
+        try {
+            ScriptCache.get(emptyCache.fetch(new String[] { url("/script.sh") + "#sha256=" + "0".repeat(64) }));
+            fail("No exception thrown");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("SHA-256 of script"));
+        }
+        try {
+            ScriptCache.get(cache.fetch(new String[] { url("/script.sh") + "#sha256=../../../bin/sh" }));
+            fail("No exception thrown");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("Invalid SHA-256"));
+        }
+    }
+
+    /**
+     * Tests that the cache directory is created accessible only by the current user and that a directory writable by
+     * others is rejected.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void cacheDirPermissions() throws Exception {
+        Path dir = cacheDir("private");
+        ScriptCache.get(new ScriptCache(dir).fetch(new String[] { url("/script.sh") }));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+
+        Path shared = folder.newFolder("shared").toPath();
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+        try {
+            ScriptCache.get(new ScriptCache(shared).fetch(new String[] { url("/script.sh") }));
+            fail("No exception thrown");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("must not be writable by anybody else"));
+        }
+        assertEquals(1, downloads.get());
+    }
+
+    /**
+     * Tests that the scripts are downloaded concurrently and provided in the order of their URLs.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void fetchConcurrently() throws Exception {
+        File local = folder.newFile("local.sh");
+        ScriptCache cache = new ScriptCache(cacheDir("cache"));
+        String[] scripts = { url("/concurrent/a.sh"), "file://" + local.getAbsolutePath(), url("/concurrent/b.sh"),
+                url("/concurrent/c.sh") };
+
+        List<File> files = ScriptCache.get(cache.fetch(scripts));
+
+        assertEquals(4, files.size());
+        assertEquals(local, files.get(1));
+        assertTrue(FileUtils.readFileToString(files.get(0), StandardCharsets.UTF_8).contains("/concurrent/a.sh"));
+        assertTrue(FileUtils.readFileToString(files.get(3), StandardCharsets.UTF_8).contains("/concurrent/c.sh"));
+    }
+
+    /**
+     * @return a path of a directory that does not exist yet, so it is created by the cache regardless of the umask
+     */
+    private Path cacheDir(String name) {
+        return folder.getRoot().toPath().resolve(name);
+    }
+
+    private String url(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+public class ScriptRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(ScriptRunner.class);
+
+    @Before
+    public void attachAppender() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void detachAppender() {
+        logger.detachAppender(appender);
+        MDC.clear();
+    }
+
+    /**
+     * Tests that both output streams are logged line by line with the log context, only the tail of the output is
+     * reported on failure and the duration of the script is recorded.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void streamOutput() throws Exception {
+        File script = folder.newFile("noisy.sh");
+        FileUtils.writeStringToFile(
+                script,
+                "#!/bin/sh\ni=0\nwhile [ $i -lt 2000 ]; do echo \"line $i\"; i=$((i+1)); done\n"
+                        + "echo \"### FAILED\" >&2\nexit 3\n",
+                StandardCharsets.UTF_8);
+        script.setExecutable(true);
+        ManipulationMetrics metrics = new ManipulationMetrics();
+        MDC.put("LOG-CONTEXT", "scripts");
+
+        try {
+            new ScriptRunner(metrics, 100).run(script, "noisy.sh");
+            fail("No exception thrown");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage().contains("exit code 3"));
+            assertTrue(ex.getMessage().contains("### FAILED"));
+            assertTrue(ex.getMessage().contains("line 1999"));
+            assertFalse(ex.getMessage().contains("line 1000"));
+        }
+
+        long lines = appender.list.stream().filter(event -> event.getMessage().startsWith("line ")).count();
+        assertEquals(2000, lines);
+        for (ILoggingEvent event : appender.list) {
+            assertEquals("scripts", event.getMDCPropertyMap().get("LOG-CONTEXT"));
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> timers = (Map<String, Object>) metrics.snapshot().get("timers");
+        assertTrue(timers.containsKey(ManipulationMetrics.SCRIPT));
+        assertTrue(timers.containsKey(ManipulationMetrics.SCRIPT_PREFIX + "noisy.sh"));
+    }
+
+    /**
+     * Tests the parsing of sequential stages of concurrent scripts.
+     */
+    @Test
+    public void parseStages() {
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList("file:///tmp/fetch.sh", "http://example.com/clean.sh?x=1"),
+                        Arrays.asList("file:///tmp/build.sh")),
+                ScriptRunner.parseStages(
+                        "file:///tmp/fetch.sh | http://example.com/clean.sh?x=1,file:///tmp/build.sh"));
+        assertEquals("clean.sh", ScriptRunner.scriptName("http://example.com/clean.sh?x=1"));
+    }
+
+    /**
+     * Tests that the scripts of a stage run concurrently, each of them waiting for the other one to start.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void runConcurrently() throws Exception {
+        File first = script("first.sh", "touch first.started\nwait_for second.started\n");
+        File second = script("second.sh", "touch second.started\nwait_for first.started\n");
+
+        new ScriptRunner(new ManipulationMetrics(), 1000)
+                .runStage(Arrays.asList(first, second), Arrays.asList("first.sh", "second.sh"), 30);
+    }
+
+    /**
+     * Tests that a failing script kills the other scripts of its stage, so a killed script does not go on with its next
+     * command.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void failFast() throws Exception {
+        File slow = script("slow.sh", "touch slow.started\nsleep 30\ntouch slow.finished\n");
+        File failing = script("failing.sh", "wait_for slow.started\nexit 4\n");
+
+        long start = System.nanoTime();
+        try {
+            new ScriptRunner(new ManipulationMetrics(), 1000)
+                    .runStage(Arrays.asList(slow, failing), Arrays.asList("slow.sh", "failing.sh"), 0);
+            fail("No exception thrown");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage().contains("failing.sh, exit code 4"));
+        }
+        assertTrue(System.nanoTime() - start < 20_000_000_000L);
+        assertFalse(new File(folder.getRoot(), "slow.finished").exists());
+    }
+
+    /**
+     * Tests that a stage exceeding its timeout is cancelled.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void stageTimeout() throws Exception {
+        File slow = script("slow.sh", "sleep 30\n");
+
+        try {
+            new ScriptRunner(new ManipulationMetrics(), 1000)
+                    .runStage(Arrays.asList(slow), Arrays.asList("slow.sh"), 1);
+            fail("No exception thrown");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getMessage().contains("did not finish in 1 seconds"));
+        }
+    }
+
+    private File script(String name, String body) throws Exception {
+        File script = folder.newFile(name);
+        FileUtils.writeStringToFile(
+                script,
+                "#!/bin/sh\ncd " + folder.getRoot().getPath() + "\n"
+                        + "wait_for() {\n  i=0\n  while [ ! -f \"$1\" ]; do\n"
+                        + "    i=$((i+1)); [ $i -gt 100 ] && exit 1; sleep 0.1\n  done\n}\n" + body,
+                StandardCharsets.UTF_8);
+        script.setExecutable(true);
+        return script;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the startup cost of the CLI by running it in a separate JVM with class loading logged.
+ */
+public class StartupTest {
+
+    private static final String[] LAZY_PACKAGES = { "kong.unirest.", "io.opentelemetry.",
+            "com.redhat.resilience.otel." };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOverrideOnlyRunDoesNotLoadRestAndOTel() throws Exception {
+        File overrideProject = createProject("override");
+        long start = System.currentTimeMillis();
+        List<String> overrideClasses = runCli("override", overrideProject, "-DversionOverride=2.0.0");
+        long firstWrite = new File(overrideProject, "package.json").lastModified() - start;
+        System.out.println(
+                "Override-only run loaded " + overrideClasses.size() + " classes, first write after " + firstWrite
+                        + " ms");
+
+        assertTrue(
+                FileUtils.readFileToString(new File(overrideProject, "package.json"), StandardCharsets.UTF_8)
+                        .contains("2.0.0"));
+        for (String lazyPackage : LAZY_PACKAGES) {
+            assertFalse(
+                    lazyPackage + " classes were loaded",
+                    overrideClasses.stream().anyMatch(c -> c.startsWith(lazyPackage)));
+        }
+        assertTrue("First write took " + firstWrite + " ms", firstWrite < TimeUnit.SECONDS.toMillis(30));
+
+        // the same with a (failing) call to Dependency Analysis for comparison
+        List<String> restClasses = runCli(
+                "rest",
+                createProject("rest"),
+                "-DrestURL=http://127.0.0.1:1/da/rest/v-1",
+                "-DversioningStrategy=SEMVER",
+                "-DrestConnectionTimeout=1");
+        System.out.println("Run calling Dependency Analysis loaded " + restClasses.size() + " classes");
+        assertTrue(restClasses.stream().anyMatch(c -> c.startsWith("kong.unirest.")));
+        assertTrue(overrideClasses.size() < restClasses.size());
+    }
+
+    private File createProject(String name) throws Exception {
+        File dir = folder.newFolder(name);
+        FileUtils.writeStringToFile(
+                new File(dir, "package.json"),
+                "{\n  \"name\": \"startup-test\",\n  \"version\": \"1.0.0\"\n}\n",
+                StandardCharsets.UTF_8);
+        return dir;
+    }
+
+    private List<String> runCli(String name, File project, String... props) throws Exception {
+        File classLog = new File(folder.getRoot(), name + "-classes.log");
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xlog:class+load=info:file=" + classLog.getAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Cli.class.getName());
+        command.add("-f");
+        command.add(project.getAbsolutePath());
+        command.addAll(Arrays.asList(props));
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(new File(folder.getRoot(), name + ".out"));
+        builder.environment().remove("OTEL_EXPORTER_OTLP_ENDPOINT");
+        Process process = builder.start();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+
+        // lines look like "[0.012s][info][class,load] java.lang.Object source: shared objects file"
+        return Files.readAllLines(classLog.toPath())
+                .stream()
+                .filter(line -> line.contains("[class,load]"))
+                .map(line -> line.substring(line.indexOf("] ", line.indexOf("[class,load]")) + 2))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.jboss.pnc.npmmanipulator.cli.Cli;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Entry point of a benchmarked run in a fresh JVM. It runs the CLI with the given arguments and writes the exit code,
+ * the wall time, the bytes allocated by the live threads and the peak resident set size of the JVM to a properties
+ * file.
+ */
+public final class BenchmarkLauncher {
+
+    static final String EXIT_CODE = "exitCode";
+
+    static final String WALL_MILLIS = "wallMillis";
+
+    static final String ALLOCATED_BYTES = "allocatedBytes";
+
+    static final String PEAK_RSS_KB = "peakRssKb";
+
+    private BenchmarkLauncher() {
+    }
+
+    /**
+     * @param args the statistics file followed by the CLI arguments
+     * @throws IOException in case the statistics cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        long start = System.nanoTime();
+        int exitCode = new Cli().run(Arrays.copyOfRange(args, 1, args.length));
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Properties stats = new Properties();
+        stats.setProperty(EXIT_CODE, String.valueOf(exitCode));
+        stats.setProperty(WALL_MILLIS, String.valueOf(wallMillis));
+        stats.setProperty(ALLOCATED_BYTES, String.valueOf(allocatedBytes(threads) - allocatedBefore));
+        stats.setProperty(PEAK_RSS_KB, String.valueOf(peakRssKb()));
+        try (OutputStream out = Files.newOutputStream(new File(args[0]).toPath())) {
+            stats.store(out, null);
+        }
+        System.exit(exitCode);
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        long allocated = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            allocated += Math.max(bytes, 0);
+        }
+        return allocated;
+    }
+
+    /**
+     * @return the high water mark of the resident set size in kB or -1 when it is not available
+     */
+    private static long peakRssKb() throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        List<String> lines = Files.readAllLines(status, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            // e.g. "VmHWM:	  123456 kB"
+            if (line.startsWith("VmHWM:")) {
+                return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+            }
+        }
+        return -1;
+    }
+
+}
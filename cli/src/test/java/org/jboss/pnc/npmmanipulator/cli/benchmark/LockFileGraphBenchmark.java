@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.impl.lock.LockFileGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Measures reading the {@link LockFileGraph} of generated lock files and querying the dependents of every node. The
+ * results are printed and written to {@code target/lock-file-graph-benchmark.txt}. Run with
+ * {@code mvn -Pbenchmark -pl cli -am test}.
+ */
+public class LockFileGraphBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void run() throws Exception {
+        JsonFactory factory = new JsonFactory();
+        List<String> report = new ArrayList<>();
+        report.add(
+                String.format(
+                        "%-6s %10s %10s %10s %16s %16s",
+                        "lock",
+                        "nodes",
+                        "edges",
+                        "read ms",
+                        "dependents us",
+                        "closure us"));
+        for (int lockfileVersion = 1; lockfileVersion <= 3; lockfileVersion++) {
+            File dir = folder.newFolder("lock" + lockfileVersion);
+            new SyntheticProjectGenerator().packages(1_000)
+                    .fanOut(16)
+                    .externalPackages(50_000)
+                    .lockfileVersion(lockfileVersion)
+                    .generate(dir);
+            File lock = new File(dir, "package-lock.json");
+
+            LockFileGraph graph = null;
+            long readNanos = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                try (JsonParser parser = factory.createParser(lock)) {
+                    graph = LockFileGraph.read(parser);
+                }
+                readNanos = Math.min(readNanos, System.nanoTime() - start);
+            }
+
+            long edges = 0;
+            long start = System.nanoTime();
+            for (int node = 0; node < graph.size(); node++) {
+                edges += graph.getDependents(node).length;
+            }
+            long dependentsNanos = (System.nanoTime() - start) / graph.size();
+
+            int queries = Math.min(graph.size(), 1_000);
+            start = System.nanoTime();
+            for (int node = 0; node < queries; node++) {
+                graph.getTransitiveDependents(node);
+            }
+            long closureNanos = (System.nanoTime() - start) / queries;
+
+            report.add(
+                    String.format(
+                            "v%-5d %10d %10d %10d %16.3f %16.1f",
+                            lockfileVersion,
+                            graph.size(),
+                            edges,
+                            readNanos / 1_000_000,
+                            dependentsNanos / 1000.0,
+                            closureNanos / 1000.0));
+        }
+
+        report.forEach(System.out::println);
+        FileUtils.writeLines(
+                new File("target", "lock-file-graph-benchmark.txt"),
+                StandardCharsets.UTF_8.name(),
+                report);
+    }
+
+}
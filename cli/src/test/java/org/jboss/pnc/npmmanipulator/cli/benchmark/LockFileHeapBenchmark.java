@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.impl.lock.StringPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures the heap retained by the tree of a generated lock file parsed with and without the {@link StringPool}. The
+ * retained size includes the pool itself. The results are printed and written to
+ * {@code target/lock-file-heap-benchmark.txt}. Run with {@code mvn -Pbenchmark -pl cli -am test}.
+ */
+public class LockFileHeapBenchmark {
+
+    private static final int PACKAGES = 1_000;
+
+    private static final int EXTERNAL_PACKAGES = 20_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void run() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(
+                String.format(
+                        "%-6s %10s %14s %14s %10s %10s",
+                        "lock",
+                        "file kB",
+                        "plain MB",
+                        "pooled MB",
+                        "saved",
+                        "pooled"));
+        for (int lockfileVersion = 1; lockfileVersion <= 3; lockfileVersion++) {
+            File dir = folder.newFolder("lock" + lockfileVersion);
+            new SyntheticProjectGenerator().packages(PACKAGES)
+                    .fanOut(16)
+                    .externalPackages(EXTERNAL_PACKAGES)
+                    .lockfileVersion(lockfileVersion)
+                    .generate(dir);
+            File lock = new File(dir, "package-lock.json");
+
+            long plain = retainedBytes(lock, null);
+            StringPool pool = new StringPool(StringPool.DEFAULT_MAX_SIZE);
+            long pooled = retainedBytes(lock, pool);
+            report.add(
+                    String.format(
+                            "v%-5d %10d %14.1f %14.1f %9.0f%% %10d",
+                            lockfileVersion,
+                            lock.length() / 1024,
+                            plain / 1048576.0,
+                            pooled / 1048576.0,
+                            100.0 * (plain - pooled) / plain,
+                            pool.size()));
+        }
+
+        report.forEach(System.out::println);
+        File reportFile = new File("target", "lock-file-heap-benchmark.txt");
+        FileUtils.writeLines(reportFile, StandardCharsets.UTF_8.name(), report);
+    }
+
+    /**
+     * @return the heap retained by the parsed tree and the pool
+     */
+    private static long retainedBytes(File lock, StringPool pool) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        if (pool != null) {
+            mapper.setNodeFactory(pool.nodeFactory());
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        JsonNode tree = mapper.readTree(lock);
+        long after = usedHeap(memory);
+        if (tree.isMissingNode()) {
+            throw new IllegalStateException("Empty lock file " + lock);
+        }
+        return after - before;
+    }
+
+    private static long usedHeap(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.dastub.DAStubServer;
+import org.jboss.pnc.npmmanipulator.impl.NpmManipulationSession;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * End-to-end benchmark of the CLI on synthetic workspaces. Each scenario generates a project, starts a
+ * {@link DAStubServer} and runs the CLI in a fresh JVM per iteration, the same way it is run in builds, with the
+ * version increment queried from the stub, a dependency override and a registry override. The wall time, allocation
+ * and peak RSS of every run are printed and written to {@code target/macro-benchmark.txt}.
+ *
+ * <p>
+ * The class is not run by the default build, use {@code mvn -Pbenchmark -pl cli -am test}. The system property
+ * {@code benchmark.scenario} selects the scenarios whose name contains its value and {@code benchmark.iterations}
+ * sets the number of runs of each scenario.
+ */
+public class MacroBenchmark {
+
+    /** Heap ceiling of the bounded memory scenario, smaller than the heap retained by the loaded lock file. */
+    private static final String BOUNDED_HEAP = "-Xmx48m";
+
+    private static final Scenario[] SCENARIOS = {
+            new Scenario("small-lock1", 20, 3, 500, 1, 50, 10),
+            new Scenario("medium-lock2", 200, 8, 5_000, 2, 200, 50),
+            new Scenario("large-lock2", 1_000, 16, 20_000, 2, 500, 200),
+            new Scenario("large-lock3", 1_000, 16, 20_000, 3, 500, 200),
+            new Scenario("large-lock3-bounded", 1_000, 16, 20_000, 3, 500, 200).jvmOptions(BOUNDED_HEAP)
+                    .cliOptions("-D" + NpmManipulationSession.BOUNDED_MEMORY_THRESHOLD_PARAM + "=0") };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void run() throws Exception {
+        String filter = System.getProperty("benchmark.scenario", "");
+        int iterations = Integer.getInteger("benchmark.iterations", 3);
+
+        List<String> report = new ArrayList<>();
+        report.add(
+                String.format(
+                        "%-20s %4s %10s %10s %12s %12s %12s",
+                        "scenario",
+                        "run",
+                        "lock kB",
+                        "wall ms",
+                        "alloc MB",
+                        "peak RSS MB",
+                        "DA requests"));
+        for (Scenario scenario : SCENARIOS) {
+            if (!scenario.name.contains(filter)) {
+                continue;
+            }
+            for (int i = 1; i <= iterations; i++) {
+                File dir = folder.newFolder(scenario.name + "-" + i);
+                File packageFile = new SyntheticProjectGenerator().packages(scenario.packages)
+                        .fanOut(scenario.fanOut)
+                        .externalPackages(scenario.externalPackages)
+                        .lockfileVersion(scenario.lockfileVersion)
+                        .generate(dir);
+                long lockSize = new File(dir, "package-lock.json").length();
+
+                try (DAStubServer da = new DAStubServer().setLatency(scenario.latencyMillis)
+                        .setVersionsPerPackage(scenario.versionsPerPackage)) {
+                    Properties stats = runCli(dir, packageFile, da, scenario);
+                    assertEquals(
+                            "Run failed, see " + new File(dir, "cli.out"),
+                            "0",
+                            stats.getProperty(BenchmarkLauncher.EXIT_CODE));
+                    assertEquals(1, da.getRequestCount());
+                    report.add(
+                            String.format(
+                                    "%-20s %4d %10d %10s %12.1f %12.1f %12d",
+                                    scenario.name,
+                                    i,
+                                    lockSize / 1024,
+                                    stats.getProperty(BenchmarkLauncher.WALL_MILLIS),
+                                    Long.parseLong(stats.getProperty(BenchmarkLauncher.ALLOCATED_BYTES)) / 1048576.0,
+                                    Long.parseLong(stats.getProperty(BenchmarkLauncher.PEAK_RSS_KB)) / 1024.0,
+                                    da.getRequestCount()));
+                }
+                FileUtils.deleteDirectory(dir);
+            }
+        }
+
+        report.forEach(System.out::println);
+        File reportFile = new File("target", "macro-benchmark.txt");
+        FileUtils.writeLines(reportFile, StandardCharsets.UTF_8.name(), report);
+        System.out.println("Report written to " + reportFile.getAbsolutePath());
+    }
+
+    private Properties runCli(File dir, File packageFile, DAStubServer da, Scenario scenario) throws Exception {
+        File statsFile = new File(dir, "stats.properties");
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(scenario.jvmOptions);
+        command.add(BenchmarkLauncher.class.getName());
+        command.add(statsFile.getAbsolutePath());
+        command.addAll(
+                Arrays.asList(
+                        "-f",
+                        packageFile.getAbsolutePath(),
+                        "-r",
+                        new File(dir, "result.json").getAbsolutePath(),
+                        "-Dworkspaces=true",
+                        "-DrestURL=" + da.getRestUrl(),
+                        "-DversionIncrementalSuffix=redhat",
+                        "-DversioningStrategy=HYPHENED",
+                        "-DdependencyOverride." + SyntheticProjectGenerator.EXTERNAL_PREFIX + "0=9.9.9",
+                        "-DregistryOverride.https://registry.npmjs.org/=https://mirror.example.com/npm/"));
+        command.addAll(scenario.cliOptions);
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(new File(dir, "cli.out"));
+        builder.environment().remove("OTEL_EXPORTER_OTLP_ENDPOINT");
+        Process process = builder.start();
+        assertTrue(process.waitFor(10, TimeUnit.MINUTES));
+
+        assertTrue("Run failed, see " + new File(dir, "cli.out"), statsFile.exists());
+        Properties stats = new Properties();
+        try (InputStream in = Files.newInputStream(statsFile.toPath())) {
+            stats.load(in);
+        }
+        return stats;
+    }
+
+    /** Size of the generated project and of the DA responses. */
+    private static final class Scenario {
+
+        private final String name;
+
+        private final int packages;
+
+        private final int fanOut;
+
+        private final int externalPackages;
+
+        private final int lockfileVersion;
+
+        private final long latencyMillis;
+
+        private final int versionsPerPackage;
+
+        private List<String> jvmOptions = Collections.emptyList();
+
+        private List<String> cliOptions = Collections.emptyList();
+
+        private Scenario(
+                String name,
+                int packages,
+                int fanOut,
+                int externalPackages,
+                int lockfileVersion,
+                long latencyMillis,
+                int versionsPerPackage) {
+            this.name = name;
+            this.packages = packages;
+            this.fanOut = fanOut;
+            this.externalPackages = externalPackages;
+            this.lockfileVersion = lockfileVersion;
+            this.latencyMillis = latencyMillis;
+            this.versionsPerPackage = versionsPerPackage;
+        }
+
+        private Scenario jvmOptions(String... options) {
+            jvmOptions = Arrays.asList(options);
+            return this;
+        }
+
+        private Scenario cliOptions(String... options) {
+            cliOptions = Arrays.asList(options);
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates a synthetic NPM workspace project, so that the manipulation of large repositories can be measured without
+ * access to them. The project consists of a root package file with {@code packages/*} workspaces, the workspace
+ * packages and a lock file of the requested version referencing them together with the external dependencies. Each
+ * workspace package depends on up to {@link #fanOut(int)} earlier workspace packages and on the same number of external
+ * packages. Every tenth external package also brings a nested copy of another one in a different version. The output
+ * is fully determined by the parameters.
+ */
+public class SyntheticProjectGenerator {
+
+    /** The name of the root package. */
+    public static final String ROOT_NAME = "bench-root";
+
+    /** The name prefix of the workspace packages, followed by their number. */
+    public static final String PACKAGE_PREFIX = "bench-pkg-";
+
+    /** The name prefix of the external packages, followed by their number. */
+    public static final String EXTERNAL_PREFIX = "ext-lib-";
+
+    /** The version of the root and all the workspace packages. */
+    public static final String VERSION = "1.0.0";
+
+    private static final String REGISTRY = "https://registry.npmjs.org/";
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private int packages = 10;
+
+    private int fanOut = 3;
+
+    private int externalPackages = 100;
+
+    private int lockfileVersion = 2;
+
+    private long seed = 42;
+
+    /**
+     * @param packages the number of workspace packages
+     * @return this generator
+     */
+    public SyntheticProjectGenerator packages(int packages) {
+        this.packages = packages;
+        return this;
+    }
+
+    /**
+     * @param fanOut the number of workspace and external dependencies of each workspace package
+     * @return this generator
+     */
+    public SyntheticProjectGenerator fanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    /**
+     * @param externalPackages the number of external packages in the lock file, which determines its size
+     * @return this generator
+     */
+    public SyntheticProjectGenerator externalPackages(int externalPackages) {
+        this.externalPackages = externalPackages;
+        return this;
+    }
+
+    /**
+     * @param lockfileVersion the lock file version, 1 with only the {@code dependencies} section, 2 with both the
+     *        {@code dependencies} and {@code packages} sections or 3 with only the {@code packages} section
+     * @return this generator
+     */
+    public SyntheticProjectGenerator lockfileVersion(int lockfileVersion) {
+        if (lockfileVersion < 1 || lockfileVersion > 3) {
+            throw new IllegalArgumentException("Unsupported lock file version " + lockfileVersion);
+        }
+        this.lockfileVersion = lockfileVersion;
+        return this;
+    }
+
+    /**
+     * @param seed the seed of the random choice of the dependencies
+     * @return this generator
+     */
+    public SyntheticProjectGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes the project to a directory.
+     *
+     * @param dir the target directory, created if it does not exist
+     * @return the root package file
+     * @throws IOException in case of a writing error
+     */
+    public File generate(File dir) throws IOException {
+        Random random = new Random(seed);
+        ObjectNode rootPackage = mapper.createObjectNode();
+        rootPackage.put("name", ROOT_NAME);
+        rootPackage.put("version", VERSION);
+        rootPackage.put("private", true);
+        rootPackage.putArray("workspaces").add("packages/*");
+
+        ObjectNode lock = mapper.createObjectNode();
+        lock.put("name", ROOT_NAME);
+        lock.put("version", VERSION);
+        lock.put("lockfileVersion", lockfileVersion);
+        lock.put("requires", true);
+        ObjectNode lockPackages = lockfileVersion >= 2 ? lock.putObject("packages") : null;
+        ObjectNode lockDependencies = lockfileVersion <= 2 ? lock.putObject("dependencies") : null;
+        if (lockPackages != null) {
+            ObjectNode root = lockPackages.putObject("");
+            root.put("name", ROOT_NAME);
+            root.put("version", VERSION);
+            root.set("workspaces", rootPackage.get("workspaces").deepCopy());
+        }
+
+        for (int i = 0; i < packages; i++) {
+            String name = PACKAGE_PREFIX + i;
+            String path = "packages/pkg-" + i;
+            Map<String, String> dependencies = new LinkedHashMap<>();
+            for (int j = 0; j < Math.min(fanOut, i); j++) {
+                dependencies.put(PACKAGE_PREFIX + random.nextInt(i), "^" + VERSION);
+            }
+            for (int j = 0; j < fanOut && externalPackages > 0; j++) {
+                int external = random.nextInt(externalPackages);
+                dependencies.put(EXTERNAL_PREFIX + external, "^" + externalVersion(external));
+            }
+
+            ObjectNode workspacePackage = mapper.createObjectNode();
+            workspacePackage.put("name", name);
+            workspacePackage.put("version", VERSION);
+            ObjectNode packageDependencies = workspacePackage.putObject("dependencies");
+            dependencies.forEach(packageDependencies::put);
+            File packageDir = new File(dir, path);
+            packageDir.mkdirs();
+            mapper.writeValue(new File(packageDir, "package.json"), workspacePackage);
+
+            if (lockPackages != null) {
+                ObjectNode link = lockPackages.putObject("node_modules/" + name);
+                link.put("resolved", path);
+                link.put("link", true);
+                lockPackages.set(path, workspacePackage.deepCopy());
+            }
+            if (lockDependencies != null) {
+                ObjectNode entry = lockDependencies.putObject(name);
+                entry.put("version", "file:" + path);
+                ObjectNode requires = entry.putObject("requires");
+                dependencies.forEach(requires::put);
+            }
+        }
+
+        for (int i = 0; i < externalPackages; i++) {
+            String name = EXTERNAL_PREFIX + i;
+            String version = externalVersion(i);
+            Map<String, String> requires = new LinkedHashMap<>();
+            for (int j = 0; j < Math.min(fanOut, i); j++) {
+                int dependency = random.nextInt(i);
+                requires.put(EXTERNAL_PREFIX + dependency, "^" + externalVersion(dependency));
+            }
+            String nested = i % 10 == 9 ? EXTERNAL_PREFIX + random.nextInt(i) : null;
+            String nestedVersion = "0." + i + ".0";
+
+            if (lockPackages != null) {
+                ObjectNode entry = lockPackages.putObject("node_modules/" + name);
+                fillExternal(entry, name, version, random);
+                if (!requires.isEmpty()) {
+                    ObjectNode entryDependencies = entry.putObject("dependencies");
+                    requires.forEach(entryDependencies::put);
+                }
+                if (nested != null) {
+                    fillExternal(
+                            lockPackages.putObject("node_modules/" + name + "/node_modules/" + nested),
+                            nested,
+                            nestedVersion,
+                            random);
+                }
+            }
+            if (lockDependencies != null) {
+                ObjectNode entry = lockDependencies.putObject(name);
+                fillExternal(entry, name, version, random);
+                if (!requires.isEmpty()) {
+                    ObjectNode entryRequires = entry.putObject("requires");
+                    requires.forEach(entryRequires::put);
+                }
+                if (nested != null) {
+                    fillExternal(entry.putObject("dependencies").putObject(nested), nested, nestedVersion, random);
+                }
+            }
+        }
+
+        dir.mkdirs();
+        File packageFile = new File(dir, "package.json");
+        mapper.writeValue(packageFile, rootPackage);
+        mapper.writeValue(new File(dir, "package-lock.json"), lock);
+        return packageFile;
+    }
+
+    private static String externalVersion(int index) {
+        return (1 + index % 5) + "." + (index % 17) + "." + (index % 3);
+    }
+
+    private static void fillExternal(ObjectNode entry, String name, String version, Random random) {
+        byte[] hash = new byte[64];
+        random.nextBytes(hash);
+        entry.put("version", version);
+        entry.put("resolved", REGISTRY + name + "/-/" + name + "-" + version + ".tgz");
+        entry.put("integrity", "sha512-" + Base64.getEncoder().encodeToString(hash));
+    }
+
+}
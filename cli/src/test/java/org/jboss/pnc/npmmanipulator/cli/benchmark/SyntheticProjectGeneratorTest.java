@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.cli.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.jboss.pnc.npmmanipulator.cli.Cli;
+import org.jboss.pnc.npmmanipulator.dastub.DAStubServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks that the projects generated by {@link SyntheticProjectGenerator} are manipulated by the CLI using the
+ * {@link DAStubServer} with every lock file version, so that {@link MacroBenchmark} keeps measuring working runs.
+ */
+public class SyntheticProjectGeneratorTest {
+
+    private static final String NEXT_VERSION = "1.0.0-redhat-4";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testLockfileVersions() throws Exception {
+        for (int lockfileVersion = 1; lockfileVersion <= 3; lockfileVersion++) {
+            File dir = folder.newFolder("lock" + lockfileVersion);
+            File packageFile = new SyntheticProjectGenerator().packages(5)
+                    .fanOut(2)
+                    .externalPackages(20)
+                    .lockfileVersion(lockfileVersion)
+                    .generate(dir);
+
+            try (DAStubServer da = new DAStubServer().setVersionsPerPackage(3)) {
+                assertEquals(
+                        0,
+                        new Cli().run(
+                                new String[] { "-f", packageFile.getAbsolutePath(), "-Dworkspaces=true",
+                                        "-DrestURL=" + da.getRestUrl(), "-DversionIncrementalSuffix=redhat",
+                                        "-DversioningStrategy=HYPHENED" }));
+                assertEquals(1, da.getRequestCount());
+            }
+
+            JsonNode lastPackage = mapper.readTree(new File(dir, "packages/pkg-4/package.json"));
+            assertEquals(NEXT_VERSION, lastPackage.get("version").asText());
+            JsonNode lock = mapper.readTree(new File(dir, "package-lock.json"));
+            assertEquals(lockfileVersion, lock.get("lockfileVersion").asInt());
+            assertEquals(NEXT_VERSION, lock.get("version").asText());
+            assertEquals(lockfileVersion >= 2, lock.has("packages"));
+            assertEquals(lockfileVersion <= 2, lock.has("dependencies"));
+            if (lockfileVersion >= 2) {
+                assertEquals(NEXT_VERSION, lock.get("packages").get("packages/pkg-4").get("version").asText());
+            }
+            assertFalse(lastPackage.get("dependencies").isEmpty());
+            assertTrue(new File(dir, "packages/pkg-0/package.json").isFile());
+        }
+    }
+
+}
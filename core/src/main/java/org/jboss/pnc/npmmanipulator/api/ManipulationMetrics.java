@@ -0,0 +1,347 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.api;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named timers and counters of one manipulation, e.g. the time spent by each manipulator or the number of bytes read.
+ * Timers accumulate the number of measurements, their total and their maximum. All the methods are thread-safe.
+ *
+ * <p>
+ * The measurements can also be passed to {@link Observer}s, e.g. to export them to a tracing or monitoring system. The
+ * timers started with {@link #start(String)} can carry attributes describing the measured operation for them.
+ */
+public class ManipulationMetrics {
+
+    /** Timer of parsing the package and lock files. */
+    public static final String PARSE = "parse";
+
+    /** Prefix of the timers of the manipulators' changes, followed by the manipulator's simple class name. */
+    public static final String MANIPULATOR_PREFIX = "manipulator.";
+
+    /** Timer of the requests to Dependency Analysis. */
+    public static final String DA_REQUEST = "da.request";
+
+    /** Timer of writing the changed files. */
+    public static final String WRITE = "write";
+
+    /** Timer of writing the files of one package, within {@link #WRITE}. */
+    public static final String UPDATE = "update";
+
+    /** Timer of the pre-manipulation scripts. */
+    public static final String PRE_SCRIPT = "script.pre";
+
+    /** Timer of the post-manipulation scripts. */
+    public static final String POST_SCRIPT = "script.post";
+
+    /** Timer of one script, within {@link #PRE_SCRIPT} or {@link #POST_SCRIPT}. */
+    public static final String SCRIPT = "script";
+
+    /** Prefix of the timer of each script, followed by the script name. */
+    public static final String SCRIPT_PREFIX = "script.run.";
+
+    /** Counter of the bytes read from the project files. */
+    public static final String BYTES_READ = "bytesRead";
+
+    /** Counter of the bytes written to the project files. */
+    public static final String BYTES_WRITTEN = "bytesWritten";
+
+    /** Counter of the manipulated packages. */
+    public static final String PACKAGES = "packages";
+
+    /** Counter of the changed packages. */
+    public static final String PACKAGES_CHANGED = "packagesChanged";
+
+    /** Counter of the packages queried in Dependency Analysis. */
+    public static final String DA_PACKAGES = "da.packages";
+
+    /** Timer attribute with the name of the package. */
+    public static final String PACKAGE_NAME_ATTRIBUTE = "package.name";
+
+    /** Timer attribute with the path of the file. */
+    public static final String FILE_PATH_ATTRIBUTE = "file.path";
+
+    /** Timer attribute with the size of the file in bytes. */
+    public static final String FILE_SIZE_ATTRIBUTE = "file.size";
+
+    /** Timer attribute with the number of packages. */
+    public static final String PACKAGES_ATTRIBUTE = "packages";
+
+    /** Timer attribute with the number of package versions. */
+    public static final String VERSIONS_ATTRIBUTE = "versions";
+
+    private static final ManipulationMetrics DISABLED = new ManipulationMetrics(false);
+
+    private final boolean enabled;
+
+    private final ConcurrentMap<String, TimerValue> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+
+    public ManipulationMetrics() {
+        this(true);
+    }
+
+    private ManipulationMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return metrics ignoring all the measurements
+     */
+    public static ManipulationMetrics disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Adds an observer of all the following measurements. It is ignored by the {@link #disabled()} metrics.
+     *
+     * @param observer the observer
+     */
+    public void addObserver(Observer observer) {
+        if (enabled) {
+            observers.add(observer);
+        }
+    }
+
+    /**
+     * Starts a measurement, which is recorded when the returned timer is closed.
+     *
+     * @param name the timer name
+     * @return the running timer
+     */
+    public Timer start(String name) {
+        Observer[] timerObservers = null;
+        Object[] contexts = null;
+        if (!observers.isEmpty()) {
+            timerObservers = observers.toArray(new Observer[0]);
+            contexts = new Object[timerObservers.length];
+            for (int i = 0; i < contexts.length; i++) {
+                contexts[i] = timerObservers[i].started(name);
+            }
+        }
+        return new Timer(name, timerObservers, contexts, System.nanoTime());
+    }
+
+    /**
+     * Wraps a task to be run in another thread, so that the timers it starts are nested in the timers running in the
+     * calling thread, e.g. the spans of a tracing observer get their parent.
+     *
+     * @param task the task
+     * @param <T> the task result type
+     * @return the task wrapped by all the observers
+     */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        Callable<T> wrapped = task;
+        for (Observer observer : observers) {
+            wrapped = observer.wrap(wrapped);
+        }
+        return wrapped;
+    }
+
+    /**
+     * Records a measurement.
+     *
+     * @param name the timer name
+     * @param nanos the measured time in nanoseconds
+     */
+    public void record(String name, long nanos) {
+        if (enabled) {
+            timers.computeIfAbsent(name, k -> new TimerValue()).record(nanos);
+        }
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param name the counter name
+     * @param delta the value to add
+     */
+    public void increment(String name, long delta) {
+        if (enabled) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+            for (Observer observer : observers) {
+                observer.incremented(name, delta);
+            }
+        }
+    }
+
+    /**
+     * @param name the counter name
+     * @return the current value of the counter, 0 if it was never incremented
+     */
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Provides the current values in a form suitable for serialization: {@code timers} with the {@code count},
+     * {@code totalMillis} and {@code maxMillis} of each timer and {@code counters} with the value of each counter, both
+     * sorted by name.
+     *
+     * @return the current values
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> timerValues = new TreeMap<>();
+        timers.forEach((name, timer) -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", timer.count.get());
+            values.put("totalMillis", toMillis(timer.total.get()));
+            values.put("maxMillis", toMillis(timer.max.get()));
+            timerValues.put(name, values);
+        });
+        Map<String, Object> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("timers", timerValues);
+        snapshot.put("counters", counterValues);
+        return snapshot;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1) * 1000) / 1000.0;
+    }
+
+    /** Running measurement recorded on close. */
+    public final class Timer implements AutoCloseable {
+
+        private final String name;
+
+        /** The observers when the timer started, null if there were none. */
+        private final Observer[] observers;
+
+        /** The contexts returned by the observers when the timer started. */
+        private final Object[] contexts;
+
+        private final long start;
+
+        private Map<String, Object> attributes;
+
+        private Timer(String name, Observer[] observers, Object[] contexts, long start) {
+            this.name = name;
+            this.observers = observers;
+            this.contexts = contexts;
+            this.start = start;
+        }
+
+        /**
+         * Sets an attribute describing the measured operation. The attributes are passed only to the observers.
+         *
+         * @param key the attribute key
+         * @param value the attribute value
+         * @return this timer
+         */
+        public Timer attribute(String key, Object value) {
+            if (observers != null) {
+                if (attributes == null) {
+                    attributes = new LinkedHashMap<>();
+                }
+                attributes.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            record(name, nanos);
+            if (observers != null) {
+                Map<String, Object> timerAttributes = attributes == null ? Collections.emptyMap() : attributes;
+                for (int i = observers.length - 1; i >= 0; i--) {
+                    observers[i].stopped(contexts[i], name, nanos, timerAttributes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Observer of the measurements, e.g. exporting them to a tracing or monitoring system. The timers are started and
+     * stopped in the same thread and nested timers are stopped before their parents.
+     */
+    public interface Observer {
+
+        /**
+         * Called when a timer starts.
+         *
+         * @param name the timer name
+         * @return a context passed to {@link #stopped(Object, String, long, Map)} of the same timer, may be null
+         */
+        Object started(String name);
+
+        /**
+         * Called when a timer stops.
+         *
+         * @param context the context returned by {@link #started(String)}
+         * @param name the timer name
+         * @param nanos the measured time in nanoseconds
+         * @param attributes the attributes describing the measured operation
+         */
+        void stopped(Object context, String name, long nanos, Map<String, Object> attributes);
+
+        /**
+         * Called when a counter is incremented.
+         *
+         * @param name the counter name
+         * @param delta the added value
+         */
+        void incremented(String name, long delta);
+
+        /**
+         * Wraps a task to be run in another thread to carry the context of the timers running in the calling thread.
+         *
+         * @param task the task
+         * @param <T> the task result type
+         * @return the wrapped task, the task itself by default
+         */
+        default <T> Callable<T> wrap(Callable<T> task) {
+            return task;
+        }
+    }
+
+    private static final class TimerValue {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+}
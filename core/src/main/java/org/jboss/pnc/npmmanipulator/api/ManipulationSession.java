@@ -19,6 +19,7 @@ package org.jboss.pnc.npmmanipulator.api;
 
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * The manipulation session supposed to store current state. State consists of both configuration (normally detected
@@ -62,4 +63,60 @@ public interface ManipulationSession<R> {
      */
     void writeResult();
 
+    /**
+     * @return the timers and counters of the manipulation, by default ones ignoring all the measurements
+     */
+    default ManipulationMetrics getMetrics() {
+        return ManipulationMetrics.disabled();
+    }
+
+    /**
+     * Writes the changed projects. Sessions may instead only report the changes without touching the files. Sessions
+     * may also write projects with changes that are found out only when their files are written, e.g. while streaming
+     * them.
+     *
+     * @param changed the changed projects
+     * @return the projects that were changed, at least the given ones
+     * @throws ManipulationException in case of an update failure
+     */
+    default Set<Project> writeChanges(Set<Project> changed) throws ManipulationException {
+        for (Project project : changed) {
+            project.update();
+        }
+        return changed;
+    }
+
+    /**
+     * Reports the changes found in the verify mode, i.e. the differences from the expected state, without writing them.
+     *
+     * @param changed the changed projects
+     * @return the projects that do not match the expected state, at least the given ones
+     * @throws ManipulationException in case of an error when reading the projects
+     */
+    default Set<Project> verifyChanges(Set<Project> changed) throws ManipulationException {
+        return changed;
+    }
+
+    /**
+     * Replays the result and the changed files of an earlier manipulation of identical inputs, if the session keeps
+     * such results.
+     *
+     * @param projects the projects to be manipulated
+     * @return true if the result was replayed, so the manipulation can be skipped, otherwise false
+     * @throws ManipulationException in case of an error when reading the inputs or replaying the result
+     */
+    default boolean replayCachedResult(List<Project> projects) throws ManipulationException {
+        return false;
+    }
+
+    /**
+     * Keeps the result and the changed files of a finished manipulation for {@link #replayCachedResult(List)}.
+     *
+     * @param projects the manipulated projects
+     * @param changed the changed projects, already updated
+     * @throws ManipulationException in case of an error when storing the result
+     */
+    default void cacheResult(List<Project> projects, Set<Project> changed) throws ManipulationException {
+    }
+
 }
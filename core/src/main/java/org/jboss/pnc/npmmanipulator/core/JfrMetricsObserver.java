@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Map;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Emits a Java Flight Recorder {@link PhaseEvent} for every timer of the {@link ManipulationMetrics}, carrying its
+ * duration and attributes. The events are created only while a recording enables them.
+ */
+public final class JfrMetricsObserver implements ManipulationMetrics.Observer {
+
+    @Override
+    public Object started(String name) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void stopped(Object context, String name, long nanos, Map<String, Object> attributes) {
+        if (context == null) {
+            return;
+        }
+        PhaseEvent event = (PhaseEvent) context;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = name;
+            event.packageName = stringAttribute(attributes, ManipulationMetrics.PACKAGE_NAME_ATTRIBUTE);
+            event.filePath = stringAttribute(attributes, ManipulationMetrics.FILE_PATH_ATTRIBUTE);
+            event.fileSize = longAttribute(attributes, ManipulationMetrics.FILE_SIZE_ATTRIBUTE);
+            event.packages = longAttribute(attributes, ManipulationMetrics.PACKAGES_ATTRIBUTE);
+            event.versions = longAttribute(attributes, ManipulationMetrics.VERSIONS_ATTRIBUTE);
+            event.commit();
+        }
+    }
+
+    @Override
+    public void incremented(String name, long delta) {
+        // the byte counts are carried by the phase events
+    }
+
+    private static String stringAttribute(Map<String, Object> attributes, String key) {
+        Object value = attributes.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    private static long longAttribute(Map<String, Object> attributes, String key) {
+        Object value = attributes.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Starts a recording with the JDK default settings and all the {@link PhaseEvent}s enabled, and adds the observer
+     * emitting them to the metrics.
+     *
+     * @param metrics the metrics of the session
+     * @param file the file the recording is written to when it is closed
+     * @return the running recording
+     * @throws ManipulationException in case the recording cannot be started
+     */
+    public static Recording startRecording(ManipulationMetrics metrics, Path file) throws ManipulationException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setDestination(file);
+        } catch (IOException | ParseException ex) {
+            throw new ManipulationException("Cannot start the flight recording to {}.", file, ex);
+        }
+        recording.setName("npm-manipulator");
+        recording.enable(PhaseEvent.NAME).withThreshold(Duration.ZERO);
+        recording.start();
+        metrics.addObserver(new JfrMetricsObserver());
+        return recording;
+    }
+
+}
@@ -15,7 +15,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.jboss.pnc.npmmanipulator.cli;
+package org.jboss.pnc.npmmanipulator.core;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -25,9 +25,12 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
 import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
 import org.jboss.pnc.npmmanipulator.api.Manipulator;
 import org.jboss.pnc.npmmanipulator.api.Project;
+import org.jboss.pnc.npmmanipulator.api.VerificationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +38,12 @@ public class ManipulationManager<R> {
 
     public static final String MANIPULATION_DISABLE_PROPERTY = "manipulation.disable";
 
+    /**
+     * Property enabling the verification whether the projects already are in the state the manipulation would produce.
+     * Nothing is written and the manipulation stops after the first manipulator finding a mismatch.
+     */
+    public static final String VERIFY_PROPERTY = "verify";
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private List<Manipulator<R>> manipulators;
@@ -46,6 +55,8 @@ public class ManipulationManager<R> {
     public void scanAndApply(final ManipulationSession<R> session) throws ManipulationException {
         // get project files list
         List<Project> projects = session.getProjects();
+        ManipulationMetrics metrics = session.getMetrics();
+        metrics.increment(ManipulationMetrics.PACKAGES, projects.size());
 
         Properties userProps = session.getUserProps();
         boolean manipulationDisabled = false;
@@ -54,22 +65,34 @@ public class ManipulationManager<R> {
             manipulationDisabled = StringUtils.isEmpty(manipDisableValue) || "true".equalsIgnoreCase(manipDisableValue);
         }
 
+        boolean verify = Boolean.parseBoolean(userProps.getProperty(VERIFY_PROPERTY));
+
+        Set<Project> mismatched = null;
         if (manipulationDisabled) {
             logger.info("All manipulation disabled by property {}.", MANIPULATION_DISABLE_PROPERTY);
+        } else if (verify) {
+            mismatched = session.verifyChanges(applyManipulations(projects, true, metrics));
+        } else if (session.replayCachedResult(projects)) {
+            logger.info("Inputs did not change since the cached manipulation, its result was replayed.");
         } else {
             // apply manipulators on project files list and get changed ones back
-            Set<Project> changed = applyManipulations(projects);
+            Set<Project> changed = applyManipulations(projects, false, metrics);
 
             // process the changes
-            processChanges(changed);
+            try (Timer timer = metrics.start(ManipulationMetrics.WRITE)) {
+                changed = session.writeChanges(changed);
+            }
+            metrics.increment(ManipulationMetrics.PACKAGES_CHANGED, changed.size());
+
+            session.cacheResult(projects, changed);
         }
 
         session.writeResult();
-    }
 
-    private void processChanges(Set<Project> changed) throws ManipulationException {
-        for (Project project : changed) {
-            project.update();
+        if (mismatched != null && !mismatched.isEmpty()) {
+            throw new VerificationException(
+                    "Verification failed, {} projects do not match the expected state.",
+                    mismatched.size());
         }
     }
 
@@ -78,10 +101,15 @@ public class ManipulationManager<R> {
      * dependencies' status.
      *
      * @param projects the list of Projects to apply the changes to
+     * @param verify whether to stop after the first manipulator changing any project
+     * @param metrics the metrics to record the time spent by each manipulator to
      * @return a set of the changed projects, never {@code null}
      * @throws ManipulationException if an error occurs.
      */
-    private Set<Project> applyManipulations(final List<Project> projects) throws ManipulationException {
+    private Set<Project> applyManipulations(
+            final List<Project> projects,
+            boolean verify,
+            ManipulationMetrics metrics) throws ManipulationException {
         final Set<Project> changed = new HashSet<>();
         final Set<Manipulator<R>> todo = new HashSet<>(manipulators);
         int done;
@@ -89,11 +117,20 @@ public class ManipulationManager<R> {
             done = 0;
             for (Manipulator<R> manipulator : new ArrayList<>(todo)) {
                 if (dependenciesDone(manipulator, todo)) {
-                    final Set<Project> mChanged = manipulator.applyChanges(projects);
+                    final Set<Project> mChanged;
+                    try (Timer timer = metrics
+                            .start(ManipulationMetrics.MANIPULATOR_PREFIX + manipulator.getClass().getSimpleName())) {
+                        timer.attribute(ManipulationMetrics.PACKAGES_ATTRIBUTE, projects.size());
+                        mChanged = manipulator.applyChanges(projects);
+                    }
 
                     if (mChanged != null) {
                         changed.addAll(mChanged);
                     }
+                    if (verify && !changed.isEmpty()) {
+                        logger.info("Mismatch found by {}, stopping the verification.", manipulator.getClass());
+                        return changed;
+                    }
 
                     todo.remove(manipulator);
                     done++;
@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of one measured phase of the manipulation, e.g. parsing a package file or running a
+ * manipulator. The fields not applicable to the phase are left empty.
+ */
+@Name(PhaseEvent.NAME)
+@Label("Manipulation Phase")
+@Category("NPM Manipulator")
+@Description("A measured phase of the manipulation")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    static final String NAME = "org.jboss.pnc.npmmanipulator.Phase";
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Package Name")
+    String packageName;
+
+    @Label("File Path")
+    String filePath;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Label("Packages")
+    long packages;
+
+    @Label("Versions")
+    long versions;
+
+}
@@ -0,0 +1,268 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.dastub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in of the Dependency Analysis {@code reports/versions/impl} endpoint listening on an ephemeral loopback
+ * port. Every requested package is answered with the versions set by {@link #setAvailableVersions(String, String...)}
+ * or, for the other packages, with {@link #setVersionsPerPackage(int) generated} {@code -redhat-} versions of the
+ * requested version. Failures are injected by {@link #enqueue(Response) queueing} responses, which are sent instead of
+ * the versions to the next requests in order. Every response can be delayed by a fixed latency and all the received
+ * requests are recorded, so that the number and size of the calls can be checked.
+ *
+ * <p>
+ * The server is thread safe and can be reconfigured while it is running.
+ */
+public class DAStubServer implements AutoCloseable {
+
+    /** The path of the endpoint below the REST URL. */
+    public static final String VERSIONS_PATH = "/v-1/reports/versions/impl";
+
+    private static final String REST_PATH = "/da/rest";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, List<String>> availableVersions = new ConcurrentHashMap<>();
+
+    private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "da-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final HttpServer server;
+
+    private volatile long latencyMillis;
+
+    private volatile int versionsPerPackage;
+
+    /**
+     * Starts the server.
+     *
+     * @throws IOException in case the server cannot be started
+     */
+    public DAStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(REST_PATH + VERSIONS_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the value of the {@code restURL} property pointing to this server
+     */
+    public String getRestUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + REST_PATH;
+    }
+
+    /**
+     * @param latencyMillis the delay of every response
+     * @return this server
+     */
+    public DAStubServer setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param versionsPerPackage the number of versions generated for the packages without explicitly set versions
+     * @return this server
+     */
+    public DAStubServer setVersionsPerPackage(int versionsPerPackage) {
+        this.versionsPerPackage = versionsPerPackage;
+        return this;
+    }
+
+    /**
+     * @param name the package name
+     * @param versions the available versions of the package regardless of the requested version
+     * @return this server
+     */
+    public DAStubServer setAvailableVersions(String name, String... versions) {
+        availableVersions.put(name, Arrays.asList(versions));
+        return this;
+    }
+
+    /**
+     * Queues a response sent to the next request instead of the available versions.
+     *
+     * @param response the response
+     * @return this server
+     */
+    public DAStubServer enqueue(Response response) {
+        responses.add(response);
+        return this;
+    }
+
+    /**
+     * @return the number of requests received so far
+     */
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    /**
+     * @return the total number of packages in the requests received so far
+     */
+    public int getPackageCount() {
+        return requests.stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * @return the names of the requested packages of each request received so far
+     */
+    public List<List<String>> getRequests() {
+        return Collections.unmodifiableList(new ArrayList<>(requests));
+    }
+
+    /** Forgets the received requests and drops the queued responses. The versions and latency are kept. */
+    public void reset() {
+        requests.clear();
+        responses.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody(); OutputStream out = exchange.getResponseBody()) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            JsonNode request = mapper.readTree(in);
+            List<String> names = new ArrayList<>();
+            ArrayNode versions = mapper.createArrayNode();
+            for (JsonNode requested : request.path("packages")) {
+                String name = requested.path("name").asText();
+                String version = requested.path("version").asText();
+                names.add(name);
+                ObjectNode entry = versions.addObject();
+                entry.put("name", name);
+                entry.put("version", version);
+                ArrayNode available = entry.putArray("availableVersions");
+                List<String> explicit = availableVersions.get(name);
+                if (explicit != null) {
+                    explicit.forEach(available::add);
+                } else {
+                    for (int i = 1; i <= versionsPerPackage; i++) {
+                        available.add(version + "-redhat-" + i);
+                    }
+                }
+            }
+            requests.add(Collections.unmodifiableList(names));
+
+            Response response = responses.poll();
+            if (response == null) {
+                response = new Response(200, "application/json", mapper.writeValueAsString(versions));
+            }
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+            out.write(body);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Response injected instead of the available versions.
+     */
+    public static final class Response {
+
+        private final int status;
+
+        private final String contentType;
+
+        private final String body;
+
+        private Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * @param status the HTTP status
+         * @param errorType the error type
+         * @param errorMessage the error message
+         * @param details the error details
+         * @return a JSON error message the way Dependency Analysis reports errors
+         */
+        public static Response error(int status, String errorType, String errorMessage, String details) {
+            ObjectNode error = new ObjectMapper().createObjectNode();
+            error.put("errorType", errorType);
+            error.put("errorMessage", errorMessage);
+            error.put("details", details);
+            return new Response(status, "application/json", error.toString());
+        }
+
+        /**
+         * @param status the HTTP status
+         * @param html the HTML page, e.g. of a proxy in front of Dependency Analysis
+         * @return an HTML error page
+         */
+        public static Response html(int status, String html) {
+            return new Response(status, "text/html", html);
+        }
+
+        /**
+         * @param status the HTTP status
+         * @return a response without body
+         */
+        public static Response empty(int status) {
+            return new Response(status, "application/json", "");
+        }
+    }
+
+}
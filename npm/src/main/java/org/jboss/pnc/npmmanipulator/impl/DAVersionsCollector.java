@@ -18,8 +18,6 @@
 package org.jboss.pnc.npmmanipulator.impl;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
-import static org.apache.commons.lang3.StringUtils.isNotEmpty;
-import static org.apache.http.HttpStatus.SC_OK;
 import static org.jboss.pnc.npmmanipulator.impl.NpmPackageVersionManipulator.VersioningStrategy.SEMVER;
 
 import java.util.ArrayList;
@@ -29,42 +27,34 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Properties;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
-import org.apache.commons.codec.binary.Base32;
 import org.commonjava.atlas.npm.ident.ref.NpmPackageRef;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
 import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
 import org.jboss.pnc.npmmanipulator.api.Manipulator;
 import org.jboss.pnc.npmmanipulator.api.Project;
 import org.jboss.pnc.npmmanipulator.impl.NpmPackageVersionManipulator.VersioningStrategy;
-import org.jboss.pnc.npmmanipulator.impl.da.DAException;
-import org.jboss.pnc.npmmanipulator.impl.da.ReportMapper;
-import org.jboss.pnc.npmmanipulator.impl.da.ReportObjectMapper;
+import org.jboss.pnc.npmmanipulator.impl.da.DAClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 
 import com.github.zafarkhaja.semver.Version;
-import com.redhat.resilience.otel.OTelCLIHelper;
-
-import io.opentelemetry.api.trace.Span;
-import io.opentelemetry.api.trace.SpanContext;
-import kong.unirest.HttpResponse;
-import kong.unirest.ObjectMapper;
-import kong.unirest.Unirest;
-import kong.unirest.UnirestException;
 
 /**
  * This Manipulator collects data from an external service while doesn't do any manipulations to the project
  * definitions. It makes a REST call to loadRemoteOverrides the NVs to align the project version and dependencies to. It
  * will prepopulate package versions into the state under key {@link #AVAILABLE_VERSIONS} in case the restURL was
- * provided and versionOverride and versionSuffixOverride values is empty.
+ * provided and versionOverride and versionSuffixOverride values is empty. When the available versions are already in
+ * the state, e.g. provided by an embedding application, no REST call is made.
+ *
+ * <p>
+ * The REST calls are done by {@link DAClient}, which is loaded only when this manipulator is active, so runs that do not
+ * need Dependency Analysis do not load the HTTP client and OpenTelemetry classes at all.
  */
 public class DAVersionsCollector implements Manipulator<NpmResult> {
 
@@ -74,10 +64,6 @@ public class DAVersionsCollector implements Manipulator<NpmResult> {
 
     public static final long DEFAULT_SOCKET_TIMEOUT_SEC = 600;
 
-    private static final Random RANDOM = new Random();
-
-    private static final Base32 CODEC = new Base32();
-
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private ManipulationSession<NpmResult> session;
@@ -101,8 +87,6 @@ public class DAVersionsCollector implements Manipulator<NpmResult> {
 
     private long socketTimeout = DEFAULT_SOCKET_TIMEOUT_SEC;
 
-    private final Map<String, String> otelHeaders = new HashMap<>();
-
     @Override
     public boolean init(final ManipulationSession<NpmResult> session) throws ManipulationException {
         this.session = session;
@@ -115,31 +99,9 @@ public class DAVersionsCollector implements Manipulator<NpmResult> {
         this.socketTimeout = Long
                 .parseLong(userProps.getProperty("restSocketTimeout", String.valueOf(DEFAULT_SOCKET_TIMEOUT_SEC)));
 
-        if (OTelCLIHelper.otelEnabled()) {
-            SpanContext current = Span.current().getSpanContext();
-            if (current.isValid()) {
-                otelHeaders.put("trace-id", current.getTraceId());
-                otelHeaders.put("span-id", current.getSpanId());
-                otelHeaders.put(
-                        "tracestate",
-                        current.getTraceState()
-                                .asMap()
-                                .entrySet()
-                                .stream()
-                                .map(Objects::toString)
-                                .collect(Collectors.joining(",")));
-                // Code from pnc-common to avoid transitively including that and pnc-api in the classpath
-                otelHeaders.put(
-                        "traceparent",
-                        String.format(
-                                "%s-%s-%s-%s",
-                                "00",
-                                current.getTraceId(),
-                                current.getSpanId(),
-                                current.getTraceFlags().asHex()));
-            } else {
-                logger.warn("Invalid span context {}", current);
-            }
+        if (session.getState(AVAILABLE_VERSIONS, Map.class) != null) {
+            logger.debug("Available versions were provided, skipping the REST call.");
+            return false;
         }
 
         String versionOverride = userProps.getProperty("versionOverride");
@@ -198,12 +160,18 @@ public class DAVersionsCollector implements Manipulator<NpmResult> {
         logger.info("Calling REST client...");
         long start = System.nanoTime();
         Map<NpmPackageRef, List<String>> restResult = null;
+        session.getMetrics().increment(ManipulationMetrics.DA_PACKAGES, restParam.size());
 
-        try {
+        try (Timer timer = session.getMetrics().start(ManipulationMetrics.DA_REQUEST)) {
+            timer.attribute(ManipulationMetrics.PACKAGES_ATTRIBUTE, restParam.size());
             switch (VersioningStrategy.valueOf(versioningStrategy)) {
                 case SEMVER:
                 case HYPHENED:
-                    restResult = getExistingVersions(restParam);
+                    restResult = new DAClient(restURL, mode, connectionTimeout, socketTimeout)
+                            .getExistingVersions(restParam);
+                    timer.attribute(
+                            ManipulationMetrics.VERSIONS_ATTRIBUTE,
+                            restResult.values().stream().mapToInt(List::size).sum());
                     break;
                 default:
                     throw new IllegalStateException(
@@ -218,84 +186,6 @@ public class DAVersionsCollector implements Manipulator<NpmResult> {
         parseVersions(availableVersions, npmPackageRefs, restResult);
     }
 
-    private void init(ObjectMapper objectMapper) {
-
-        // According to https://github.com/Mashape/unirest-java the default connection timeout is 10000
-        // and the default socketTimeout is 60000.
-        // If not specified via properties, the values will be increased by default to 30 seconds for the first and 10
-        // minutes
-        // for the second.
-        Unirest.config()
-                .socketTimeout((int) socketTimeout * 1000)
-                .connectTimeout((int) connectionTimeout * 1000)
-                .setObjectMapper(objectMapper);
-    }
-
-    private Map<NpmPackageRef, List<String>> getExistingVersions(ArrayList<NpmPackageRef> restParam) {
-        ReportMapper mapper = new ReportMapper(true, mode);
-        String endpoint = "reports/versions/impl";
-        return getAvailableVersions(restParam, mapper, endpoint);
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<NpmPackageRef, List<String>> getAvailableVersions(
-            ArrayList<NpmPackageRef> restParam,
-            ReportObjectMapper mapper,
-            String endpoint) {
-        init(mapper);
-
-        @SuppressWarnings("rawtypes")
-        HttpResponse<Map> r;
-        int status;
-        Map<NpmPackageRef, List<String>> result;
-
-        String url = restURL + (restURL.endsWith("/") ? "" : '/');
-        if (!url.endsWith("v-1/")) {
-            url += "v-1/";
-        }
-        url += endpoint;
-
-        try {
-            r = Unirest.post(url)
-                    .header("Accept", "application/json")
-                    .header("Content-Type", "application/json")
-                    .header("Log-Context", getHeaderContext())
-                    .headers(otelHeaders)
-                    .body(restParam)
-                    .asObject(Map.class);
-
-            status = r.getStatus();
-            if (status == SC_OK) {
-                result = r.getBody();
-            } else {
-                throw new DAException(
-                        "Received response status " + status + " with message: " + mapper.getErrorString());
-            }
-        } catch (UnirestException ex) {
-            throw new DAException(
-                    "An exception was thrown when requesting the NPM versions for " + restParam + " with message "
-                            + ex.getMessage(),
-                    ex);
-        }
-
-        return result;
-    }
-
-    private String getHeaderContext() {
-        String headerContext;
-
-        if (isNotEmpty(MDC.get("LOG-CONTEXT"))) {
-            headerContext = MDC.get("LOG-CONTEXT");
-        } else {
-            // If we have no MDC PME has been used as the entry point. Dummy one up for DA.
-            byte[] randomBytes = new byte[20];
-            RANDOM.nextBytes(randomBytes);
-            headerContext = "npman-" + CODEC.encodeAsString(randomBytes);
-        }
-
-        return headerContext;
-    }
-
     /**
      * Parse the rest result for the project names and store them in versioning state for use there by incremental
      * suffix calculation.
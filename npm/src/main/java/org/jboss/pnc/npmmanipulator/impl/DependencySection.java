@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+/**
+ * The package.json sections mapping dependency names to version ranges. The bundled dependencies are not a section of
+ * their own, they list names of dependencies whose ranges are in {@link #DEPENDENCIES}.
+ */
+public enum DependencySection {
+
+    DEPENDENCIES("dependencies", "dependencyOverride"),
+
+    DEV_DEPENDENCIES("devDependencies", "devDependencyOverride"),
+
+    PEER_DEPENDENCIES("peerDependencies", "peerDependencyOverride"),
+
+    OPTIONAL_DEPENDENCIES("optionalDependencies", "optionalDependencyOverride");
+
+    private final String fieldName;
+
+    private final String overrideParam;
+
+    DependencySection(String fieldName, String overrideParam) {
+        this.fieldName = fieldName;
+        this.overrideParam = overrideParam;
+    }
+
+    /**
+     * @return the name of the section field in package.json and in the lock file package entries
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return the property name prefix of the version overrides of the dependencies in the section
+     */
+    public String getOverrideParam() {
+        return overrideParam;
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Read-only view of all the {@link DependencySection dependency sections} of a loaded package file. It reads the
+ * section nodes of the package tree directly instead of copying them, so it always reflects the current state of the
+ * package, including the changes done after the view was created.
+ */
+public class DependencyView {
+
+    /** Stands for a missing section, it is never modified. */
+    private static final ObjectNode EMPTY_SECTION = new ObjectNode(null, Collections.emptyMap());
+
+    private final JsonNode packageJson;
+
+    /**
+     * @param packageJson the root node of the package file
+     */
+    DependencyView(JsonNode packageJson) {
+        this.packageJson = packageJson;
+    }
+
+    /**
+     * @param section the dependency section
+     * @param name the dependency name
+     * @return the version range of the dependency or null if it is not in the section
+     */
+    public String get(DependencySection section, String name) {
+        JsonNode range = getSection(section).get(name);
+        return range == null ? null : range.asText();
+    }
+
+    /**
+     * @param section the dependency section
+     * @return unmodifiable map of the dependency names to their version ranges backed by the section node
+     */
+    public Map<String, String> asMap(DependencySection section) {
+        return new SectionMap(section);
+    }
+
+    /**
+     * Visits the dependencies of all the sections in one traversal, section by section in the order of
+     * {@link DependencySection}. The visitor may change the versions of the visited dependencies.
+     *
+     * @param visitor the visitor
+     * @throws ManipulationException in case the visitor fails
+     */
+    public void forEach(Visitor visitor) throws ManipulationException {
+        for (DependencySection section : DependencySection.values()) {
+            Iterator<Entry<String, JsonNode>> iterator = getSection(section).fields();
+            while (iterator.hasNext()) {
+                Entry<String, JsonNode> dependency = iterator.next();
+                visitor.visit(section, dependency.getKey(), dependency.getValue().asText());
+            }
+        }
+    }
+
+    private ObjectNode getSection(DependencySection section) {
+        JsonNode node = packageJson.get(section.getFieldName());
+        return node instanceof ObjectNode ? (ObjectNode) node : EMPTY_SECTION;
+    }
+
+    /** Receives the dependencies visited by {@link DependencyView#forEach(Visitor)}. */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @param section the section of the dependency
+         * @param name the dependency name
+         * @param range the version range of the dependency
+         * @throws ManipulationException in case the visitor fails
+         */
+        void visit(DependencySection section, String name, String range) throws ManipulationException;
+    }
+
+    /** Map view of one section. */
+    private final class SectionMap extends AbstractMap<String, String> {
+
+        private final DependencySection section;
+
+        private SectionMap(DependencySection section) {
+            this.section = section;
+        }
+
+        @Override
+        public String get(Object name) {
+            return name instanceof String ? DependencyView.this.get(section, (String) name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return name instanceof String && getSection(section).has((String) name);
+        }
+
+        @Override
+        public int size() {
+            return getSection(section).size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    Iterator<Entry<String, JsonNode>> fields = getSection(section).fields();
+                    return new Iterator<Entry<String, String>>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return fields.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            Entry<String, JsonNode> field = fields.next();
+                            return new SimpleImmutableEntry<>(field.getKey(), field.getValue().asText());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return SectionMap.this.size();
+                }
+            };
+        }
+    }
+
+}
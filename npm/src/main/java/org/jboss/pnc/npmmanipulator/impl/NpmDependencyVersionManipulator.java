@@ -17,25 +17,40 @@
  */
 package org.jboss.pnc.npmmanipulator.impl;
 
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
 import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
 import org.jboss.pnc.npmmanipulator.api.Manipulator;
 import org.jboss.pnc.npmmanipulator.api.Project;
+import org.jboss.pnc.npmmanipulator.impl.override.OverrideManifest;
+import org.jboss.pnc.npmmanipulator.impl.override.OverrideMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * {@link Manipulator} implementation that can modify an NPM project's dependencies and devDependencies with provided
- * version. Format: -DdependencyOverride.[package_name]=[version] and -DdevDependencyOverride.[package_name]=[version]
+ * {@link Manipulator} implementation that can modify an NPM project's dependencies, devDependencies, peerDependencies
+ * and optionalDependencies with provided version. Format: -DdependencyOverride.[package_name]=[version],
+ * -DdevDependencyOverride.[package_name]=[version], -DpeerDependencyOverride.[package_name]=[version] and
+ * -DoptionalDependencyOverride.[package_name]=[version]. The overrides of all the sections are applied in a single
+ * traversal of each package's {@link DependencyView}.
+ *
+ * <p>
+ * The package name can also be a glob pattern such as {@code @scope/*} or a bare scope such as {@code @scope}, see
+ * {@link OverrideMatcher} for the matching rules. Overrides can also be provided in a file referenced by
+ * -DdependencyOverrideFile=[path], see {@link OverrideManifest} for the format. Overrides provided as -D options take
+ * precedence over the ones from the file.
  */
 public class NpmDependencyVersionManipulator implements Manipulator<NpmResult> {
 
@@ -43,16 +58,25 @@ public class NpmDependencyVersionManipulator implements Manipulator<NpmResult> {
     public static final String OVERRIDE_PROPERTY_SEPARATOR = ".";
 
     /** The property name to override the dependencies version. */
-    public static final String DEPENDENCY_OVERRIDE_PARAM = "dependencyOverride";
+    public static final String DEPENDENCY_OVERRIDE_PARAM = DependencySection.DEPENDENCIES.getOverrideParam();
 
     /** The property name to override the development dependencies version. */
-    public static final String DEV_DEPENDENCY_OVERRIDE_PARAM = "devDependencyOverride";
+    public static final String DEV_DEPENDENCY_OVERRIDE_PARAM = DependencySection.DEV_DEPENDENCIES.getOverrideParam();
 
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+    /** The property name to override the peer dependencies version. */
+    public static final String PEER_DEPENDENCY_OVERRIDE_PARAM = DependencySection.PEER_DEPENDENCIES.getOverrideParam();
+
+    /** The property name to override the optional dependencies version. */
+    public static final String OPTIONAL_DEPENDENCY_OVERRIDE_PARAM = DependencySection.OPTIONAL_DEPENDENCIES
+            .getOverrideParam();
+
+    /** The property name of the file containing the overrides. */
+    public static final String DEPENDENCY_OVERRIDE_FILE_PARAM = "dependencyOverrideFile";
 
-    private Map<String, String> dependenciesMap;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private Map<String, String> devDependenciesMap;
+    /** The overrides of the sections having any. */
+    private Map<DependencySection, OverrideMatcher> overrides;
 
     private ManipulationSession<NpmResult> session;
 
@@ -60,8 +84,7 @@ public class NpmDependencyVersionManipulator implements Manipulator<NpmResult> {
      * The default public constructor.
      */
     public NpmDependencyVersionManipulator() {
-        dependenciesMap = new LinkedHashMap<>();
-        devDependenciesMap = new LinkedHashMap<>();
+        overrides = new EnumMap<>(DependencySection.class);
     }
 
     /**
@@ -73,45 +96,72 @@ public class NpmDependencyVersionManipulator implements Manipulator<NpmResult> {
     public NpmDependencyVersionManipulator(
             Map<String, String> dependenciesMap,
             Map<String, String> devDependenciesMap) {
-        this.dependenciesMap = dependenciesMap;
-        this.devDependenciesMap = devDependenciesMap;
+        this(sections(dependenciesMap, devDependenciesMap));
+    }
+
+    /**
+     * Constructor used in tests.
+     *
+     * @param sectionsMap user provided lists of dependency and versions to be overridden by the sections
+     */
+    NpmDependencyVersionManipulator(Map<DependencySection, Map<String, String>> sectionsMap) {
+        this();
+        for (Map.Entry<DependencySection, Map<String, String>> section : sectionsMap.entrySet()) {
+            addOverrides(section.getKey(), OverrideMatcher.builder().addAll(section.getValue()).build());
+        }
         this.session = new NpmManipulationSession();
     }
 
+    private static Map<DependencySection, Map<String, String>> sections(
+            Map<String, String> dependenciesMap,
+            Map<String, String> devDependenciesMap) {
+        Map<DependencySection, Map<String, String>> sectionsMap = new EnumMap<>(DependencySection.class);
+        sectionsMap.put(DependencySection.DEPENDENCIES, dependenciesMap);
+        sectionsMap.put(DependencySection.DEV_DEPENDENCIES, devDependenciesMap);
+        return sectionsMap;
+    }
+
+    private void addOverrides(DependencySection section, OverrideMatcher matcher) {
+        if (!matcher.isEmpty()) {
+            overrides.put(section, matcher);
+        }
+    }
+
     @Override
-    public boolean init(final ManipulationSession<NpmResult> session) {
+    public boolean init(final ManipulationSession<NpmResult> session) throws ManipulationException {
         this.session = session;
 
         Properties userProps = session.getUserProps();
         if (userProps != null) {
-            // Get the dependencies override versions
-            userProps.keySet()
-                    .stream()
-                    .filter(key -> key.toString().startsWith(DEPENDENCY_OVERRIDE_PARAM + OVERRIDE_PROPERTY_SEPARATOR))
-                    .forEach(key -> {
-                        String version = userProps.getProperty(key.toString());
-                        dependenciesMap.put(
-                                key.toString()
-                                        .substring((DEPENDENCY_OVERRIDE_PARAM + OVERRIDE_PROPERTY_SEPARATOR).length()),
-                                version);
-                    });
-
-            // Get the development dependencies override versions
-            userProps.keySet()
-                    .stream()
-                    .filter(
-                            key -> key.toString()
-                                    .startsWith(DEV_DEPENDENCY_OVERRIDE_PARAM + OVERRIDE_PROPERTY_SEPARATOR))
-                    .forEach(key -> {
-                        String version = userProps.getProperty(key.toString());
-                        devDependenciesMap.put(
-                                key.toString()
-                                        .substring(
-                                                (DEV_DEPENDENCY_OVERRIDE_PARAM + OVERRIDE_PROPERTY_SEPARATOR).length()),
-                                version);
-                    });
-
-            return !dependenciesMap.isEmpty() || !devDependenciesMap.isEmpty();
+            Map<DependencySection, OverrideMatcher.Builder> builders = new EnumMap<>(DependencySection.class);
+            for (DependencySection section : DependencySection.values()) {
+                builders.put(section, OverrideMatcher.builder());
+            }
+
+            String overrideFile = userProps.getProperty(DEPENDENCY_OVERRIDE_FILE_PARAM);
+            if (!isEmpty(overrideFile)) {
+                OverrideManifest manifest = OverrideManifest.load(new File(overrideFile));
+                for (DependencySection section : DependencySection.values()) {
+                    builders.get(section).addAll(manifest.getRules(section.getOverrideParam()));
+                }
+            }
+
+            // Get the override versions of all the sections in a single pass
+            for (String key : userProps.stringPropertyNames()) {
+                for (DependencySection section : DependencySection.values()) {
+                    String prefix = section.getOverrideParam() + OVERRIDE_PROPERTY_SEPARATOR;
+                    if (key.startsWith(prefix)) {
+                        builders.get(section).add(key.substring(prefix.length()), userProps.getProperty(key));
+                        break;
+                    }
+                }
+            }
+            overrides.clear();
+            for (Map.Entry<DependencySection, OverrideMatcher.Builder> builder : builders.entrySet()) {
+                addOverrides(builder.getKey(), builder.getValue().build());
+            }
+
+            return !overrides.isEmpty();
         }
 
         return false;
@@ -124,74 +174,8 @@ public class NpmDependencyVersionManipulator implements Manipulator<NpmResult> {
         for (Project project : projects) {
             if (project instanceof NpmPackage) {
                 NpmPackage npmPackage = (NpmPackage) project;
-
-                if (!dependenciesMap.isEmpty()) {
-                    Map<String, String> dependencies = npmPackage.getDependencies();
-                    dependenciesMap.keySet().forEach(dependency -> {
-                        if (dependencies.containsKey(dependency)) {
-                            String currentVersion = dependencies.get(dependency);
-                            String overrideVersion = dependenciesMap.get(dependency);
-
-                            try {
-                                if (!currentVersion.equals(overrideVersion)) {
-                                    npmPackage.setDependencyVersion(dependency, dependenciesMap.get(dependency), false);
-                                    logger.debug(
-                                            "Changing version of dependency `{}` from `{}` to `{}`",
-                                            dependency,
-                                            currentVersion,
-                                            overrideVersion);
-                                    session.getResult().getDependenciesMap().put(dependency, overrideVersion);
-                                    changed.add(npmPackage);
-                                }
-                            } catch (ManipulationException ex) {
-                                if (logger.isErrorEnabled()) {
-                                    logger.error(
-                                            "Could not change version of dependency '{}' from '{}' to '{}'",
-                                            dependency,
-                                            currentVersion,
-                                            overrideVersion,
-                                            ex);
-                                }
-                            }
-                        }
-                    });
-                }
-
-                if (!devDependenciesMap.isEmpty()) {
-                    Map<String, String> devDependencies = npmPackage.getDevDependencies();
-                    devDependenciesMap.keySet().forEach(devDependency -> {
-                        if (devDependencies.containsKey(devDependency)) {
-                            String currentVersion = devDependencies.get(devDependency);
-                            String overrideVersion = devDependenciesMap.get(devDependency);
-
-                            try {
-                                if (!currentVersion.equals(overrideVersion)) {
-                                    npmPackage.setDependencyVersion(
-                                            devDependency,
-                                            devDependenciesMap.get(devDependency),
-                                            true);
-                                    logger.debug(
-                                            "Changing version of devDependency `{}` from `{}` to `{}`",
-                                            devDependency,
-                                            currentVersion,
-                                            overrideVersion);
-                                    session.getResult()
-                                            .getDevDependenciesMap()
-                                            .put(devDependency, devDependenciesMap.get(devDependency));
-                                    changed.add(npmPackage);
-                                }
-                            } catch (ManipulationException ex) {
-                                if (logger.isErrorEnabled()) {
-                                    logger.error(
-                                            "Could not change version of devDependency '{}' from '{}' to '{}'",
-                                            devDependency,
-                                            currentVersion,
-                                            overrideVersion,
-                                            ex);
-                                }
-                            }
-                        }
-                    });
+                if (applyOverrides(npmPackage)) {
+                    changed.add(npmPackage);
                 }
             } else {
                 throw new ManipulationException(
@@ -202,6 +186,45 @@ public class NpmDependencyVersionManipulator implements Manipulator<NpmResult> {
         return changed;
     }
 
+    /**
+     * Looks up an override for each of the dependencies of all the sections in one traversal and applies it when it
+     * differs from the current version.
+     *
+     * @return true if any of the dependencies was changed
+     */
+    private boolean applyOverrides(NpmPackage npmPackage) throws ManipulationException {
+        MutableBoolean changed = new MutableBoolean();
+        npmPackage.getDependencyView().forEach((section, name, currentVersion) -> {
+            OverrideMatcher sectionOverrides = overrides.get(section);
+            String overrideVersion = sectionOverrides == null ? null : sectionOverrides.match(name);
+            if (overrideVersion == null || currentVersion.equals(overrideVersion)) {
+                return;
+            }
+            try {
+                npmPackage.setDependencyVersion(name, overrideVersion, section);
+                logger.debug(
+                        "Changing version of {} `{}` from `{}` to `{}`",
+                        section.getFieldName(),
+                        name,
+                        currentVersion,
+                        overrideVersion);
+                session.getResult().getDependenciesMap(section).put(name, overrideVersion);
+                changed.setTrue();
+            } catch (ManipulationException ex) {
+                if (logger.isErrorEnabled()) {
+                    logger.error(
+                            "Could not change version of {} '{}' from '{}' to '{}'",
+                            section.getFieldName(),
+                            name,
+                            currentVersion,
+                            overrideVersion,
+                            ex);
+                }
+            }
+        });
+        return changed.isTrue();
+    }
+
     @Override
     public Collection<Class<? extends Manipulator<NpmResult>>> getManipulatorDependencies() {
         return Collections.emptyList();
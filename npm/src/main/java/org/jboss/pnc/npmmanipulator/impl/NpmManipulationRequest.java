@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Immutable request for a manipulation run by {@link NpmManipulator}. It contains the same inputs as the CLI: the
+ * target package file or directory, the user properties and optionally the result file and log context. The available
+ * versions of the packages can be provided directly instead of being queried from Dependency Analysis.
+ */
+public final class NpmManipulationRequest {
+
+    private final File target;
+
+    private final File resultFile;
+
+    private final Properties userProps;
+
+    private final Map<String, Set<String>> availableVersions;
+
+    private final String logContext;
+
+    private NpmManipulationRequest(Builder builder) {
+        this.target = builder.target;
+        this.resultFile = builder.resultFile;
+        this.userProps = copy(builder.userProps);
+        this.availableVersions = builder.availableVersions == null ? null
+                : Collections.unmodifiableMap(builder.availableVersions);
+        this.logContext = builder.logContext;
+    }
+
+    public static Builder builder(File target) {
+        return new Builder(target);
+    }
+
+    /**
+     * @return the package file or directory to be manipulated
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the result file to be written, may be null
+     */
+    public File getResultFile() {
+        return resultFile;
+    }
+
+    /**
+     * @return a copy of the user properties
+     */
+    public Properties getUserProps() {
+        return copy(userProps);
+    }
+
+    /**
+     * @return the available versions of the packages by package name, null if they should be queried from Dependency
+     *         Analysis according to the user properties
+     */
+    public Map<String, Set<String>> getAvailableVersions() {
+        return availableVersions;
+    }
+
+    /**
+     * @return the log context sent to Dependency Analysis, may be null
+     */
+    public String getLogContext() {
+        return logContext;
+    }
+
+    private static Properties copy(Properties properties) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    /** Builder of {@link NpmManipulationRequest}. */
+    public static final class Builder {
+
+        private final File target;
+
+        private File resultFile;
+
+        private final Properties userProps = new Properties();
+
+        private Map<String, Set<String>> availableVersions;
+
+        private String logContext;
+
+        private Builder(File target) {
+            this.target = target;
+        }
+
+        public Builder resultFile(File resultFile) {
+            this.resultFile = resultFile;
+            return this;
+        }
+
+        public Builder userProperty(String key, String value) {
+            userProps.setProperty(key, value);
+            return this;
+        }
+
+        public Builder userProps(Properties properties) {
+            for (String key : properties.stringPropertyNames()) {
+                userProps.setProperty(key, properties.getProperty(key));
+            }
+            return this;
+        }
+
+        public Builder availableVersions(Map<String, Set<String>> availableVersions) {
+            this.availableVersions = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : availableVersions.entrySet()) {
+                Set<String> versions = Collections.unmodifiableSet(new HashSet<>(entry.getValue()));
+                this.availableVersions.put(entry.getKey(), versions);
+            }
+            return this;
+        }
+
+        public Builder logContext(String logContext) {
+            this.logContext = logContext;
+            return this;
+        }
+
+        public NpmManipulationRequest build() {
+            if (target == null) {
+                throw new IllegalArgumentException("The manipulation target must be set.");
+            }
+            return new NpmManipulationRequest(this);
+        }
+    }
+
+}
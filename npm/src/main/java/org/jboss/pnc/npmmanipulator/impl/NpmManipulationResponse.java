@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.time.Duration;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Outcome of a manipulation run by {@link NpmManipulator}: the result as it is written to the result file and the time
+ * spent in the phases of the run.
+ */
+public final class NpmManipulationResponse {
+
+    private final NpmResult result;
+
+    private final Duration initDuration;
+
+    private final Duration manipulationDuration;
+
+    NpmManipulationResponse(NpmResult result, Duration initDuration, Duration manipulationDuration) {
+        this.result = result;
+        this.initDuration = initDuration;
+        this.manipulationDuration = manipulationDuration;
+    }
+
+    public NpmResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return the JSON Patch operations by the relative file paths recorded in the dry run or verify mode, empty
+     *         otherwise
+     */
+    public Map<String, JsonNode> getPatches() {
+        return result.getPatches();
+    }
+
+    /**
+     * @return the time spent activating the manipulators
+     */
+    public Duration getInitDuration() {
+        return initDuration;
+    }
+
+    /**
+     * @return the time spent loading the projects, applying the manipulations and writing the changed files
+     */
+    public Duration getManipulationDuration() {
+        return manipulationDuration;
+    }
+
+    /**
+     * @return the total time of the run
+     */
+    public Duration getTotalDuration() {
+        return initDuration.plus(manipulationDuration);
+    }
+
+}
@@ -17,27 +17,74 @@
  */
 package org.jboss.pnc.npmmanipulator.impl;
 
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
 import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
 import org.jboss.pnc.npmmanipulator.api.Manipulator;
 import org.jboss.pnc.npmmanipulator.api.Project;
+import org.jboss.pnc.npmmanipulator.impl.lock.PackageLock;
+import org.jboss.pnc.npmmanipulator.impl.lock.StringPool;
+import org.jboss.pnc.npmmanipulator.impl.patch.JsonPatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
 public class NpmManipulationSession implements ManipulationSession<NpmResult> {
 
+    /**
+     * The property enabling manipulation of all the packages of the workspace defined in the root package file. The
+     * packages share the lock file of the root package.
+     */
+    public static final String WORKSPACES_PARAM = "workspaces";
+
+    /** The property enabling the dry run reporting the changes as JSON Patch operations instead of writing them. */
+    public static final String DRY_RUN_PARAM = "dryRun";
+
+    /**
+     * The property limiting the number of strings pooled while parsing the package and lock files, 0 disables the
+     * pooling.
+     */
+    public static final String STRING_POOL_SIZE_PARAM = "stringPoolSize";
+
+    /**
+     * The property setting the size in bytes of a lock file above which it is processed in bounded memory mode, i.e.
+     * only by streaming, 0 processes all lock files that way.
+     */
+    public static final String BOUNDED_MEMORY_THRESHOLD_PARAM = "boundedMemoryThreshold";
+
+    /** The default bounded memory threshold of 64 MiB. */
+    public static final long DEFAULT_BOUNDED_MEMORY_THRESHOLD = 64L * 1024 * 1024;
+
+    private static final String PACKAGE_FILE_NAME = "package.json";
+
+    private static final String NODE_MODULES = "node_modules";
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private Properties properties;
@@ -47,6 +94,11 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
     private List<Manipulator<NpmResult>> manipulators;
     private final Map<String, Object> states = new HashMap<>();
     private NpmResult result = new NpmResult();
+    private final ManipulationMetrics metrics = new ManipulationMetrics();
+    private ResultCache resultCache;
+    private String fingerprint;
+    private StringPool stringPool;
+    private List<Project> projects = new ArrayList<>();
 
     /** Default constructor with limited visibility for tests. */
     NpmManipulationSession() {
@@ -62,6 +114,10 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
     @Override
     public List<Manipulator<NpmResult>> getActiveManipulators() throws ManipulationException {
         if (manipulators == null) {
+            // invalid values are reported before any file is read
+            getNonNegativeProperty(STRING_POOL_SIZE_PARAM, StringPool.DEFAULT_MAX_SIZE);
+            getNonNegativeProperty(BOUNDED_MEMORY_THRESHOLD_PARAM, DEFAULT_BOUNDED_MEMORY_THRESHOLD);
+
             manipulators = new ArrayList<>();
 
             @SuppressWarnings("unchecked")
@@ -69,6 +125,7 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
                     new NpmPackageVersionManipulator(),
                     new NpmPackageScopeManipulator(),
                     new NpmDependencyVersionManipulator(),
+                    new NpmRegistryManipulator(),
                     new DAVersionsCollector() };
             for (Manipulator<NpmResult> manipulator : allManipulators) {
                 if (manipulator.init(this)) {
@@ -115,12 +172,34 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
                 }
             }
 
-            NpmPackageImpl pack = new NpmPackageImpl(packageFile, packageLock);
+            PackageLock lock = packageLock == null ? null : new PackageLock(packageLock, createParsingMapper());
+            if (lock != null) {
+                lock.setMetrics(metrics);
+                try {
+                    lock.setBoundedMemoryThreshold(
+                            getNonNegativeProperty(BOUNDED_MEMORY_THRESHOLD_PARAM, DEFAULT_BOUNDED_MEMORY_THRESHOLD));
+                } catch (ManipulationException ex) {
+                    throw new IllegalArgumentException(ex.getMessage(), ex);
+                }
+                if (lock.isBoundedMemory()) {
+                    logger.info(
+                            "Lock file {} of {} bytes will be processed in bounded memory mode",
+                            packageLock,
+                            packageLock.length());
+                }
+            }
+            NpmPackageImpl pack = new NpmPackageImpl(packageFile, lock, "");
+            pack.setMetrics(metrics);
+            pack.setStringPool(getStringPool());
             projects.add(pack);
 
             try {
                 result.setName(pack.getName());
                 result.setVersion(pack.getVersion());
+
+                if (Boolean.parseBoolean(getUserProps().getProperty(WORKSPACES_PARAM))) {
+                    addWorkspacePackages(projects, pack, packageFile.getAbsoluteFile().getParentFile(), lock);
+                }
             } catch (ManipulationException e) {
                 throw new IllegalArgumentException(
                         "The project data could not be read from the package file " + pkg + "\nError: "
@@ -131,9 +210,266 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
             logger.error("Given package path {} does not exist.", pkg);
         }
 
+        this.projects = projects;
         return projects;
     }
 
+    /**
+     * Adds the packages matched by the "workspaces" patterns of the root package file, which is either an array of
+     * patterns or an object with the array in "packages". Patterns starting with "!" exclude packages.
+     */
+    private void addWorkspacePackages(List<Project> projects, NpmPackageImpl root, File rootDir, PackageLock lock)
+            throws ManipulationException {
+        JsonNode workspaces = root.getPackage().get(WORKSPACES_PARAM);
+        if (workspaces != null && workspaces.isObject()) {
+            workspaces = workspaces.get("packages");
+        }
+        if (workspaces == null || !workspaces.isArray()) {
+            logger.warn("Workspaces were requested, but the package file does not define any.");
+            return;
+        }
+
+        List<PathMatcher> includes = new ArrayList<>();
+        List<PathMatcher> excludes = new ArrayList<>();
+        for (JsonNode workspace : workspaces) {
+            String pattern = workspace.asText();
+            boolean exclude = pattern.startsWith("!");
+            pattern = pattern.substring(exclude ? 1 : 0).replaceFirst("^\\./", "").replaceFirst("/+$", "");
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            (exclude ? excludes : includes).add(matcher);
+        }
+
+        Path rootPath = rootDir.toPath();
+        TreeSet<String> lockPaths = new TreeSet<>();
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    String dirName = dir.getFileName().toString();
+                    if (!dir.equals(rootPath) && (NODE_MODULES.equals(dirName) || dirName.startsWith("."))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    Path relative = rootPath.relativize(dir);
+                    if (!dir.equals(rootPath) && Files.isRegularFile(dir.resolve(PACKAGE_FILE_NAME))
+                            && includes.stream().anyMatch(m -> m.matches(relative))
+                            && excludes.stream().noneMatch(m -> m.matches(relative))) {
+                        lockPaths.add(relative.toString().replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            throw new ManipulationException("Error searching for workspace packages in {}.", rootDir, ex);
+        }
+
+        for (String lockPath : lockPaths) {
+            logger.debug("Found workspace package {}", lockPath);
+            File packageFile = new File(rootDir, lockPath + "/" + PACKAGE_FILE_NAME);
+            NpmPackageImpl pack = new NpmPackageImpl(packageFile, lock, lockPath);
+            pack.setMetrics(metrics);
+            pack.setStringPool(getStringPool());
+            projects.add(pack);
+        }
+        logger.info("Found {} workspace packages", lockPaths.size());
+    }
+
+    /**
+     * In the dry run mode, the changes are recorded as JSON Patch operations in the result, which is written to the
+     * result file if there is one, and no other file is written. The lock files with edits of the projects not
+     * reported as changed are streamed as well, and their projects are added to the changed ones if any edit applies.
+     */
+    @Override
+    public Set<Project> writeChanges(Set<Project> changed) throws ManipulationException {
+        if (isDryRun()) {
+            return recordPatches(changed);
+        }
+        Set<Project> written = new LinkedHashSet<>(ManipulationSession.super.writeChanges(changed));
+        for (NpmPackageImpl project : getPendingLockFiles(changed)) {
+            if (project.updateLockFile()) {
+                written.add(project);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * The mismatches found in the verify mode are reported in the same way as the changes in the dry run mode.
+     */
+    @Override
+    public Set<Project> verifyChanges(Set<Project> changed) throws ManipulationException {
+        return recordPatches(changed);
+    }
+
+    /**
+     * @return the projects not in the changed ones that own a lock file with edits, which are found out to change
+     *         anything only when the file is streamed
+     */
+    private List<NpmPackageImpl> getPendingLockFiles(Set<Project> changed) {
+        List<NpmPackageImpl> pending = new ArrayList<>();
+        for (Project project : projects) {
+            if (!changed.contains(project) && project instanceof NpmPackageImpl
+                    && ((NpmPackageImpl) project).hasLockFileEdits()) {
+                pending.add((NpmPackageImpl) project);
+            }
+        }
+        return pending;
+    }
+
+    private Set<Project> recordPatches(Set<Project> changed) throws ManipulationException {
+        Map<File, JsonPatch> patches = new LinkedHashMap<>();
+        for (Project project : changed) {
+            if (project instanceof NpmPackageImpl) {
+                ((NpmPackageImpl) project).diff(patches);
+            } else {
+                throw new ManipulationException(
+                        "Dry run failed, because project type {} is not supported by NPM manipulation.",
+                        project.getClass());
+            }
+        }
+        Set<Project> patched = new LinkedHashSet<>(changed);
+        for (NpmPackageImpl project : getPendingLockFiles(changed)) {
+            if (project.diffLockFile(patches)) {
+                patched.add(project);
+            }
+        }
+
+        Path projectDir = (pkg.isFile() ? pkg.getAbsoluteFile().getParentFile() : pkg.getAbsoluteFile()).toPath();
+        Map<String, JsonNode> relativePatches = new TreeMap<>();
+        for (Map.Entry<File, JsonPatch> patch : patches.entrySet()) {
+            if (!patch.getValue().isEmpty()) {
+                String path = projectDir.relativize(patch.getKey().getAbsoluteFile().toPath()).toString();
+                relativePatches.put(path.replace(File.separatorChar, '/'), patch.getValue().getOperations());
+                logger.info("{} changes of {}", patch.getValue().size(), path);
+            }
+        }
+        result.setPatches(new LinkedHashMap<>(relativePatches));
+        return patched;
+    }
+
+    /**
+     * @return the pool of the strings parsed in this session or null if pooling is disabled
+     */
+    private StringPool getStringPool() {
+        if (stringPool == null) {
+            long maxSize;
+            try {
+                maxSize = getNonNegativeProperty(STRING_POOL_SIZE_PARAM, StringPool.DEFAULT_MAX_SIZE);
+            } catch (ManipulationException ex) {
+                throw new IllegalArgumentException(ex.getMessage(), ex);
+            }
+            if (maxSize > 0) {
+                stringPool = new StringPool((int) Math.min(maxSize, Integer.MAX_VALUE));
+            }
+        }
+        return stringPool;
+    }
+
+    /**
+     * @param name the name of the user property
+     * @param defaultValue the value used when the property is not set
+     * @return the non-negative number the property is set to
+     * @throws ManipulationException in case the property is not a non-negative number
+     */
+    private long getNonNegativeProperty(String name, long defaultValue) throws ManipulationException {
+        String value = getUserProps().getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new ManipulationException(
+                "Invalid value '{}' of property {}, a non-negative number is expected.",
+                value,
+                name);
+    }
+
+    private ObjectMapper createParsingMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        if (getStringPool() != null) {
+            mapper.setNodeFactory(getStringPool().nodeFactory());
+        }
+        return mapper;
+    }
+
+    private boolean isDryRun() {
+        return Boolean.parseBoolean(getUserProps().getProperty(DRY_RUN_PARAM));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean replayCachedResult(List<Project> projects) throws ManipulationException {
+        if (resultFIle == null || projects.isEmpty() || isDryRun()
+                || !Boolean.parseBoolean(getUserProps().getProperty(ResultCache.RESULT_CACHE_PARAM))) {
+            return false;
+        }
+        if (isEmpty(getUserProps().getProperty(ResultCache.VERSION_SOURCE_SNAPSHOT_PARAM))) {
+            for (Manipulator<NpmResult> manipulator : getActiveManipulators()) {
+                if (manipulator instanceof DAVersionsCollector) {
+                    logger.info(
+                            "The result is not cached, because the available versions are queried without {}.",
+                            ResultCache.VERSION_SOURCE_SNAPSHOT_PARAM);
+                    return false;
+                }
+            }
+        }
+
+        Set<File> inputs = new LinkedHashSet<>();
+        for (Project project : projects) {
+            if (project instanceof NpmPackageImpl) {
+                PackageLock lock = ((NpmPackageImpl) project).getLock();
+                if (lock != null && lock.isBoundedMemory()) {
+                    // the cache stores whole copies of the changed files
+                    logger.info(
+                            "The result is not cached, because lock file {} is processed in bounded memory mode.",
+                            lock.getFile());
+                    return false;
+                }
+                inputs.add(((NpmPackageImpl) project).getPackageFile());
+                inputs.add(((NpmPackageImpl) project).getPackageLockFile());
+            }
+        }
+        String overrideFile = getUserProps()
+                .getProperty(NpmDependencyVersionManipulator.DEPENDENCY_OVERRIDE_FILE_PARAM);
+        if (!isEmpty(overrideFile)) {
+            inputs.add(new File(overrideFile));
+        }
+
+        File baseDir = ((NpmPackageImpl) projects.get(0)).getPackageFile().getAbsoluteFile().getParentFile();
+        resultCache = new ResultCache(resultFIle, baseDir);
+        fingerprint = resultCache
+                .fingerprint(inputs, getUserProps(), getState(DAVersionsCollector.AVAILABLE_VERSIONS, Map.class));
+
+        NpmResult cached = resultCache.replay(fingerprint);
+        if (cached == null) {
+            logger.debug("No cached result for the inputs with fingerprint {}", fingerprint);
+            return false;
+        }
+        // the metrics of the original run are replaced by the ones of this run
+        result = cached;
+        return true;
+    }
+
+    @Override
+    public void cacheResult(List<Project> projects, Set<Project> changed) throws ManipulationException {
+        if (resultCache == null) {
+            return;
+        }
+        Set<File> outputs = new LinkedHashSet<>();
+        for (Project project : changed) {
+            if (project instanceof NpmPackageImpl) {
+                outputs.add(((NpmPackageImpl) project).getPackageFile());
+                outputs.add(((NpmPackageImpl) project).getPackageLockFile());
+            }
+        }
+        resultCache.store(fingerprint, result, outputs);
+    }
+
     public Properties getProperties() {
         if (properties == null) {
             properties = new Properties();
@@ -164,6 +500,11 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
         return (T) states.get(key);
     }
 
+    @Override
+    public ManipulationMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public NpmResult getResult() {
         return result;
@@ -171,6 +512,7 @@ public class NpmManipulationSession implements ManipulationSession<NpmResult> {
 
     @Override
     public void writeResult() {
+        result.setMetrics(metrics.snapshot());
         if (resultFIle != null) {
             ObjectMapper mapper = new ObjectMapper();
             ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.core.ManipulationManager;
+import org.slf4j.MDC;
+
+/**
+ * Entry point for running manipulations in-process, e.g. from an orchestrating application. Unlike the CLI, it does not
+ * exit the JVM, touch the logging configuration or start OpenTelemetry, and every run uses its own session and HTTP
+ * client, so one instance can be used by many threads concurrently. The log context of a request is set in the MDC of
+ * the calling thread only for the duration of the run.
+ */
+public class NpmManipulator {
+
+    private static final String LOG_CONTEXT = "LOG-CONTEXT";
+
+    /**
+     * Runs the manipulation described by the request.
+     *
+     * @param request the manipulation request
+     * @return the result with the timings of the run
+     * @throws ManipulationException in case the manipulation fails
+     */
+    public NpmManipulationResponse manipulate(NpmManipulationRequest request) throws ManipulationException {
+        if (!request.getTarget().exists()) {
+            throw new ManipulationException("NPM Manipulation failed. File {} cannot be found.", request.getTarget());
+        }
+
+        String originalLogContext = MDC.get(LOG_CONTEXT);
+        if (request.getLogContext() != null) {
+            MDC.put(LOG_CONTEXT, request.getLogContext() + ' ');
+        }
+        try {
+            long start = System.nanoTime();
+            NpmManipulationSession session = new NpmManipulationSession(
+                    request.getTarget(),
+                    request.getResultFile(),
+                    new Properties(),
+                    request.getUserProps());
+            if (request.getAvailableVersions() != null) {
+                // the manipulators may add to the sets, so give them a copy
+                Map<String, Set<String>> availableVersions = new HashMap<>();
+                request.getAvailableVersions()
+                        .forEach((name, versions) -> availableVersions.put(name, new HashSet<>(versions)));
+                session.setState(DAVersionsCollector.AVAILABLE_VERSIONS, availableVersions);
+            }
+
+            ManipulationManager<NpmResult> manipulationManager = new ManipulationManager<>();
+            manipulationManager.init(session);
+            long initialized = System.nanoTime();
+            manipulationManager.scanAndApply(session);
+            long finished = System.nanoTime();
+
+            return new NpmManipulationResponse(
+                    session.getResult(),
+                    Duration.ofNanos(initialized - start),
+                    Duration.ofNanos(finished - initialized));
+        } finally {
+            if (originalLogContext == null) {
+                MDC.remove(LOG_CONTEXT);
+            } else {
+                MDC.put(LOG_CONTEXT, originalLogContext);
+            }
+        }
+    }
+
+}
@@ -18,6 +18,7 @@
 package org.jboss.pnc.npmmanipulator.impl;
 
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
 import org.jboss.pnc.npmmanipulator.api.Project;
@@ -56,13 +57,23 @@ public interface NpmPackage extends Project {
      */
     void setVersion(String version) throws ManipulationException;
 
+    /**
+     * Provides the view of all the dependency sections of the loaded package file.
+     *
+     * @return the dependency view, never {@code null}
+     * @throws ManipulationException in case the project cannot be loaded or does not have correct structure
+     */
+    DependencyView getDependencyView() throws ManipulationException;
+
     /**
      * Retrieves the dependencies from loaded package file.
      *
      * @return retrieved dependencies
      * @throws ManipulationException in case the project cannot be loaded or does not have correct structure
      */
-    Map<String, String> getDependencies() throws ManipulationException;
+    default Map<String, String> getDependencies() throws ManipulationException {
+        return getDependencyView().asMap(DependencySection.DEPENDENCIES);
+    }
 
     /**
      * Retrieves the devDependencies from loaded package file.
@@ -70,17 +81,45 @@ public interface NpmPackage extends Project {
      * @return retrieved devDependencies
      * @throws ManipulationException in case the project cannot be loaded or does not have correct structure
      */
-    Map<String, String> getDevDependencies() throws ManipulationException;
+    default Map<String, String> getDevDependencies() throws ManipulationException {
+        return getDependencyView().asMap(DependencySection.DEV_DEPENDENCIES);
+    }
 
     /**
      * Updates the dependency version in the loaded package file.
      *
      * @param dependencyName the name of the dependency to be changed
      * @param version the version to be set
-     * @param isDevelopment whether the change needs to be applied in the `dependencies` or `devDependencies` list
+     * @param section the section the change needs to be applied in
+     * @throws ManipulationException in case the project cannot be loaded or does not have correct structure
+     */
+    void setDependencyVersion(String dependencyName, String version, DependencySection section)
+            throws ManipulationException;
+
+    /**
+     * Registers rewriting of the values of all fields with given name in the package-lock file. The rewrite is applied
+     * together with all the other lock file changes when the project is updated, and only then it is known whether it
+     * changes anything, so the lock file is not read in advance.
+     *
+     * @param fieldName the name of the rewritten fields, e.g. {@code resolved}
+     * @param rewriter function computing the new value from the current one
+     * @return true if the package has a lock file to rewrite, otherwise false
+     * @throws ManipulationException in case the project cannot be loaded or does not have correct structure
+     */
+    boolean rewriteLockFileField(String fieldName, UnaryOperator<String> rewriter) throws ManipulationException;
+
+    /**
+     * Updates the references to a dependency in all the dependency sections of the loaded package file and in the
+     * package entry of the lock file, e.g. after the referenced package of the same workspace was renamed or its
+     * version changed.
+     *
+     * @param dependencyName the current name of the dependency
+     * @param newName the name to be set, same as the current one if it does not change
+     * @param rangeUpdate function computing the new version range from the current one
+     * @return true if any reference was changed, otherwise false
      * @throws ManipulationException in case the project cannot be loaded or does not have correct structure
      */
-    void setDependencyVersion(String dependencyName, String version, boolean isDevelopment)
+    boolean updateDependencyReference(String dependencyName, String newName, UnaryOperator<String> rangeUpdate)
             throws ManipulationException;
 
 }
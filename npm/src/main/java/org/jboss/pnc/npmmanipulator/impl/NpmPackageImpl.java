@@ -19,14 +19,26 @@ package org.jboss.pnc.npmmanipulator.impl;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
+import org.jboss.pnc.npmmanipulator.impl.lock.LockFileEdits;
+import org.jboss.pnc.npmmanipulator.impl.lock.LockFileGraph;
+import org.jboss.pnc.npmmanipulator.impl.lock.PackageLock;
+import org.jboss.pnc.npmmanipulator.impl.lock.StringPool;
+import org.jboss.pnc.npmmanipulator.impl.patch.JsonPatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,23 +49,42 @@ import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.github.zafarkhaja.semver.ParseException;
+import com.github.zafarkhaja.semver.Version;
 
 public class NpmPackageImpl implements NpmPackage {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NpmPackageImpl.class);
 
+    /** Prefix of the lock file "packages" keys of packages installed in the top-level node_modules directory. */
+    private static final String NODE_MODULES_PREFIX = "node_modules/";
+
+    /** The package.json fields listing the names of the bundled dependencies. */
+    private static final String[] BUNDLE_FIELDS = { "bundleDependencies", "bundledDependencies" };
+
     private File packageFile;
     private File packageLockFile;
 
     private JsonNode packageJson;
-    private JsonNode packageLockJson;
-    private JsonNode dependencies;
-    private JsonNode devDependencies;
+    private PackageLock packageLock;
+    private DependencyView dependencyView;
+
+    /** The key of this package's entry in the lock file "packages", empty for the root package. */
+    private final String lockPath;
+
+    /** The name of this package as it is in the lock file. */
+    private String lockedName;
+
+    /** Renamed dependencies mapped to their names in the lock file. */
+    private final Map<String, String> lockedDependencyNames = new HashMap<>();
 
     private ObjectMapper mapper;
 
+    private ManipulationMetrics metrics = ManipulationMetrics.disabled();
+
     /**
      * Creates an NPM project by referencing project definition files.
      *
@@ -61,9 +92,23 @@ public class NpmPackageImpl implements NpmPackage {
      * @param packageLockFile a package-lock file, may be null if it does not exist for the project
      */
     public NpmPackageImpl(File packageFile, File packageLockFile) {
+        this(packageFile, packageLockFile == null ? null : new PackageLock(packageLockFile, new ObjectMapper()), "");
+    }
+
+    /**
+     * Creates an NPM project that may share the lock file with other projects, i.e. a package of a workspace.
+     *
+     * @param packageFile basic package file, cannot be null
+     * @param packageLock the package-lock file, may be null if it does not exist for the project
+     * @param lockPath path of the package directory relative to the lock file directory, i.e. the key of the package
+     *        entry in the lock file "packages", empty for the root package owning the lock file
+     */
+    public NpmPackageImpl(File packageFile, PackageLock packageLock, String lockPath) {
         super();
         this.packageFile = packageFile;
-        this.packageLockFile = packageLockFile;
+        this.packageLock = packageLock;
+        this.packageLockFile = packageLock == null ? null : packageLock.getFile();
+        this.lockPath = lockPath;
         this.mapper = new ObjectMapper();
     }
 
@@ -77,9 +122,13 @@ public class NpmPackageImpl implements NpmPackage {
         if (packageJson == null) {
             if (packageFile.exists()) {
                 String packageContents;
-                try {
+                try (Timer timer = metrics.start(ManipulationMetrics.PARSE)) {
                     packageContents = FileUtils.readFileToString(packageFile, "utf-8");
                     packageJson = mapper.readTree(packageContents);
+                    metrics.increment(ManipulationMetrics.BYTES_READ, packageFile.length());
+                    timer.attribute(ManipulationMetrics.PACKAGE_NAME_ATTRIBUTE, packageJson.path("name").asText())
+                            .attribute(ManipulationMetrics.FILE_PATH_ATTRIBUTE, packageFile.getPath())
+                            .attribute(ManipulationMetrics.FILE_SIZE_ATTRIBUTE, packageFile.length());
                 } catch (IOException ex) {
                     throw new ManipulationException("Error reading file {}", packageFile, ex);
                 }
@@ -97,23 +146,23 @@ public class NpmPackageImpl implements NpmPackage {
      * @throws ManipulationException in case of an error when reading package file
      */
     public JsonNode getPackageLock() throws ManipulationException {
-        if ((packageLockFile != null) && (packageLockJson == null)) {
-            if (packageLockFile.exists()) {
-                String packageLockContents;
-                try {
-                    packageLockContents = FileUtils.readFileToString(packageLockFile, "utf-8");
-                    packageLockJson = mapper.readTree(packageLockContents);
-                } catch (IOException ex) {
-                    throw new ManipulationException("Error reading file {}", packageLockFile, ex);
-                }
+        return packageLock == null ? null : packageLock.getTree();
+    }
+
+    @Override
+    public void update() throws ManipulationException {
+        try (Timer timer = metrics.start(ManipulationMetrics.UPDATE)) {
+            if (packageJson != null) {
+                timer.attribute(ManipulationMetrics.PACKAGE_NAME_ATTRIBUTE, packageJson.path("name").asText());
             }
+            timer.attribute(ManipulationMetrics.FILE_PATH_ATTRIBUTE, packageFile.getPath());
+            writeFiles();
+            timer.attribute(ManipulationMetrics.FILE_SIZE_ATTRIBUTE, packageFile.length());
         }
-        return packageLockJson;
     }
 
-    @Override
     @SuppressWarnings("resource")
-    public void update() throws ManipulationException {
+    private void writeFiles() throws ManipulationException {
         JsonFactory factory = new JsonFactory();
         ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
 
@@ -122,6 +171,8 @@ public class NpmPackageImpl implements NpmPackage {
             try {
                 generator = factory.createGenerator(packageFile, JsonEncoding.UTF8);
                 writer.writeValue(generator, packageJson);
+                generator.close();
+                metrics.increment(ManipulationMetrics.BYTES_WRITTEN, packageFile.length());
             } catch (IOException ex) {
                 throw new ManipulationException("Error writing the package file {}.", packageFile, ex);
             } finally {
@@ -135,23 +186,50 @@ public class NpmPackageImpl implements NpmPackage {
             }
         }
 
-        if (packageLockJson != null) {
-            JsonGenerator generator = null;
+        if (packageLock != null) {
+            packageLock.write();
+        }
+    }
+
+    /**
+     * Records the changes {@link #update()} would do as JSON Patch operations without touching the files. The lock
+     * file shared with other workspace packages is recorded only by the first package.
+     *
+     * @param patches the patches by the files, the patches of this package's files are added to it
+     * @throws ManipulationException in case of an error when reading the files
+     */
+    public void diff(Map<File, JsonPatch> patches) throws ManipulationException {
+        if (packageJson != null && !patches.containsKey(packageFile)) {
+            JsonPatch patch = new JsonPatch();
             try {
-                generator = factory.createGenerator(packageLockFile, JsonEncoding.UTF8);
-                writer.writeValue(generator, packageLockJson);
+                patch.diff(mapper.readTree(packageFile), packageJson);
             } catch (IOException ex) {
-                throw new ManipulationException("Error writing the package lock file {}.", packageFile, ex);
-            } finally {
-                if (generator != null && !generator.isClosed()) {
-                    try {
-                        generator.close();
-                    } catch (IOException e) {
-                        LOGGER.warn("Was not able to close JsonGenerator.", e);
-                    }
-                }
+                throw new ManipulationException("Error reading file {}", packageFile, ex);
             }
+            patches.put(packageFile, patch);
         }
+
+        diffLockFile(patches);
+    }
+
+    /**
+     * Records the changes {@link #updateLockFile()} would do as JSON Patch operations without touching the lock file.
+     *
+     * @param patches the patches by the files, the patch of the lock file is added to it
+     * @return true if the lock file would be changed
+     * @throws ManipulationException in case of an error when reading the lock file
+     */
+    public boolean diffLockFile(Map<File, JsonPatch> patches) throws ManipulationException {
+        if (packageLock == null) {
+            return false;
+        }
+        JsonPatch patch = patches.get(packageLockFile);
+        if (patch == null) {
+            patch = new JsonPatch();
+            packageLock.diff(patch);
+            patches.put(packageLockFile, patch);
+        }
+        return !patch.isEmpty();
     }
 
     @Override
@@ -177,23 +255,18 @@ public class NpmPackageImpl implements NpmPackage {
     }
 
     @Override
-    public Map<String, String> getDependencies() throws ManipulationException {
-        getPackage();
-        dependencies = packageJson.get("dependencies");
-        return createDependenciesMap(dependencies);
-    }
-
-    @Override
-    public Map<String, String> getDevDependencies() throws ManipulationException {
-        getPackage();
-        devDependencies = packageJson.get("devDependencies");
-        return createDependenciesMap(devDependencies);
+    public DependencyView getDependencyView() throws ManipulationException {
+        if (dependencyView == null) {
+            dependencyView = new DependencyView(getPackage());
+        }
+        return dependencyView;
     }
 
     @Override
     public void setName(String name) throws ManipulationException {
-        getPackage();
-        getPackageLock();
+        if (lockedName == null) {
+            lockedName = getName();
+        }
         if (packageJson instanceof ObjectNode) {
             ((ObjectNode) packageJson).replace("name", new TextNode(name));
         } else {
@@ -201,21 +274,32 @@ public class NpmPackageImpl implements NpmPackage {
                     "The loaded project file {} does not seem to have correct structure.",
                     packageFile);
         }
-        if (packageLockJson != null) {
+        if (packageLock == null) {
+            return;
+        }
+        if (isLockRoot() && packageLock.isBoundedMemory()) {
+            packageLock.getEdits().setValue(name, "name");
+        } else if (isLockRoot()) {
+            JsonNode packageLockJson = getPackageLock();
             if (packageLockJson instanceof ObjectNode) {
                 ((ObjectNode) packageLockJson).replace("name", new TextNode(name));
-            } else {
+            } else if (packageLockJson != null) {
                 throw new ManipulationException(
                         "The loaded project file {} does not seem to have correct structure.",
                         packageLockFile);
             }
+        } else {
+            // workspace packages are linked from node_modules under their name
+            LockFileEdits edits = packageLock.getEdits();
+            edits.rename(NODE_MODULES_PREFIX + name, "packages", NODE_MODULES_PREFIX + lockedName);
+            edits.rename(name, "dependencies", lockedName);
         }
+        packageLock.getEdits().setValue(name, "packages", lockPath, "name");
     }
 
     @Override
     public void setVersion(String version) throws ManipulationException {
         getPackage();
-        getPackageLock();
         if (packageJson instanceof ObjectNode) {
             ((ObjectNode) packageJson).replace("version", new TextNode(version));
         } else {
@@ -223,57 +307,304 @@ public class NpmPackageImpl implements NpmPackage {
                     "The loaded project file {} does not seem to have correct structure.",
                     packageFile);
         }
-        if (packageLockJson != null) {
+        if (packageLock == null) {
+            return;
+        }
+        if (isLockRoot() && packageLock.isBoundedMemory()) {
+            packageLock.getEdits().setValue(version, "version");
+        } else if (isLockRoot()) {
+            JsonNode packageLockJson = getPackageLock();
             if (packageLockJson instanceof ObjectNode) {
                 ((ObjectNode) packageLockJson).replace("version", new TextNode(version));
-            } else {
+            } else if (packageLockJson != null) {
                 throw new ManipulationException(
                         "The loaded project file {} does not seem to have correct structure.",
                         packageLockFile);
             }
         }
+        packageLock.getEdits().setValue(version, "packages", lockPath, "version");
     }
 
     @Override
-    public void setDependencyVersion(String dependencyName, String version, boolean isDevelopment)
+    public void setDependencyVersion(String dependencyName, String version, DependencySection section)
             throws ManipulationException {
         getPackage();
 
-        if (isDevelopment) {
-            devDependencies = packageJson.get("devDependencies");
-            replaceDependency(devDependencies, dependencyName, version);
+        JsonNode sectionNode = packageJson.get(section.getFieldName());
+        if (sectionNode instanceof ObjectNode && sectionNode.has(dependencyName)) {
+            ((ObjectNode) sectionNode).set(dependencyName, new TextNode(version));
+        }
+
+        if (packageLock != null) {
+            updateLockedDependency(dependencyName, version, section.getFieldName());
+        }
+    }
+
+    /**
+     * Registers the lock file edits following a dependency version change. The root package entry mirrors the ranges
+     * from package.json, so it gets the new range. When the new version is an exact version, the entry of the
+     * installed package the dependency resolves to according to the {@link LockFileGraph}, or of the top-level one
+     * when it cannot be resolved (both in "packages" and in the legacy "dependencies", where a copy nested in
+     * node_modules is nested in the same way and a copy outside of node_modules has no entry), is pointed to it. Its
+     * tarball
+     * URL is adjusted and the integrity hash, which cannot be known in advance, is dropped so npm computes it on
+     * install. Ranges cannot be resolved without a registry, so installed entries are only checked against them.
+     */
+    private void updateLockedDependency(String dependencyName, String version, String section)
+            throws ManipulationException {
+        LockFileEdits edits = packageLock.getEdits();
+        edits.setValue(version, "packages", lockPath, section, getLockedDependencyName(dependencyName));
+
+        List<String[]> installedEntries = new ArrayList<>();
+        LockFileGraph graph = packageLock.getGraph();
+        int node = graph == null ? -1 : graph.getNode(lockPath);
+        int installed = node < 0 ? -1 : graph.resolve(node, dependencyName);
+        if (installed >= 0) {
+            // the exact copy the package uses, other copies are kept as they may be required by other packages
+            installedEntries.add(new String[] { "packages", graph.getPath(installed) });
+            String[] legacyEntry = getLegacyEntry(graph.getPath(installed));
+            if (legacyEntry != null) {
+                installedEntries.add(legacyEntry);
+            }
+            LOGGER.debug(
+                    "Dependency {} of {} is installed as {}, which is used by {} packages",
+                    dependencyName,
+                    lockPath,
+                    graph.getPath(installed),
+                    graph.getDependents(installed).length);
+        } else {
+            installedEntries.add(new String[] { "packages", NODE_MODULES_PREFIX + dependencyName });
+            installedEntries.add(new String[] { "dependencies", dependencyName });
+            if (!isLockRoot()) {
+                // a workspace package may have its own copy when the hoisted one does not fit
+                installedEntries
+                        .add(new String[] { "packages", lockPath + "/" + NODE_MODULES_PREFIX + dependencyName });
+            }
+        }
+        if (isExactVersion(version)) {
+            String unscopedName = dependencyName.substring(dependencyName.lastIndexOf('/') + 1);
+            Pattern tarballPattern = Pattern.compile("(/-/" + Pattern.quote(unscopedName) + "-)[^/]+(\\.tgz)$");
+            String tarballReplacement = "$1" + Matcher.quoteReplacement(version) + "$2";
+            for (String[] entry : installedEntries) {
+                edits.setValue(version, field(entry, "version"));
+                edits.replaceValue(resolved -> {
+                    Matcher matcher = tarballPattern.matcher(resolved);
+                    if (matcher.find()) {
+                        return matcher.replaceFirst(tarballReplacement);
+                    }
+                    LOGGER.warn(
+                            "Cannot adjust resolved URL {} of dependency {} to version {} in lock file {}.",
+                            resolved,
+                            dependencyName,
+                            version,
+                            packageLockFile);
+                    return resolved;
+                }, field(entry, "resolved"));
+                edits.remove(field(entry, "integrity"));
+            }
         } else {
-            dependencies = packageJson.get("dependencies");
-            replaceDependency(dependencies, dependencyName, version);
+            for (String[] entry : installedEntries) {
+                edits.replaceValue(locked -> {
+                    if (!satisfies(locked, version)) {
+                        LOGGER.warn(
+                                "Locked version {} of dependency {} does not satisfy {}. Lock file {} needs to be "
+                                        + "updated by npm install.",
+                                locked,
+                                dependencyName,
+                                version,
+                                packageLockFile);
+                    }
+                    return locked;
+                }, field(entry, "version"));
+            }
+        }
+    }
+
+    /**
+     * Maps the install path of a package copy to the path of its entry in the legacy "dependencies" section, which
+     * nests the copies in the same way as the node_modules directories, e.g. {@code node_modules/a/node_modules/b} to
+     * {@code dependencies/a/dependencies/b}.
+     *
+     * @param installPath the install path, i.e. the key in "packages"
+     * @return the legacy entry path or null if the copy is not installed in the root node_modules, e.g. it is a copy
+     *         of a workspace package
+     */
+    static String[] getLegacyEntry(String installPath) {
+        if (!installPath.startsWith(NODE_MODULES_PREFIX)) {
+            return null;
+        }
+        String[] names = installPath.substring(NODE_MODULES_PREFIX.length()).split("/" + NODE_MODULES_PREFIX);
+        String[] entry = new String[names.length * 2];
+        for (int i = 0; i < names.length; i++) {
+            entry[2 * i] = "dependencies";
+            entry[2 * i + 1] = names[i];
         }
+        return entry;
     }
 
-    private Map<String, String> createDependenciesMap(JsonNode dependenciesNode) {
-        Map<String, String> dependenciesMap = new LinkedHashMap<>();
-        if (dependenciesNode != null) {
-            if (dependenciesNode instanceof ObjectNode) {
-                Iterator<Entry<String, JsonNode>> iterator = ((ObjectNode) dependenciesNode).fields();
-                while (iterator.hasNext()) {
-                    Map.Entry<String, JsonNode> devDependency = iterator.next();
-                    dependenciesMap.put(devDependency.getKey().toString(), devDependency.getValue().asText());
+    private static String[] field(String[] entry, String name) {
+        String[] path = Arrays.copyOf(entry, entry.length + 1);
+        path[entry.length] = name;
+        return path;
+    }
+
+    private static boolean isExactVersion(String version) {
+        try {
+            Version.valueOf(version);
+            return true;
+        } catch (ParseException ex) {
+            return false;
+        }
+    }
+
+    private static boolean satisfies(String lockedVersion, String range) {
+        try {
+            return Version.valueOf(lockedVersion).satisfies(range);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Cannot check if version {} satisfies {}: {}", lockedVersion, range, ex.getMessage());
+            return true;
+        }
+    }
+
+    @Override
+    public boolean updateDependencyReference(String dependencyName, String newName, UnaryOperator<String> rangeUpdate)
+            throws ManipulationException {
+        getPackage();
+
+        boolean changed = false;
+        for (DependencySection dependencySection : DependencySection.values()) {
+            String section = dependencySection.getFieldName();
+            JsonNode sectionNode = packageJson.get(section);
+            if (!(sectionNode instanceof ObjectNode) || !sectionNode.has(dependencyName)) {
+                continue;
+            }
+            String currentRange = sectionNode.get(dependencyName).asText();
+            String newRange = rangeUpdate.apply(currentRange);
+            if (dependencyName.equals(newName) && currentRange.equals(newRange)) {
+                continue;
+            }
+
+            // rebuild the section to keep the position of the renamed key
+            ObjectNode updated = mapper.createObjectNode();
+            Iterator<Entry<String, JsonNode>> iterator = sectionNode.fields();
+            while (iterator.hasNext()) {
+                Entry<String, JsonNode> dependency = iterator.next();
+                if (dependency.getKey().equals(dependencyName)) {
+                    updated.set(newName, new TextNode(newRange));
+                } else {
+                    updated.set(dependency.getKey(), dependency.getValue());
+                }
+            }
+            ((ObjectNode) packageJson).set(section, updated);
+
+            if (packageLock != null) {
+                String lockedDependencyName = getLockedDependencyName(dependencyName);
+                LockFileEdits edits = packageLock.getEdits();
+                edits.setValue(newRange, "packages", lockPath, section, lockedDependencyName);
+                if (!dependencyName.equals(newName)) {
+                    edits.rename(newName, "packages", lockPath, section, lockedDependencyName);
                 }
             }
+            changed = true;
         }
-        return Collections.unmodifiableMap(dependenciesMap);
-    }
 
-    private void replaceDependency(JsonNode dependenciesNode, String dependencyName, String version) {
-        if (dependenciesNode != null) {
-            if (dependenciesNode instanceof ObjectNode) {
-                Iterator<Entry<String, JsonNode>> iterator = ((ObjectNode) dependenciesNode).fields();
-                while (iterator.hasNext()) {
-                    Map.Entry<String, JsonNode> dependency = iterator.next();
-                    if (dependency.getKey().toString().equals(dependencyName)) {
-                        dependency.setValue(new TextNode(version));
+        if (changed && !dependencyName.equals(newName)) {
+            lockedDependencyNames.put(newName, getLockedDependencyName(dependencyName));
+            // the bundled dependencies are listed by name only
+            for (String field : BUNDLE_FIELDS) {
+                JsonNode bundled = packageJson.get(field);
+                if (bundled instanceof ArrayNode) {
+                    for (int i = 0; i < bundled.size(); i++) {
+                        if (dependencyName.equals(bundled.get(i).asText())) {
+                            ((ArrayNode) bundled).set(i, new TextNode(newName));
+                        }
                     }
                 }
             }
         }
+        return changed;
+    }
+
+    @Override
+    public boolean rewriteLockFileField(String fieldName, UnaryOperator<String> rewriter)
+            throws ManipulationException {
+        // only the owner of a shared lock file registers the rewrite, so it is applied once
+        if (packageLock == null || !isLockRoot() || !packageLockFile.exists()) {
+            return false;
+        }
+        packageLock.getEdits().rewriteField(fieldName, rewriter);
+        return true;
+    }
+
+    /**
+     * @return true if this package owns a lock file with registered edits, whose changes are known only when the file
+     *         is streamed
+     */
+    public boolean hasLockFileEdits() {
+        return packageLock != null && isLockRoot() && packageLockFile.exists() && !packageLock.getEdits().isEmpty();
+    }
+
+    /**
+     * Writes only the lock file of the package, with the registered edits applied.
+     *
+     * @return true if the lock file was changed
+     * @throws ManipulationException in case of a reading or writing error
+     */
+    public boolean updateLockFile() throws ManipulationException {
+        return packageLock != null && packageLock.write();
+    }
+
+    /**
+     * Sets the metrics to record the file parsing and the bytes read and written to.
+     *
+     * @param metrics the metrics of the session
+     */
+    public void setMetrics(ManipulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the pool of the strings parsed from the package file. It has to be set before the file is loaded.
+     *
+     * @param stringPool the string pool of the session, null to disable pooling
+     */
+    public void setStringPool(StringPool stringPool) {
+        if (stringPool != null) {
+            mapper.setNodeFactory(stringPool.nodeFactory());
+        }
+    }
+
+    public File getPackageFile() {
+        return packageFile;
+    }
+
+    /**
+     * @return the lock file or null if the project does not have one
+     */
+    public File getPackageLockFile() {
+        return packageLockFile;
+    }
+
+    PackageLock getLock() {
+        return packageLock;
+    }
+
+    /**
+     * @return true if this is the root package owning the lock file, false for the other workspace packages
+     */
+    public boolean isLockRoot() {
+        return lockPath.isEmpty();
+    }
+
+    /**
+     * @return the key of the package entry in the lock file "packages", empty for the root package
+     */
+    public String getLockPath() {
+        return lockPath;
+    }
+
+    private String getLockedDependencyName(String dependencyName) {
+        return lockedDependencyNames.getOrDefault(dependencyName, dependencyName);
     }
 
 }
@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -82,6 +83,8 @@ public class NpmPackageScopeManipulator implements Manipulator<NpmResult> {
 
     @Override
     public Set<Project> applyChanges(final List<Project> projects) throws ManipulationException {
+        WorkspaceIndex workspaceIndex = WorkspaceIndex.get(session, projects);
+
         Set<Project> changed = new HashSet<>();
         for (Project project : projects) {
             if (project instanceof NpmPackage) {
@@ -93,8 +96,17 @@ public class NpmPackageScopeManipulator implements Manipulator<NpmResult> {
                 if (!origName.equals(newName)) {
                     logger.info("Adding package scope: {} -> {}", origName, newName);
                     npmPackage.setName(newName);
-                    session.getResult().setName(newName);
+                    if (project == projects.get(0)) {
+                        session.getResult().setName(newName);
+                    }
+                    Map<String, String> versions = session.getResult().getVersionsMap();
+                    if (versions.containsKey(origName)) {
+                        versions.put(newName, versions.remove(origName));
+                    }
                     changed.add(npmPackage);
+                    if (workspaceIndex != null) {
+                        changed.addAll(workspaceIndex.packageRenamed(origName, newName));
+                    }
                 }
             } else {
                 throw new ManipulationException(
@@ -65,6 +65,12 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
      */
     public static final String SEMVER_PRERELEASE_BUILDNUM_SEPARATOR = ".";
 
+    /**
+     * The property switching on the lockstep mode, in which all the projects get the same version computed from the
+     * root project version and the available versions of all the projects.
+     */
+    public static final String VERSION_LOCKSTEP_PARAM = "versionLockstep";
+
     /**
      * Version pattern matching the semantic versioning format for a final release version.
      *
@@ -108,6 +114,8 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
 
     private VersioningStrategy versioningStrategy;
 
+    private boolean versionLockstep;
+
     private ManipulationSession<NpmResult> session;
 
     private List<Class<? extends Manipulator<NpmResult>>> manipulatorDependencies;
@@ -163,6 +171,7 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
             versionBaseOverride = userProps.getProperty("versionBaseOverride");
             versionSuffixOverride = userProps.getProperty("versionSuffixOverride");
             restUrl = userProps.getProperty("restURL");
+            versionLockstep = Boolean.parseBoolean(userProps.getProperty(VERSION_LOCKSTEP_PARAM));
             versionIncrementalSuffix = userProps.getProperty("versionIncrementalSuffix");
             try {
                 versionIncrementalSuffixPadding = createInteger(
@@ -189,6 +198,13 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
         @SuppressWarnings("unchecked")
         Map<String, Set<String>> availableVersions = session
                 .getState(DAVersionsCollector.AVAILABLE_VERSIONS, Map.class);
+        WorkspaceIndex workspaceIndex = WorkspaceIndex.get(session, projects);
+
+        String lockstepVersion = null;
+        if (versionLockstep && projects.size() > 1) {
+            lockstepVersion = getLockstepVersion(projects, availableVersions);
+            logger.info("Using version {} for all {} packages", lockstepVersion, projects.size());
+        }
 
         Set<Project> changed = new HashSet<>();
         for (Project project : projects) {
@@ -196,16 +212,28 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
                 NpmPackage npmPackage = (NpmPackage) project;
 
                 String origVersion = npmPackage.getVersion();
-                Set<String> availablePkgVersions = availableVersions == null ? Collections.emptySet()
-                        : availableVersions.get(npmPackage.getName());
-                String newVersion = getNewVersion(origVersion, availablePkgVersions);
+                String newVersion;
+                if (lockstepVersion == null) {
+                    newVersion = getNewVersion(origVersion, getAvailableVersions(npmPackage, availableVersions));
+                } else {
+                    newVersion = lockstepVersion;
+                }
 
-                if (!origVersion.equals(newVersion)) {
+                if (newVersion != null && !origVersion.equals(newVersion)) {
                     logger.info("Updating package version: {} -> {}", origVersion, newVersion);
                     npmPackage.setVersion(newVersion);
-                    session.getResult().setVersion(newVersion);
+                    if (project == projects.get(0)) {
+                        session.getResult().setVersion(newVersion);
+                    }
                     changed.add(npmPackage);
+                    if (workspaceIndex != null) {
+                        changed.addAll(
+                                workspaceIndex.packageVersionChanged(npmPackage.getName(), origVersion, newVersion));
+                    }
                 }
+                session.getResult()
+                        .getVersionsMap()
+                        .put(npmPackage.getName(), newVersion == null ? origVersion : newVersion);
             } else {
                 throw new ManipulationException(
                         "Manipulation failed, because project type {} is not supported by NPM manipulation.",
@@ -215,6 +243,40 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
         return changed;
     }
 
+    /**
+     * Computes the version shared by all the projects in lockstep mode. It is based on the version of the root project,
+     * i.e. the first one, and the available versions of all the projects together, so the generated suffix or patch
+     * number is higher than any already used by any of the projects.
+     *
+     * @param projects all the projects
+     * @param availableVersions available versions of the packages by package name, may be null
+     * @return the new version
+     * @throws ManipulationException in case a project cannot be loaded or the version cannot be generated
+     */
+    String getLockstepVersion(List<Project> projects, Map<String, Set<String>> availableVersions)
+            throws ManipulationException {
+        Set<String> allAvailableVersions = new HashSet<>();
+        for (Project project : projects) {
+            if (project instanceof NpmPackage) {
+                allAvailableVersions.addAll(getAvailableVersions((NpmPackage) project, availableVersions));
+            }
+        }
+        if (!(projects.get(0) instanceof NpmPackage)) {
+            throw new ManipulationException(
+                    "Manipulation failed, because project type {} is not supported by NPM manipulation.",
+                    projects.get(0).getClass());
+        }
+        return getNewVersion(((NpmPackage) projects.get(0)).getVersion(), allAvailableVersions);
+    }
+
+    private Set<String> getAvailableVersions(NpmPackage npmPackage, Map<String, Set<String>> availableVersions)
+            throws ManipulationException {
+        if (availableVersions == null) {
+            return Collections.emptySet();
+        }
+        return availableVersions.getOrDefault(npmPackage.getName(), Collections.emptySet());
+    }
+
     String getNewVersion(String origVersion, Set<String> availablePkgVersions) throws ManipulationException {
         String newVersion = null;
         if (isEmpty(versionOverride)) {
@@ -345,6 +407,8 @@ public class NpmPackageVersionManipulator implements Manipulator<NpmResult> {
             manipulatorDependencies = new ArrayList<>();
             if (isEmpty(versionOverride) && isEmpty(versionSuffixOverride) && !isEmpty(restUrl)) {
                 manipulatorDependencies.add(DAVersionsCollector.class);
+                // the available versions are looked up by the scoped names, also when they were provided directly
+                manipulatorDependencies.add(NpmPackageScopeManipulator.class);
             }
         }
         return manipulatorDependencies;
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
+import org.jboss.pnc.npmmanipulator.api.Manipulator;
+import org.jboss.pnc.npmmanipulator.api.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Manipulator} implementation that rewrites the registry URL prefixes of the resolved package URLs in an NPM
+ * project's lock file. Format: -DregistryOverride.[original_prefix]=[new_prefix], e.g.
+ * {@code -DregistryOverride.https://registry.npmjs.org/=https://mirror.example.com/api/npm/}. When several prefixes
+ * match a URL, the longest one is used.
+ *
+ * <p>
+ * The rewrite is done while the lock file is streamed together with all the other lock file changes, so the lock file
+ * is read and written only once. Whether a lock file changes is known only then, so the packages are not reported as
+ * changed by this manipulator, the session writes the lock files with pending edits on its own.
+ */
+public class NpmRegistryManipulator implements Manipulator<NpmResult> {
+
+    /** The property name prefix of the registry URL mappings. */
+    public static final String REGISTRY_OVERRIDE_PARAM = "registryOverride";
+
+    /** The separator that's used between the override property and the registry URL prefix. */
+    public static final String OVERRIDE_PROPERTY_SEPARATOR = ".";
+
+    /** The lock file field containing the URL a package was resolved from. */
+    public static final String RESOLVED_FIELD = "resolved";
+
+    private static final String REGISTRY_OVERRIDE_PREFIX = REGISTRY_OVERRIDE_PARAM + OVERRIDE_PROPERTY_SEPARATOR;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /** Original prefixes ordered from the longest one. */
+    private String[] prefixes;
+
+    /** Replacement prefixes on the same positions as the original ones. */
+    private String[] replacements;
+
+    /** The default public constructor. */
+    public NpmRegistryManipulator() {
+    }
+
+    /**
+     * Constructor used in tests.
+     *
+     * @param mappings the original prefixes mapped to the new ones
+     */
+    NpmRegistryManipulator(Map<String, String> mappings) {
+        compile(mappings);
+    }
+
+    @Override
+    public boolean init(final ManipulationSession<NpmResult> session) {
+        Properties userProps = session.getUserProps();
+        if (userProps != null) {
+            Map<String, String> mappings = new LinkedHashMap<>();
+            for (String key : userProps.stringPropertyNames()) {
+                if (key.startsWith(REGISTRY_OVERRIDE_PREFIX) && key.length() > REGISTRY_OVERRIDE_PREFIX.length()) {
+                    mappings.put(key.substring(REGISTRY_OVERRIDE_PREFIX.length()), userProps.getProperty(key));
+                }
+            }
+            compile(mappings);
+
+            return prefixes.length > 0;
+        }
+
+        return false;
+    }
+
+    private void compile(Map<String, String> mappings) {
+        List<Map.Entry<String, String>> sorted = new ArrayList<>(mappings.entrySet());
+        sorted.sort((a, b) -> Integer.compare(b.getKey().length(), a.getKey().length()));
+        prefixes = new String[sorted.size()];
+        replacements = new String[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            prefixes[i] = sorted.get(i).getKey();
+            replacements[i] = sorted.get(i).getValue();
+            logger.debug("Registry URL prefix {} will be replaced by {}", prefixes[i], replacements[i]);
+        }
+    }
+
+    /**
+     * Rewrites the URL prefix according to the longest matching mapping.
+     *
+     * @param url the original URL
+     * @return the rewritten URL or the original one if no mapping matches
+     */
+    String rewrite(String url) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (url.startsWith(prefixes[i])) {
+                return replacements[i] + url.substring(prefixes[i].length());
+            }
+        }
+        return url;
+    }
+
+    @Override
+    public Set<Project> applyChanges(final List<Project> projects) throws ManipulationException {
+        for (Project project : projects) {
+            if (project instanceof NpmPackage) {
+                ((NpmPackage) project).rewriteLockFileField(RESOLVED_FIELD, this::rewrite);
+            } else {
+                throw new ManipulationException(
+                        "Manipulation failed, because project type {} is not supported by NPM manipulation.",
+                        project.getClass());
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Collection<Class<? extends Manipulator<NpmResult>>> getManipulatorDependencies() {
+        return Collections.emptyList();
+    }
+
+}
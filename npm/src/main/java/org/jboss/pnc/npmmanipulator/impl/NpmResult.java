@@ -20,6 +20,9 @@ package org.jboss.pnc.npmmanipulator.impl;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
 /**
  * Represents result of manipulation.
  */
@@ -31,12 +34,31 @@ public class NpmResult {
     /** Resulting package version. */
     private String version;
 
+    /** Resulting versions of all the manipulated packages by their resulting names. */
+    private Map<String, String> versionsMap = new LinkedHashMap<String, String>();
+
+    /** JSON Patch operations of the dry run by the changed file paths relative to the project directory. */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, JsonNode> patches = new LinkedHashMap<String, JsonNode>();
+
+    /** Timers and counters of the manipulation. */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+
     /** Modified depedencies version. */
     private Map<String, String> dependenciesMap = new LinkedHashMap<String, String>();
 
     /** Modified devDepedencies version. */
     private Map<String, String> devDependenciesMap = new LinkedHashMap<String, String>();
 
+    /** Modified peerDependencies version. */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, String> peerDependenciesMap = new LinkedHashMap<String, String>();
+
+    /** Modified optionalDependencies version. */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, String> optionalDependenciesMap = new LinkedHashMap<String, String>();
+
     public String getName() {
         return name;
     }
@@ -53,6 +75,30 @@ public class NpmResult {
         this.version = version;
     }
 
+    public Map<String, String> getVersionsMap() {
+        return versionsMap;
+    }
+
+    public void setVersionsMap(Map<String, String> versionsMap) {
+        this.versionsMap = versionsMap;
+    }
+
+    public Map<String, JsonNode> getPatches() {
+        return patches;
+    }
+
+    public void setPatches(Map<String, JsonNode> patches) {
+        this.patches = patches;
+    }
+
+    public Map<String, Object> getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Map<String, Object> metrics) {
+        this.metrics = metrics;
+    }
+
     public Map<String, String> getDependenciesMap() {
         return dependenciesMap;
     }
@@ -69,4 +115,37 @@ public class NpmResult {
         this.devDependenciesMap = devDependenciesMap;
     }
 
+    public Map<String, String> getPeerDependenciesMap() {
+        return peerDependenciesMap;
+    }
+
+    public void setPeerDependenciesMap(Map<String, String> peerDependenciesMap) {
+        this.peerDependenciesMap = peerDependenciesMap;
+    }
+
+    public Map<String, String> getOptionalDependenciesMap() {
+        return optionalDependenciesMap;
+    }
+
+    public void setOptionalDependenciesMap(Map<String, String> optionalDependenciesMap) {
+        this.optionalDependenciesMap = optionalDependenciesMap;
+    }
+
+    /**
+     * @param section the dependency section
+     * @return the modified dependencies versions of the section
+     */
+    public Map<String, String> getDependenciesMap(DependencySection section) {
+        switch (section) {
+            case DEV_DEPENDENCIES:
+                return devDependenciesMap;
+            case PEER_DEPENDENCIES:
+                return peerDependenciesMap;
+            case OPTIONAL_DEPENDENCIES:
+                return optionalDependenciesMap;
+            default:
+                return dependenciesMap;
+        }
+    }
+
 }
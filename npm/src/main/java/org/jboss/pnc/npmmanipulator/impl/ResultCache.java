@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Cache of the result of the last manipulation, stored next to the result file. It is keyed by a fingerprint of all the
+ * inputs: the contents of the input files, the user properties, the identity of the available versions and the version
+ * of the manipulator itself, so an upgrade never replays a result of the older logic. When a manipulation with the same
+ * fingerprint runs again, e.g. a rebuild of the same sources, the stored result and changed file contents are written
+ * instead of running the manipulators.
+ */
+public class ResultCache {
+
+    /** The property enabling the result cache. */
+    public static final String RESULT_CACHE_PARAM = "resultCache";
+
+    /**
+     * The property identifying the snapshot of the Dependency Analysis data. Without it the result is not cached when
+     * Dependency Analysis is queried, because its answers may change.
+     */
+    public static final String VERSION_SOURCE_SNAPSHOT_PARAM = "versionSourceSnapshot";
+
+    /** Suffix of the cache file name appended to the result file name. */
+    public static final String CACHE_FILE_SUFFIX = ".cache";
+
+    /**
+     * Version of the cached manipulation logic, part of the fingerprint. It has to be increased whenever a change of
+     * the manipulators changes the result of the same inputs, as the implementation version is not available in all
+     * builds.
+     */
+    static final int CACHE_FORMAT = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+    private final File cacheFile;
+
+    private final Path baseDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param resultFile the result file the cache is stored next to
+     * @param baseDir the directory the paths of the cached files are relative to
+     */
+    public ResultCache(File resultFile, File baseDir) {
+        this.cacheFile = new File(resultFile.getPath() + CACHE_FILE_SUFFIX);
+        this.baseDir = baseDir.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Computes the fingerprint of the manipulation inputs.
+     *
+     * @param inputFiles the files read by the manipulation, non-existing ones are skipped
+     * @param userProps the user properties
+     * @param availableVersions the available versions provided in advance, may be null
+     * @return the fingerprint
+     * @throws ManipulationException in case of an error when reading a file
+     */
+    public String fingerprint(
+            Collection<File> inputFiles,
+            Properties userProps,
+            Map<String, Set<String>> availableVersions) throws ManipulationException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new ManipulationException("SHA-256 is not supported by the JVM", ex);
+        }
+
+        String implementationVersion = ResultCache.class.getPackage().getImplementationVersion();
+        update(digest, CACHE_FORMAT + "/" + implementationVersion);
+
+        Map<String, File> files = new TreeMap<>();
+        for (File file : inputFiles) {
+            if (file != null && file.isFile()) {
+                files.put(relativePath(file), file);
+            }
+        }
+        for (Entry<String, File> file : files.entrySet()) {
+            update(digest, file.getKey());
+            try (InputStream in = Files.newInputStream(file.getValue().toPath())) {
+                // the files are streamed, a lock file may be too large to be read at once
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            } catch (IOException ex) {
+                throw new ManipulationException("Error reading file {}", file.getValue(), ex);
+            }
+            digest.update((byte) 0);
+        }
+
+        for (String key : new TreeSet<>(userProps.stringPropertyNames())) {
+            update(digest, key + '=' + userProps.getProperty(key));
+        }
+
+        if (availableVersions != null) {
+            for (Entry<String, Set<String>> versions : new TreeMap<>(availableVersions).entrySet()) {
+                update(digest, versions.getKey() + '=' + new TreeSet<>(versions.getValue()));
+            }
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (byte b : digest.digest()) {
+            fingerprint.append(String.format("%02x", b));
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Writes the cached files and provides the cached result, if the fingerprint matches.
+     *
+     * @param fingerprint the fingerprint of the current inputs
+     * @return the cached result or null if there is no cached result for the fingerprint
+     * @throws ManipulationException in case the cached files cannot be written
+     */
+    public NpmResult replay(String fingerprint) throws ManipulationException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        JsonNode cache;
+        try {
+            cache = mapper.readTree(cacheFile);
+        } catch (IOException ex) {
+            LOGGER.warn("Ignoring unreadable result cache {}: {}", cacheFile, ex.getMessage());
+            return null;
+        }
+        if (!fingerprint.equals(cache.path("fingerprint").asText())) {
+            LOGGER.debug("Result cache {} is for different inputs.", cacheFile);
+            return null;
+        }
+
+        Iterator<Entry<String, JsonNode>> outputs = cache.path("outputs").fields();
+        while (outputs.hasNext()) {
+            Entry<String, JsonNode> output = outputs.next();
+            Path target = baseDir.resolve(output.getKey());
+            try {
+                Files.write(target, output.getValue().asText().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                throw new ManipulationException("Error writing the cached file {}.", target, ex);
+            }
+        }
+        try {
+            return mapper.treeToValue(cache.get("result"), NpmResult.class);
+        } catch (IOException ex) {
+            throw new ManipulationException("Error reading the cached result from {}.", cacheFile, ex);
+        }
+    }
+
+    /**
+     * Stores the result and the current contents of the changed files.
+     *
+     * @param fingerprint the fingerprint of the inputs
+     * @param result the manipulation result
+     * @param outputFiles the files changed by the manipulation, non-existing ones are skipped
+     * @throws ManipulationException in case of an error when reading the files or writing the cache
+     */
+    public void store(String fingerprint, NpmResult result, Collection<File> outputFiles) throws ManipulationException {
+        ObjectNode cache = mapper.createObjectNode();
+        cache.put("fingerprint", fingerprint);
+        cache.set("result", mapper.valueToTree(result));
+        ObjectNode outputs = cache.putObject("outputs");
+        for (File file : outputFiles) {
+            if (file != null && file.isFile()) {
+                try {
+                    outputs.put(
+                            relativePath(file),
+                            new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                } catch (IOException ex) {
+                    throw new ManipulationException("Error reading file {}", file, ex);
+                }
+            }
+        }
+        try {
+            mapper.writer(new DefaultPrettyPrinter()).writeValue(cacheFile, cache);
+        } catch (IOException ex) {
+            throw new ManipulationException("Error writing the result cache {}.", cacheFile, ex);
+        }
+        LOGGER.debug("Stored the result for fingerprint {} in {}", fingerprint, cacheFile);
+    }
+
+    private String relativePath(File file) {
+        return baseDir.relativize(file.toPath().toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationSession;
+import org.jboss.pnc.npmmanipulator.api.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reverse dependency index of the packages in one workspace. It maps the name of each workspace package to the other
+ * workspace packages depending on it in any {@link DependencySection}, so that after a package is renamed or its
+ * version changes, the references to it are updated by visiting only its dependents instead of rescanning all the
+ * projects.
+ *
+ * <p>
+ * The index is built once per session from the names before any manipulation and then kept up to date by
+ * {@link #packageRenamed(String, String)}.
+ */
+public class WorkspaceIndex {
+
+    /** Key of the index in the manipulation session state. */
+    public static final String WORKSPACE_INDEX = "workspaceIndex";
+
+    /** Prefix of the version ranges that must be resolved from the workspace. */
+    static final String WORKSPACE_PROTOCOL = "workspace:";
+
+    /** Range operators kept when the version in a range is updated. */
+    private static final String[] RANGE_OPERATORS = { ">=", "^", "~", "=" };
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkspaceIndex.class);
+
+    /** Workspace package names mapped to the workspace packages depending on them. */
+    private final Map<String, List<NpmPackage>> dependents = new HashMap<>();
+
+    WorkspaceIndex(List<Project> projects) throws ManipulationException {
+        Set<String> names = new HashSet<>();
+        for (Project project : projects) {
+            if (project instanceof NpmPackage) {
+                names.add(((NpmPackage) project).getName());
+            }
+        }
+        for (Project project : projects) {
+            if (project instanceof NpmPackage) {
+                NpmPackage npmPackage = (NpmPackage) project;
+                Set<String> referenced = new LinkedHashSet<>();
+                npmPackage.getDependencyView().forEach((section, name, range) -> {
+                    if (names.contains(name)) {
+                        referenced.add(name);
+                    }
+                });
+                for (String name : referenced) {
+                    dependents.computeIfAbsent(name, k -> new ArrayList<>()).add(npmPackage);
+                }
+            }
+        }
+        LOGGER.debug("Indexed {} workspace packages referenced by other workspace packages", dependents.size());
+    }
+
+    /**
+     * Provides the index stored in the session, building it on the first call. The first call has to be done before
+     * any package is renamed.
+     *
+     * @param session the manipulation session
+     * @param projects all the projects of the session
+     * @return the index or null if there is only one project
+     * @throws ManipulationException in case a project cannot be loaded
+     */
+    public static WorkspaceIndex get(ManipulationSession<NpmResult> session, List<Project> projects)
+            throws ManipulationException {
+        if (projects.size() < 2) {
+            return null;
+        }
+        WorkspaceIndex index = session.getState(WORKSPACE_INDEX, WorkspaceIndex.class);
+        if (index == null) {
+            index = new WorkspaceIndex(projects);
+            session.setState(WORKSPACE_INDEX, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param name the workspace package name
+     * @return the workspace packages depending on the package
+     */
+    public List<NpmPackage> getDependents(String name) {
+        return dependents.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Updates the references in the dependents of a renamed package and re-keys the index.
+     *
+     * @param oldName the original package name
+     * @param newName the new package name
+     * @return the dependents that were changed
+     * @throws ManipulationException in case a dependent cannot be updated
+     */
+    public Set<Project> packageRenamed(String oldName, String newName) throws ManipulationException {
+        List<NpmPackage> packageDependents = dependents.remove(oldName);
+        if (packageDependents == null) {
+            return Collections.emptySet();
+        }
+        dependents.put(newName, packageDependents);
+
+        Set<Project> changed = new HashSet<>();
+        for (NpmPackage dependent : packageDependents) {
+            if (dependent.updateDependencyReference(oldName, newName, range -> range)) {
+                LOGGER.info("Updating reference to {} in {}: -> {}", oldName, dependent.getName(), newName);
+                changed.add(dependent);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Updates the version ranges in the dependents of a package whose version changed.
+     *
+     * @param name the current package name
+     * @param oldVersion the original package version
+     * @param newVersion the new package version
+     * @return the dependents that were changed
+     * @throws ManipulationException in case a dependent cannot be updated
+     */
+    public Set<Project> packageVersionChanged(String name, String oldVersion, String newVersion)
+            throws ManipulationException {
+        Set<Project> changed = new HashSet<>();
+        for (NpmPackage dependent : getDependents(name)) {
+            if (dependent.updateDependencyReference(name, name, range -> updateRange(range, oldVersion, newVersion))) {
+                LOGGER.info(
+                        "Updating reference to {} in {}: {} -> {}",
+                        name,
+                        dependent.getName(),
+                        oldVersion,
+                        newVersion);
+                changed.add(dependent);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Replaces the version in a range referencing exactly the old version, optionally with one of the operators
+     * {@code >=}, {@code ^}, {@code ~} and {@code =} and optionally with the {@code workspace:} protocol. Other ranges
+     * are kept as they are.
+     *
+     * @param range the current version range
+     * @param oldVersion the original version
+     * @param newVersion the new version
+     * @return the updated range
+     */
+    static String updateRange(String range, String oldVersion, String newVersion) {
+        String protocol = range.startsWith(WORKSPACE_PROTOCOL) ? WORKSPACE_PROTOCOL : "";
+        String rest = range.substring(protocol.length());
+        String operator = "";
+        for (String candidate : RANGE_OPERATORS) {
+            if (rest.startsWith(candidate)) {
+                operator = candidate;
+                break;
+            }
+        }
+        if (rest.substring(operator.length()).equals(oldVersion)) {
+            return protocol + operator + newVersion;
+        }
+        return range;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.da;
+
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+import static org.apache.http.HttpStatus.SC_OK;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.apache.commons.codec.binary.Base32;
+import org.commonjava.atlas.npm.ident.ref.NpmPackageRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.redhat.resilience.otel.OTelCLIHelper;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import kong.unirest.HttpResponse;
+import kong.unirest.ObjectMapper;
+import kong.unirest.Unirest;
+import kong.unirest.UnirestException;
+import kong.unirest.UnirestInstance;
+
+/**
+ * REST client of Dependency Analysis. It is the only class referencing the HTTP client and OpenTelemetry libraries, so
+ * they are loaded only when a manipulation actually calls Dependency Analysis. Each call uses its own HTTP client
+ * instance, so concurrent manipulations in one JVM do not share any configuration.
+ */
+public class DAClient {
+
+    private static final Random RANDOM = new Random();
+
+    private static final Base32 CODEC = new Base32();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String restURL;
+
+    private final String mode;
+
+    private final long connectionTimeout;
+
+    private final long socketTimeout;
+
+    private final Map<String, String> otelHeaders = new HashMap<>();
+
+    /**
+     * @param restURL the Dependency Analysis REST URL
+     * @param mode the mode indicating which versions are returned, may be null
+     * @param connectionTimeout connection timeout in seconds
+     * @param socketTimeout socket timeout in seconds
+     */
+    public DAClient(String restURL, String mode, long connectionTimeout, long socketTimeout) {
+        this.restURL = restURL;
+        this.mode = mode;
+        this.connectionTimeout = connectionTimeout;
+        this.socketTimeout = socketTimeout;
+
+        if (OTelCLIHelper.otelEnabled()) {
+            SpanContext current = Span.current().getSpanContext();
+            if (current.isValid()) {
+                otelHeaders.put("trace-id", current.getTraceId());
+                otelHeaders.put("span-id", current.getSpanId());
+                otelHeaders.put(
+                        "tracestate",
+                        current.getTraceState()
+                                .asMap()
+                                .entrySet()
+                                .stream()
+                                .map(Objects::toString)
+                                .collect(Collectors.joining(",")));
+                // Code from pnc-common to avoid transitively including that and pnc-api in the classpath
+                otelHeaders.put(
+                        "traceparent",
+                        String.format(
+                                "%s-%s-%s-%s",
+                                "00",
+                                current.getTraceId(),
+                                current.getSpanId(),
+                                current.getTraceFlags().asHex()));
+            } else {
+                logger.warn("Invalid span context {}", current);
+            }
+        }
+    }
+
+    /**
+     * Queries the existing versions of the packages.
+     *
+     * @param restParam the packages
+     * @return the existing versions of the packages
+     */
+    public Map<NpmPackageRef, List<String>> getExistingVersions(List<NpmPackageRef> restParam) {
+        ReportMapper mapper = new ReportMapper(true, mode);
+        String endpoint = "reports/versions/impl";
+        return getAvailableVersions(restParam, mapper, endpoint);
+    }
+
+    private UnirestInstance createClient(ObjectMapper objectMapper) {
+        UnirestInstance unirest = Unirest.spawnInstance();
+
+        // According to https://github.com/Mashape/unirest-java the default connection timeout is 10000
+        // and the default socketTimeout is 60000.
+        // If not specified via properties, the values will be increased by default to 30 seconds for the first and 10
+        // minutes
+        // for the second.
+        unirest.config()
+                .socketTimeout((int) socketTimeout * 1000)
+                .connectTimeout((int) connectionTimeout * 1000)
+                .setObjectMapper(objectMapper);
+        return unirest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<NpmPackageRef, List<String>> getAvailableVersions(
+            List<NpmPackageRef> restParam,
+            ReportObjectMapper mapper,
+            String endpoint) {
+        @SuppressWarnings("rawtypes")
+        HttpResponse<Map> r;
+        int status;
+        Map<NpmPackageRef, List<String>> result;
+
+        String url = restURL + (restURL.endsWith("/") ? "" : '/');
+        if (!url.endsWith("v-1/")) {
+            url += "v-1/";
+        }
+        url += endpoint;
+
+        try (UnirestInstance unirest = createClient(mapper)) {
+            r = unirest.post(url)
+                    .header("Accept", "application/json")
+                    .header("Content-Type", "application/json")
+                    .header("Log-Context", getHeaderContext())
+                    .headers(otelHeaders)
+                    .body(restParam)
+                    .asObject(Map.class);
+
+            status = r.getStatus();
+            if (status == SC_OK) {
+                result = r.getBody();
+            } else {
+                throw new DAException(
+                        "Received response status " + status + " with message: " + mapper.getErrorString());
+            }
+        } catch (UnirestException ex) {
+            throw new DAException(
+                    "An exception was thrown when requesting the NPM versions for " + restParam + " with message "
+                            + ex.getMessage(),
+                    ex);
+        }
+
+        return result;
+    }
+
+    private String getHeaderContext() {
+        String headerContext;
+
+        if (isNotEmpty(MDC.get("LOG-CONTEXT"))) {
+            headerContext = MDC.get("LOG-CONTEXT");
+        } else {
+            // If we have no MDC PME has been used as the entry point. Dummy one up for DA.
+            byte[] randomBytes = new byte[20];
+            RANDOM.nextBytes(randomBytes);
+            headerContext = "npman-" + CODEC.encodeAsString(randomBytes);
+        }
+
+        return headerContext;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collection of edits addressed by the path of field names from the document root, e.g.
+ * {@code ["packages", "node_modules/express", "version"]}. The edits are stored in a trie of field names, so that the
+ * {@link LockFileRewriter} can find out whether a field is affected by a single map lookup per field while streaming
+ * the document. Edits of paths that do not exist in the document are ignored.
+ *
+ * <p>
+ * Besides that, the values of all fields with a given name can be rewritten regardless of their path, e.g. all the
+ * {@code resolved} URLs. Such rewrite is applied after the path-addressed replacement of the same field, if any.
+ */
+public class LockFileEdits {
+
+    private final PathNode root = new PathNode();
+
+    private final Map<String, UnaryOperator<String>> fieldRewriters = new HashMap<>();
+
+    private int size;
+
+    /**
+     * Registers replacement of a scalar value.
+     *
+     * @param replacement function computing the new value from the current value as text, returning {@code null}
+     *        removes the field
+     * @param path the path of the field
+     */
+    public void replaceValue(UnaryOperator<String> replacement, String... path) {
+        node(path).replacement = replacement;
+    }
+
+    /**
+     * Registers setting of a scalar value.
+     *
+     * @param value the new value
+     * @param path the path of the field
+     */
+    public void setValue(String value, String... path) {
+        replaceValue(current -> value, path);
+    }
+
+    /**
+     * Registers removal of a field including its whole value.
+     *
+     * @param path the path of the field
+     */
+    public void remove(String... path) {
+        node(path).remove = true;
+    }
+
+    /**
+     * Registers renaming of a field. Other edits of the field or its children still use the original name in their
+     * path.
+     *
+     * @param newName the new field name
+     * @param path the path of the field
+     */
+    public void rename(String newName, String... path) {
+        node(path).rename = newName;
+    }
+
+    /**
+     * Registers rewriting of all scalar values of the fields with given name anywhere in the document. A later rewrite
+     * of the same field name is chained after the earlier one.
+     *
+     * @param fieldName the field name
+     * @param rewriter function computing the new value from the current value as text
+     */
+    public void rewriteField(String fieldName, UnaryOperator<String> rewriter) {
+        UnaryOperator<String> previous = fieldRewriters.get(fieldName);
+        if (previous == null) {
+            fieldRewriters.put(fieldName, rewriter);
+            size++;
+        } else {
+            fieldRewriters.put(fieldName, value -> rewriter.apply(previous.apply(value)));
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of registered edits
+     */
+    public int size() {
+        return size;
+    }
+
+    /** Drops all registered edits. */
+    public void clear() {
+        root.children = null;
+        fieldRewriters.clear();
+        size = 0;
+    }
+
+    PathNode getRoot() {
+        return root;
+    }
+
+    Map<String, UnaryOperator<String>> getFieldRewriters() {
+        return fieldRewriters;
+    }
+
+    private PathNode node(String... path) {
+        PathNode node = root;
+        for (String name : path) {
+            if (node.children == null) {
+                node.children = new HashMap<>();
+            }
+            node = node.children.computeIfAbsent(name, k -> new PathNode());
+        }
+        if (node.replacement == null && node.rename == null && !node.remove) {
+            size++;
+        }
+        return node;
+    }
+
+    /** Node of the path trie. */
+    static final class PathNode {
+
+        private Map<String, PathNode> children;
+
+        private UnaryOperator<String> replacement;
+
+        private boolean remove;
+
+        private String rename;
+
+        PathNode child(String name) {
+            return children == null ? null : children.get(name);
+        }
+
+        UnaryOperator<String> getReplacement() {
+            return replacement;
+        }
+
+        boolean isRemove() {
+            return remove;
+        }
+
+        String getRename() {
+            return rename;
+        }
+    }
+
+}
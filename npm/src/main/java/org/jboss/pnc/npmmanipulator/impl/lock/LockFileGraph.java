@@ -0,0 +1,478 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Dependency graph of the packages installed according to a lock file. Every entry of the lock file {@code packages}
+ * section, or of the nested {@code dependencies} sections of a lock file version 1, is a node with an int ID. The
+ * edges lead from a package to the installed packages its dependencies resolve to by the Node.js module resolution,
+ * i.e. to the nearest {@code node_modules} copy up the directory tree, with workspace links followed to the linked
+ * packages. Both the edges and their reverse are stored in compressed sparse row arrays, so the dependencies and
+ * dependents of a node are a slice of an int array and the transitive closures are computed without any allocation
+ * per edge.
+ *
+ * <p>
+ * The graph is built by {@link #read(JsonParser)} in one streaming pass over the lock file. It is a snapshot, it does
+ * not reflect the later changes of the lock file.
+ */
+public class LockFileGraph {
+
+    private static final String NODE_MODULES = "node_modules/";
+
+    private static final String NESTED_NODE_MODULES = "/" + NODE_MODULES;
+
+    private static final String FILE_PROTOCOL = "file:";
+
+    private static final String[] DEPENDENCY_SECTIONS = { "dependencies", "devDependencies", "peerDependencies",
+            "optionalDependencies" };
+
+    private final String[] paths;
+
+    private final String[] versions;
+
+    private final int[] nameIds;
+
+    private final String[] names;
+
+    private final Map<String, Integer> pathIds;
+
+    private final Map<String, Integer> nameIndex;
+
+    /** Start of the slice of each name in {@link #nodesByName}, indexed by name ID. */
+    private final int[] nameOffsets;
+
+    private final int[] nodesByName;
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final int[] reverseOffsets;
+
+    private final int[] reverseTargets;
+
+    private LockFileGraph(Builder builder) {
+        int size = builder.paths.size();
+        paths = builder.paths.toArray(new String[size]);
+        versions = builder.versions.toArray(new String[size]);
+        nameIds = builder.nameIds.toArray();
+        names = builder.names.toArray(new String[0]);
+        pathIds = builder.pathIds;
+        nameIndex = builder.nameIndex;
+
+        IntList sources = new IntList();
+        IntList resolved = new IntList();
+        for (int i = 0; i < builder.edgeSources.size(); i++) {
+            int source = builder.edgeSources.get(i);
+            int target = resolve(paths[source], names[builder.edgeNames.get(i)], builder.linkTargets);
+            // the dependencies of a linked workspace package in a version 1 lock file belong to the package
+            source = follow(source, builder.linkTargets);
+            if (target >= 0 && target != source) {
+                sources.add(source);
+                resolved.add(target);
+            }
+        }
+        offsets = new int[size + 1];
+        targets = new int[sources.size()];
+        fill(sources, resolved, offsets, targets);
+        reverseOffsets = new int[size + 1];
+        reverseTargets = new int[sources.size()];
+        fill(resolved, sources, reverseOffsets, reverseTargets);
+
+        IntList nodes = new IntList();
+        for (int i = 0; i < size; i++) {
+            nodes.add(i);
+        }
+        nameOffsets = new int[names.length + 1];
+        nodesByName = new int[size];
+        fill(builder.nameIds, nodes, nameOffsets, nodesByName);
+    }
+
+    /**
+     * Builds the graph from a lock file. The {@code packages} section is used when present, otherwise the
+     * {@code dependencies} section of a lock file version 1.
+     *
+     * @param parser the parser positioned before the start of the lock file
+     * @return the graph
+     * @throws IOException in case of a reading error
+     */
+    public static LockFileGraph read(JsonParser parser) throws IOException {
+        Builder packages = new Builder();
+        Builder dependencies = new Builder();
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("packages".equals(field) && token == JsonToken.START_OBJECT) {
+                    readPackages(parser, packages);
+                } else if ("dependencies".equals(field) && token == JsonToken.START_OBJECT && packages.isEmpty()) {
+                    dependencies.node("", "", null, null);
+                    readDependencies(parser, dependencies, "");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new LockFileGraph(packages.isEmpty() ? dependencies : packages);
+    }
+
+    private static void readPackages(JsonParser parser, Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String path = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String name = null;
+            String version = null;
+            String resolved = null;
+            boolean link = false;
+            List<String> dependencyNames = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT && isDependencySection(field)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        dependencyNames.add(parser.getCurrentName());
+                        parser.nextToken();
+                        parser.skipChildren();
+                    }
+                } else if ("name".equals(field) && token == JsonToken.VALUE_STRING) {
+                    name = parser.getText();
+                } else if ("version".equals(field) && token == JsonToken.VALUE_STRING) {
+                    version = parser.getText();
+                } else if ("resolved".equals(field) && token == JsonToken.VALUE_STRING) {
+                    resolved = parser.getText();
+                } else if ("link".equals(field) && token == JsonToken.VALUE_TRUE) {
+                    link = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            int nameStart = path.lastIndexOf(NODE_MODULES);
+            if (nameStart >= 0 && (nameStart == 0 || path.charAt(nameStart - 1) == '/')) {
+                name = path.substring(nameStart + NODE_MODULES.length());
+            } else if (name == null) {
+                name = path.substring(path.lastIndexOf('/') + 1);
+            }
+            int node = builder.node(path, name, version, link ? resolved : null);
+            for (String dependencyName : dependencyNames) {
+                builder.edge(node, dependencyName);
+            }
+        }
+    }
+
+    private static void readDependencies(JsonParser parser, Builder builder, String parentPath) throws IOException {
+        int parent = builder.pathIds.get(parentPath);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String path = parentPath.isEmpty() ? NODE_MODULES + name : parentPath + NESTED_NODE_MODULES + name;
+            int node = builder.node(path, name, null, null);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("version".equals(field) && token == JsonToken.VALUE_STRING) {
+                    String version = parser.getText();
+                    if (version.startsWith(FILE_PROTOCOL)) {
+                        builder.linkTargets.set(node, version.substring(FILE_PROTOCOL.length()));
+                    } else {
+                        builder.versions.set(node, version);
+                    }
+                } else if ("requires".equals(field) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        builder.edge(node, parser.getCurrentName());
+                        parser.nextToken();
+                        parser.skipChildren();
+                    }
+                } else if ("dependencies".equals(field) && token == JsonToken.START_OBJECT) {
+                    readDependencies(parser, builder, path);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (parent == 0 && builder.linkTargets.get(node) != null) {
+                // a workspace package of a version 1 lock file, its dependencies are resolved from its directory
+                builder.node(builder.linkTargets.get(node), name, null, null);
+            }
+        }
+    }
+
+    private static boolean isDependencySection(String field) {
+        for (String section : DEPENDENCY_SECTIONS) {
+            if (section.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void fill(IntList sources, IntList targets, int[] offsets, int[] sliced) {
+        for (int i = 0; i < sources.size(); i++) {
+            offsets[sources.get(i) + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int i = 0; i < sources.size(); i++) {
+            sliced[next[sources.get(i)]++] = targets.get(i);
+        }
+    }
+
+    /**
+     * Resolves a dependency name the way Node.js does, looking for the nearest {@code node_modules} copy from the
+     * package directory up to the root, and follows a workspace link to the linked package.
+     */
+    private int resolve(String path, String name, List<String> linkTargets) {
+        String base = path;
+        while (true) {
+            Integer id = pathIds.get(base.isEmpty() ? NODE_MODULES + name : base + NESTED_NODE_MODULES + name);
+            if (id != null) {
+                return follow(id, linkTargets);
+            }
+            if (base.isEmpty()) {
+                return -1;
+            }
+            int parentEnd = base.lastIndexOf(NESTED_NODE_MODULES);
+            base = parentEnd < 0 ? "" : base.substring(0, parentEnd);
+        }
+    }
+
+    private int follow(int node, List<String> linkTargets) {
+        String linkTarget = linkTargets.get(node);
+        Integer linked = linkTarget == null ? null : pathIds.get(linkTarget);
+        return linked == null ? node : linked;
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * @param path the path of the entry in the lock file {@code packages} section, e.g. {@code node_modules/express}
+     *        or an empty string for the root package
+     * @return the node ID or -1 if there is no such entry
+     */
+    public int getNode(String path) {
+        Integer id = pathIds.get(path);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param node the node ID
+     * @return the path of the node entry
+     */
+    public String getPath(int node) {
+        return paths[node];
+    }
+
+    /**
+     * @param node the node ID
+     * @return the package name of the node
+     */
+    public String getName(int node) {
+        return names[nameIds[node]];
+    }
+
+    /**
+     * @param node the node ID
+     * @return the locked version of the node or null if the entry has no version
+     */
+    public String getVersion(int node) {
+        return versions[node];
+    }
+
+    /**
+     * @param name the package name
+     * @return the IDs of all the installed copies of the package
+     */
+    public int[] getNodes(String name) {
+        Integer nameId = nameIndex.get(name);
+        if (nameId == null) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(nodesByName, nameOffsets[nameId], nameOffsets[nameId + 1]);
+    }
+
+    /**
+     * @param node the node ID
+     * @param name the dependency name
+     * @return the ID of the installed package the dependency of the node resolves to or -1 if it is not installed
+     */
+    public int resolve(int node, String name) {
+        int resolved = -1;
+        for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+            if (getName(targets[i]).equals(name)) {
+                resolved = targets[i];
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * @param node the node ID
+     * @return the IDs of the installed packages the node depends on
+     */
+    public int[] getDependencies(int node) {
+        return Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]);
+    }
+
+    /**
+     * @param node the node ID
+     * @return the IDs of the installed packages depending on the node
+     */
+    public int[] getDependents(int node) {
+        return Arrays.copyOfRange(reverseTargets, reverseOffsets[node], reverseOffsets[node + 1]);
+    }
+
+    /**
+     * @param node the node ID
+     * @return the IDs of all the nodes the node depends on directly or transitively
+     */
+    public BitSet getTransitiveDependencies(int node) {
+        return closure(node, offsets, targets);
+    }
+
+    /**
+     * @param node the node ID
+     * @return the IDs of all the nodes depending on the node directly or transitively
+     */
+    public BitSet getTransitiveDependents(int node) {
+        return closure(node, reverseOffsets, reverseTargets);
+    }
+
+    private BitSet closure(int node, int[] edgeOffsets, int[] edgeTargets) {
+        BitSet visited = new BitSet(paths.length);
+        int[] queue = new int[paths.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = node;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = edgeOffsets[current]; i < edgeOffsets[current + 1]; i++) {
+                int target = edgeTargets[i];
+                if (target != node && !visited.get(target)) {
+                    visited.set(target);
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /** Collects the nodes and the unresolved edges while the lock file is read. */
+    private static final class Builder {
+
+        private final Map<String, Integer> pathIds = new HashMap<>();
+
+        private final List<String> paths = new ArrayList<>();
+
+        private final List<String> versions = new ArrayList<>();
+
+        private final List<String> linkTargets = new ArrayList<>();
+
+        private final IntList nameIds = new IntList();
+
+        private final Map<String, Integer> nameIndex = new HashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        private final IntList edgeSources = new IntList();
+
+        private final IntList edgeNames = new IntList();
+
+        boolean isEmpty() {
+            return paths.isEmpty();
+        }
+
+        int node(String path, String name, String version, String linkTarget) {
+            Integer existing = pathIds.get(path);
+            if (existing != null) {
+                return existing;
+            }
+            int id = paths.size();
+            pathIds.put(path, id);
+            paths.add(path);
+            versions.add(version);
+            linkTargets.add(linkTarget);
+            nameIds.add(nameId(name));
+            return id;
+        }
+
+        void edge(int source, String name) {
+            edgeSources.add(source);
+            edgeNames.add(nameId(name));
+        }
+
+        private int nameId(String name) {
+            Integer id = nameIndex.get(name);
+            if (id == null) {
+                id = names.size();
+                nameIndex.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+    }
+
+    /** Growable array of primitive ints. */
+    private static final class IntList {
+
+        private int[] values = new int[16];
+
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.jboss.pnc.npmmanipulator.impl.lock.LockFileEdits.PathNode;
+import org.jboss.pnc.npmmanipulator.impl.patch.JsonPatch;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+/**
+ * Copies a JSON document token by token from a parser to a generator while applying {@link LockFileEdits}. Only the
+ * fields addressed by the edits are touched, everything else is copied as is, so the run time is linear in the size of
+ * the document and the memory use is bounded by the nesting depth. Subtrees without any path-addressed edits are
+ * copied in bulk unless there are field rewrites that need to look at every field.
+ *
+ * <p>
+ * Optionally, every applied edit is also recorded as a {@link JsonPatch} operation addressing the output document.
+ */
+public class LockFileRewriter {
+
+    private final LockFileEdits edits;
+
+    private final Map<String, UnaryOperator<String>> fieldRewriters;
+
+    private final JsonPatch patch;
+
+    /** Escaped output field names and array indexes from the root to the current value, tracked only for the patch. */
+    private final List<String> path = new ArrayList<>();
+
+    private int applied;
+
+    public LockFileRewriter(LockFileEdits edits) {
+        this(edits, null);
+    }
+
+    /**
+     * @param edits the edits to be applied
+     * @param patch the patch recording the applied edits, may be null
+     */
+    public LockFileRewriter(LockFileEdits edits, JsonPatch patch) {
+        this.edits = edits;
+        this.fieldRewriters = edits.getFieldRewriters();
+        this.patch = patch;
+    }
+
+    /**
+     * Copies the whole document.
+     *
+     * @param parser the source parser, positioned before the first token
+     * @param generator the target generator
+     * @return the number of edits actually applied, i.e. the ones that changed the document
+     * @throws IOException in case of a reading or writing error
+     */
+    public int rewrite(JsonParser parser, JsonGenerator generator) throws IOException {
+        applied = 0;
+        path.clear();
+        if (parser.nextToken() != null) {
+            copyValue(parser, generator, edits.getRoot());
+        }
+        generator.flush();
+        return applied;
+    }
+
+    private void copyValue(JsonParser parser, JsonGenerator generator, PathNode node) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (node == null && (fieldRewriters.isEmpty() || token.isScalarValue())) {
+            // nothing to edit in this subtree
+            generator.copyCurrentStructure(parser);
+            return;
+        }
+
+        if (token == JsonToken.START_OBJECT) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                PathNode child = node == null ? null : node.child(name);
+                JsonToken valueToken = parser.nextToken();
+                String outputName = name;
+                if (child != null && child.getRename() != null) {
+                    outputName = child.getRename();
+                    applied++;
+                    if (patch != null) {
+                        patch.move(pointer(name), pointer(outputName));
+                    }
+                }
+                push(outputName);
+                if (child != null && child.isRemove()) {
+                    parser.skipChildren();
+                    applied++;
+                    if (patch != null) {
+                        patch.remove(pointer(null));
+                    }
+                } else if (valueToken.isScalarValue()
+                        && ((child != null && child.getReplacement() != null) || fieldRewriters.containsKey(name))) {
+                    replaceField(parser, generator, name, outputName, child == null ? null : child.getReplacement());
+                } else {
+                    generator.writeFieldName(outputName);
+                    copyValue(parser, generator, child);
+                }
+                pop();
+            }
+            generator.writeEndObject();
+        } else if (token == JsonToken.START_ARRAY) {
+            // array items are not addressable by path, but may contain fields to be rewritten
+            generator.writeStartArray();
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                push(String.valueOf(index++));
+                copyValue(parser, generator, null);
+                pop();
+            }
+            generator.writeEndArray();
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private void replaceField(
+            JsonParser parser,
+            JsonGenerator generator,
+            String name,
+            String outputName,
+            UnaryOperator<String> replacement) throws IOException {
+        String current = parser.getValueAsString();
+        String value = replacement == null ? current : replacement.apply(current);
+        UnaryOperator<String> rewriter = fieldRewriters.get(name);
+        if (value != null && rewriter != null) {
+            value = rewriter.apply(value);
+        }
+        if (value == null) {
+            applied++;
+            if (patch != null) {
+                patch.remove(pointer(null));
+            }
+        } else if (value.equals(current)) {
+            generator.writeFieldName(outputName);
+            generator.copyCurrentEvent(parser);
+        } else {
+            generator.writeFieldName(outputName);
+            generator.writeString(value);
+            applied++;
+            if (patch != null) {
+                patch.replace(pointer(null), JsonNodeFactory.instance.textNode(value));
+            }
+        }
+    }
+
+    private void push(String name) {
+        if (patch != null) {
+            path.add(JsonPatch.escape(name));
+        }
+    }
+
+    private void pop() {
+        if (patch != null) {
+            path.remove(path.size() - 1);
+        }
+    }
+
+    /**
+     * @param name the field name in the current object or null for the current value
+     * @return the JSON Pointer of the field or value
+     */
+    private String pointer(String name) {
+        StringBuilder pointer = new StringBuilder();
+        for (String token : path) {
+            pointer.append('/').append(token);
+        }
+        if (name != null) {
+            pointer.append('/').append(JsonPatch.escape(name));
+        }
+        return pointer.toString();
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics.Timer;
+import org.jboss.pnc.npmmanipulator.impl.patch.JsonPatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * A package-lock.json or npm-shrinkwrap.json file. The file is either loaded as a whole tree on demand, or it is
+ * modified by path-addressed {@link LockFileEdits} that are applied by streaming the file when it is written, without
+ * ever holding the whole document in memory. If both are used, the edits are applied on top of the tree.
+ *
+ * <p>
+ * A file larger than the {@link #setBoundedMemoryThreshold(long) bounded memory threshold} is processed only by
+ * streaming, so the memory use does not depend on its size. Neither its tree nor its graph can be loaded then.
+ */
+public class PackageLock {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackageLock.class);
+
+    private static final JsonFactory BOUNDED_MEMORY_FACTORY = JsonFactory.builder()
+            .disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES)
+            .build();
+
+    private final File file;
+
+    private final ObjectMapper mapper;
+
+    private final LockFileEdits edits = new LockFileEdits();
+
+    private JsonNode tree;
+
+    private LockFileGraph graph;
+
+    private ManipulationMetrics metrics = ManipulationMetrics.disabled();
+
+    private long boundedMemoryThreshold = Long.MAX_VALUE;
+
+    public PackageLock(File file, ObjectMapper mapper) {
+        this.file = file;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Sets the metrics to record the file parsing and the bytes read and written to.
+     *
+     * @param metrics the metrics of the session
+     */
+    public void setMetrics(ManipulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the file size above which the file is processed in bounded memory mode.
+     *
+     * @param boundedMemoryThreshold the size in bytes, 0 to process any file in bounded memory mode
+     */
+    public void setBoundedMemoryThreshold(long boundedMemoryThreshold) {
+        this.boundedMemoryThreshold = boundedMemoryThreshold;
+    }
+
+    /**
+     * @return true if the file is processed only by streaming, i.e. it is larger than the bounded memory threshold
+     */
+    public boolean isBoundedMemory() {
+        return file.exists() && file.length() > boundedMemoryThreshold;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Provides the JsonNode tree parsed from the lock file. Changes done to the tree are written by {@link #write()}.
+     *
+     * @return read JsonNode or null in case of file does not exist
+     * @throws ManipulationException in case of an error when reading the file or if the file is processed in bounded
+     *         memory mode
+     */
+    public JsonNode getTree() throws ManipulationException {
+        if (tree == null && isBoundedMemory()) {
+            throw new ManipulationException(
+                    "Lock file {} of {} bytes is processed in bounded memory mode, so its tree cannot be loaded.",
+                    file,
+                    file.length());
+        }
+        if (tree == null && file.exists()) {
+            try (Timer timer = metrics.start(ManipulationMetrics.PARSE)) {
+                tree = mapper.readTree(file);
+                metrics.increment(ManipulationMetrics.BYTES_READ, file.length());
+                timer.attribute(ManipulationMetrics.FILE_PATH_ATTRIBUTE, file.getPath())
+                        .attribute(ManipulationMetrics.FILE_SIZE_ATTRIBUTE, file.length());
+            } catch (IOException ex) {
+                throw new ManipulationException("Error reading file {}", file, ex);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Provides the dependency graph of the packages installed according to the lock file, read in one streaming pass
+     * on the first call. The graph reflects the file, not the changes that were not written yet.
+     *
+     * @return the graph or null in case the file does not exist or is processed in bounded memory mode
+     * @throws ManipulationException in case of an error when reading the file
+     */
+    public LockFileGraph getGraph() throws ManipulationException {
+        if (graph == null && file.exists() && !isBoundedMemory()) {
+            try (Timer timer = metrics.start(ManipulationMetrics.PARSE);
+                    JsonParser parser = mapper.getFactory().createParser(file)) {
+                graph = LockFileGraph.read(parser);
+                metrics.increment(ManipulationMetrics.BYTES_READ, file.length());
+                timer.attribute(ManipulationMetrics.FILE_PATH_ATTRIBUTE, file.getPath())
+                        .attribute(ManipulationMetrics.FILE_SIZE_ATTRIBUTE, file.length());
+                LOGGER.debug("Read dependency graph of {} packages from lock file {}", graph.size(), file);
+            } catch (IOException ex) {
+                throw new ManipulationException("Error reading file {}", file, ex);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return the edits to be applied when the file is written
+     */
+    public LockFileEdits getEdits() {
+        return edits;
+    }
+
+    /**
+     * Writes the loaded tree and/or the registered edits to the file. The output is written to a temporary file first
+     * that replaces the lock file only when complete, so a failure never leaves a truncated lock file behind. When the
+     * tree was not loaded and none of the edits changed anything, the file is left untouched.
+     *
+     * @return true if the file was replaced
+     * @throws ManipulationException in case of a reading or writing error
+     */
+    public boolean write() throws ManipulationException {
+        if ((tree == null && edits.isEmpty()) || !file.exists()) {
+            return false;
+        }
+
+        Path target = file.toPath();
+        Path temp = null;
+        boolean replaced;
+        try {
+            temp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
+            int applied;
+            try (JsonParser parser = tree == null ? createStreamingParser() : mapper.treeAsTokens(tree);
+                    JsonGenerator generator = mapper.getFactory()
+                            .createGenerator(temp.toFile(), JsonEncoding.UTF8)) {
+                generator.setPrettyPrinter(new DefaultPrettyPrinter());
+                applied = new LockFileRewriter(edits).rewrite(parser, generator);
+            }
+            if (applied > 0) {
+                LOGGER.info("Updated {} entries in lock file {}", applied, file);
+            }
+            if (tree == null) {
+                metrics.increment(ManipulationMetrics.BYTES_READ, file.length());
+            }
+
+            replaced = tree != null || applied > 0;
+            if (replaced) {
+                metrics.increment(ManipulationMetrics.BYTES_WRITTEN, Files.size(temp));
+                move(temp, target);
+            } else {
+                Files.delete(temp);
+            }
+            temp = null;
+        } catch (IOException ex) {
+            throw new ManipulationException("Error writing the package lock file {}.", file, ex);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    LOGGER.warn("Was not able to delete temporary file {}.", temp, e);
+                }
+            }
+        }
+
+        // the file now reflects all the changes, so start over from it
+        tree = null;
+        graph = null;
+        edits.clear();
+        return replaced;
+    }
+
+    /**
+     * Records the changes {@link #write()} would do as JSON Patch operations without touching the file. Edits of a
+     * file whose tree was not loaded are recorded while streaming the file, otherwise the patched tree is compared to
+     * the file contents. The loaded tree and the edits are kept.
+     *
+     * @param patch the patch to record the changes to
+     * @throws ManipulationException in case of a reading error
+     */
+    public void diff(JsonPatch patch) throws ManipulationException {
+        if ((tree == null && edits.isEmpty()) || !file.exists()) {
+            return;
+        }
+
+        try {
+            if (tree == null) {
+                try (JsonParser parser = createStreamingParser();
+                        JsonGenerator generator = mapper.getFactory()
+                                .createGenerator(OutputStream.nullOutputStream())) {
+                    new LockFileRewriter(edits, patch).rewrite(parser, generator);
+                }
+            } else {
+                TokenBuffer buffer = new TokenBuffer(mapper, false);
+                try (JsonParser parser = mapper.treeAsTokens(tree)) {
+                    new LockFileRewriter(edits).rewrite(parser, buffer);
+                }
+                try (JsonParser parser = buffer.asParser()) {
+                    patch.diff(mapper.readTree(file), mapper.readTree(parser));
+                }
+            }
+        } catch (IOException ex) {
+            throw new ManipulationException("Error reading the package lock file {}.", file, ex);
+        }
+    }
+
+    /**
+     * In bounded memory mode, the field names are not canonicalized, because the symbol table would grow with the
+     * number of distinct package paths in the file.
+     */
+    private JsonParser createStreamingParser() throws IOException {
+        if (isBoundedMemory()) {
+            return BOUNDED_MEMORY_FACTORY.createParser(file);
+        }
+        return mapper.getFactory().createParser(file);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Bounded pool of canonical strings shared by the JSON trees parsed in one session. Lock files repeat the same package
+ * names, versions and version ranges many times, so keeping a single copy of each of them reduces the heap taken by a
+ * parsed tree considerably. Field names are already canonicalized by the Jackson parser, so only the string values are
+ * pooled, through the {@link #nodeFactory() node factory} of the mappers parsing the files. As text nodes are
+ * immutable, the pool keeps whole nodes and the trees share them too.
+ *
+ * <p>
+ * Only values up to {@link #MAX_LENGTH} characters are pooled, because the long values like the resolved URLs and the
+ * integrity hashes are unique. Once the pool holds the maximum number of strings, new strings are no longer added, but
+ * the already pooled ones are still shared.
+ */
+public class StringPool {
+
+    /** The default maximum number of pooled strings. */
+    public static final int DEFAULT_MAX_SIZE = 65536;
+
+    /** The maximum length of the pooled strings. */
+    public static final int MAX_LENGTH = 48;
+
+    private final Map<String, TextNode> nodes = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final JsonNodeFactory nodeFactory = new PooledNodeFactory();
+
+    /**
+     * @param maxSize the maximum number of pooled strings
+     */
+    public StringPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Provides the canonical copy of a string.
+     *
+     * @param value the string, may be null
+     * @return the pooled string equal to the value, or the value itself if it is not pooled
+     */
+    public String canonicalize(String value) {
+        TextNode node = textNode(value);
+        return node == null ? value : node.textValue();
+    }
+
+    /**
+     * @param value the string
+     * @return the pooled text node with the string or null if the string is not pooled
+     */
+    private TextNode textNode(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return null;
+        }
+        TextNode node = nodes.get(value);
+        if (node == null && nodes.size() < maxSize) {
+            TextNode created = new TextNode(value);
+            node = nodes.putIfAbsent(value, created);
+            if (node == null) {
+                node = created;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return the number of pooled strings
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the node factory creating text nodes with the canonical strings, to be set to the parsing mappers
+     */
+    public JsonNodeFactory nodeFactory() {
+        return nodeFactory;
+    }
+
+    /** Node factory providing the pooled text nodes. */
+    private final class PooledNodeFactory extends JsonNodeFactory {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public TextNode textNode(String text) {
+            TextNode node = StringPool.this.textNode(text);
+            return node == null ? super.textNode(text) : node;
+        }
+    }
+
+}
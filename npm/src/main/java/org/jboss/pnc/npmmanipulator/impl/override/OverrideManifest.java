@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.override;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Read-only set of override rules loaded from a file, grouped by the override type (i.e. the property prefix such as
+ * {@code dependencyOverride}). Two formats are supported:
+ * <ul>
+ * <li>JSON files (with {@code .json} extension) containing either an object per override type, e.g.
+ * <code>{"dependencyOverride": {"@ourscope/*": "^2.0.0"}}</code>, or the flat property keys, e.g.
+ * <code>{"dependencyOverride.@ourscope/*": "^2.0.0"}</code>; they are read token by token without building a tree</li>
+ * <li>any other file is read as a java properties file with the same keys as the -D options</li>
+ * </ul>
+ *
+ * Loaded manifests are cached per JVM by their path, size and modification time, so a file shared by several
+ * manipulation sessions is parsed only once. Only the {@value #CACHE_SIZE} most recently used files are kept, so the
+ * cache does not grow in a long-running JVM serving many projects.
+ */
+public final class OverrideManifest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OverrideManifest.class);
+
+    private static final String TYPE_SEPARATOR = ".";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** The maximum number of cached manifest files. */
+    static final int CACHE_SIZE = 16;
+
+    /** Least recently used cache of the manifests by their canonical path, guarded by itself. */
+    private static final Map<String, OverrideManifest> CACHE = new LinkedHashMap<String, OverrideManifest>(
+            CACHE_SIZE,
+            0.75f,
+            true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OverrideManifest> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final File file;
+
+    /** The revision of the file the manifest was loaded from. */
+    private final CacheKey revision;
+
+    private final Map<String, Map<String, String>> rules;
+
+    private OverrideManifest(File file, CacheKey revision, Map<String, Map<String, String>> rules) {
+        this.file = file;
+        this.revision = revision;
+        this.rules = rules;
+    }
+
+    /**
+     * Loads the manifest from given file or returns the cached instance if the file was already loaded and did not
+     * change since then.
+     *
+     * @param file the manifest file
+     * @return the loaded manifest
+     * @throws ManipulationException in case the file does not exist or cannot be parsed
+     */
+    public static OverrideManifest load(File file) throws ManipulationException {
+        if (!file.isFile()) {
+            throw new ManipulationException("Override file {} does not exist.", file);
+        }
+        File canonical;
+        try {
+            canonical = file.getCanonicalFile();
+        } catch (IOException ex) {
+            throw new ManipulationException("Error resolving override file {}", file, ex);
+        }
+
+        CacheKey key = new CacheKey(canonical);
+        OverrideManifest manifest;
+        synchronized (CACHE) {
+            manifest = CACHE.get(key.path);
+        }
+        if (manifest != null && manifest.revision.equals(key)) {
+            LOGGER.debug("Using cached override file {}", canonical);
+            return manifest;
+        }
+
+        // an older version of the same file is replaced
+        manifest = parse(canonical, key);
+        synchronized (CACHE) {
+            CACHE.put(key.path, manifest);
+        }
+        return manifest;
+    }
+
+    /**
+     * Provides the rules of given override type.
+     *
+     * @param type the override type, e.g. {@code dependencyOverride}
+     * @return unmodifiable map of package names or patterns to versions, never {@code null}
+     */
+    public Map<String, String> getRules(String type) {
+        Map<String, String> typeRules = rules.get(type);
+        return typeRules == null ? Collections.emptyMap() : typeRules;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private static OverrideManifest parse(File file, CacheKey revision) throws ManipulationException {
+        Map<String, Map<String, String>> rules = new LinkedHashMap<>();
+        try {
+            if (file.getName().endsWith(".json")) {
+                parseJson(file, rules);
+            } else {
+                parseProperties(file, rules);
+            }
+        } catch (IOException ex) {
+            throw new ManipulationException("Error reading override file {}", file, ex);
+        }
+
+        int count = 0;
+        for (Map.Entry<String, Map<String, String>> entry : rules.entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+            count += entry.getValue().size();
+        }
+        LOGGER.info("Loaded {} override rules from {}", count, file);
+        return new OverrideManifest(file, revision, Collections.unmodifiableMap(rules));
+    }
+
+    private static void parseJson(File file, Map<String, Map<String, String>> rules)
+            throws IOException, ManipulationException {
+        try (JsonParser parser = JSON_FACTORY.createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ManipulationException("Override file {} does not contain a JSON object.", file);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String pkg = parser.getCurrentName();
+                        parser.nextToken();
+                        addRule(rules, name, pkg, readVersion(parser, file));
+                    }
+                } else {
+                    addFlatRule(rules, name, readVersion(parser, file), file);
+                }
+            }
+        }
+    }
+
+    private static String readVersion(JsonParser parser, File file) throws IOException, ManipulationException {
+        if (!parser.currentToken().isScalarValue()) {
+            throw new ManipulationException(
+                    "Unexpected {} in override file {} at {}.",
+                    parser.currentToken(),
+                    file,
+                    parser.getCurrentLocation());
+        }
+        return parser.getValueAsString();
+    }
+
+    private static void parseProperties(File file, Map<String, Map<String, String>> rules)
+            throws IOException, ManipulationException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath());
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            addFlatRule(rules, key, properties.getProperty(key), file);
+        }
+    }
+
+    private static void addFlatRule(Map<String, Map<String, String>> rules, String key, String version, File file)
+            throws ManipulationException {
+        int separator = key.indexOf(TYPE_SEPARATOR);
+        if (separator <= 0) {
+            throw new ManipulationException(
+                    "Invalid key '{}' in override file {}. Expected format is [overrideType].[package_name].",
+                    key,
+                    file);
+        }
+        addRule(rules, key.substring(0, separator), key.substring(separator + 1), version);
+    }
+
+    private static void addRule(Map<String, Map<String, String>> rules, String type, String pkg, String version) {
+        rules.computeIfAbsent(type, k -> new LinkedHashMap<>()).put(pkg, version);
+    }
+
+    /** Identifies a specific revision of a manifest file. */
+    private static final class CacheKey {
+
+        private final String path;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private CacheKey(File file) {
+            this.path = file.getPath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return path.equals(other.path) && lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, length);
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.override;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable matcher of package names against a set of override rules. A rule key is either an exact package name, a
+ * glob pattern where {@code *} matches any sequence of characters (e.g. {@code @ourscope/*} or {@code grunt-*}), or a
+ * bare scope (e.g. {@code @ourscope}) which is a shorthand for {@code @ourscope/*}.
+ *
+ * <p>
+ * Exact names are kept in a hash map and the patterns are compiled into a trie that is walked as a non-deterministic
+ * automaton, so the cost of a lookup depends on the length of the matched name rather than on the number of rules.
+ * When several rules match, an exact name wins over any pattern, then the pattern with the most literal characters
+ * wins and the lexicographically smaller pattern breaks any remaining tie.
+ */
+public final class OverrideMatcher {
+
+    /** The wildcard character matching any sequence of characters. */
+    public static final char WILDCARD = '*';
+
+    private static final String SCOPE_PREFIX = "@";
+
+    private static final String SCOPE_NAME_SEPARATOR = "/";
+
+    private static final OverrideMatcher EMPTY = new OverrideMatcher(Collections.emptyMap(), new Node(false), 0);
+
+    private final Map<String, String> exactRules;
+
+    private final Node root;
+
+    private final int size;
+
+    private OverrideMatcher(Map<String, String> exactRules, Node root, int size) {
+        this.exactRules = exactRules;
+        this.root = root;
+        this.size = size;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static OverrideMatcher empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Finds the override value for given package name.
+     *
+     * @param name the package name
+     * @return the value of the best matching rule or {@code null} if there is no matching rule
+     */
+    public String match(String name) {
+        String exact = exactRules.get(name);
+        if (exact != null || root.isLeaf()) {
+            return exact;
+        }
+
+        List<Node> current = new ArrayList<>();
+        List<Node> next = new ArrayList<>();
+        addWithClosure(current, root);
+        for (int i = 0; i < name.length() && !current.isEmpty(); i++) {
+            char c = name.charAt(i);
+            for (Node state : current) {
+                if (state.loop) {
+                    addWithClosure(next, state);
+                }
+                Node child = state.children == null ? null : state.children.get(c);
+                if (child != null) {
+                    addWithClosure(next, child);
+                }
+            }
+            List<Node> swap = current;
+            current = next;
+            next = swap;
+            next.clear();
+        }
+
+        Node best = null;
+        for (Node state : current) {
+            if (state.value != null && (best == null || state.isPreferredOver(best))) {
+                best = state;
+            }
+        }
+        return best == null ? null : best.value;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of compiled rules
+     */
+    public int size() {
+        return size;
+    }
+
+    private static void addWithClosure(List<Node> states, Node node) {
+        // the state lists stay tiny, so a linear identity check is cheaper than hashing
+        for (Node state : states) {
+            if (state == node) {
+                return;
+            }
+        }
+        states.add(node);
+        if (node.star != null) {
+            addWithClosure(states, node.star);
+        }
+    }
+
+    /**
+     * Converts the rule key to the pattern it represents, i.e. expands a bare scope to a scope-wide pattern.
+     */
+    static String normalize(String key) {
+        if (key.startsWith(SCOPE_PREFIX) && !key.contains(SCOPE_NAME_SEPARATOR) && key.indexOf(WILDCARD) < 0) {
+            return key + SCOPE_NAME_SEPARATOR + WILDCARD;
+        }
+        return key;
+    }
+
+    /** Builder collecting the rules before they are compiled. */
+    public static final class Builder {
+
+        private final Map<String, String> rules = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a rule. A later rule with the same key replaces the earlier one.
+         *
+         * @param key the package name, pattern or scope
+         * @param value the override value
+         * @return this builder
+         */
+        public Builder add(String key, String value) {
+            rules.put(normalize(key), value);
+            return this;
+        }
+
+        public Builder addAll(Map<String, String> overrides) {
+            overrides.forEach(this::add);
+            return this;
+        }
+
+        public OverrideMatcher build() {
+            if (rules.isEmpty()) {
+                return EMPTY;
+            }
+            Map<String, String> exactRules = new HashMap<>();
+            Node root = new Node(false);
+            for (Map.Entry<String, String> rule : rules.entrySet()) {
+                String pattern = rule.getKey();
+                if (pattern.indexOf(WILDCARD) < 0) {
+                    exactRules.put(pattern, rule.getValue());
+                } else {
+                    compile(root, pattern, rule.getValue());
+                }
+            }
+            return new OverrideMatcher(exactRules, root, rules.size());
+        }
+
+        private static void compile(Node root, String pattern, String value) {
+            Node node = root;
+            int literals = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == WILDCARD) {
+                    // consecutive wildcards are equivalent to a single one
+                    if (!node.loop) {
+                        if (node.star == null) {
+                            node.star = new Node(true);
+                        }
+                        node = node.star;
+                    }
+                } else {
+                    if (node.children == null) {
+                        node.children = new HashMap<>();
+                    }
+                    node = node.children.computeIfAbsent(c, k -> new Node(false));
+                    literals++;
+                }
+            }
+            if (node.value == null || pattern.compareTo(node.pattern) < 0) {
+                node.value = value;
+                node.pattern = pattern;
+                node.literals = literals;
+            }
+        }
+    }
+
+    /** State of the pattern automaton. */
+    private static final class Node {
+
+        /** Whether this state was entered by a wildcard and so can consume any character. */
+        private final boolean loop;
+
+        private Map<Character, Node> children;
+
+        private Node star;
+
+        private String value;
+
+        private String pattern;
+
+        private int literals;
+
+        private Node(boolean loop) {
+            this.loop = loop;
+        }
+
+        private boolean isLeaf() {
+            return children == null && star == null;
+        }
+
+        private boolean isPreferredOver(Node other) {
+            if (literals != other.literals) {
+                return literals > other.literals;
+            }
+            return pattern.compareTo(other.pattern) < 0;
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.patch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Sequence of RFC 6902 JSON Patch operations describing the changes of one JSON document. The operations are either
+ * recorded one by one while the document is edited, or computed as the difference of two trees. Only the {@code add},
+ * {@code remove}, {@code replace} and {@code move} operations are produced and supported by {@link #apply(JsonNode)}.
+ */
+public class JsonPatch {
+
+    private final ArrayNode operations = JsonNodeFactory.instance.arrayNode();
+
+    /**
+     * @return the operations as a JSON array in the RFC 6902 format
+     */
+    public ArrayNode getOperations() {
+        return operations;
+    }
+
+    public boolean isEmpty() {
+        return operations.size() == 0;
+    }
+
+    /**
+     * @return the number of operations
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    public void add(String path, JsonNode value) {
+        operation("add", path).set("value", value);
+    }
+
+    public void remove(String path) {
+        operation("remove", path);
+    }
+
+    public void replace(String path, JsonNode value) {
+        operation("replace", path).set("value", value);
+    }
+
+    public void move(String from, String path) {
+        operation("move", path).put("from", from);
+    }
+
+    private ObjectNode operation(String op, String path) {
+        ObjectNode operation = operations.addObject();
+        operation.put("op", op);
+        operation.put("path", path);
+        return operation;
+    }
+
+    /**
+     * Records the operations transforming the source tree to the target tree. Changed values in objects and in arrays
+     * of the same size are compared recursively, arrays of different sizes are replaced as a whole.
+     *
+     * @param source the original tree
+     * @param target the changed tree
+     */
+    public void diff(JsonNode source, JsonNode target) {
+        diff("", source, target);
+    }
+
+    private void diff(String path, JsonNode source, JsonNode target) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isObject() && target.isObject()) {
+            Iterator<String> sourceNames = source.fieldNames();
+            while (sourceNames.hasNext()) {
+                String name = sourceNames.next();
+                if (!target.has(name)) {
+                    remove(path + '/' + escape(name));
+                }
+            }
+            Iterator<Entry<String, JsonNode>> targetFields = target.fields();
+            while (targetFields.hasNext()) {
+                Entry<String, JsonNode> field = targetFields.next();
+                JsonNode sourceValue = source.get(field.getKey());
+                String fieldPath = path + '/' + escape(field.getKey());
+                if (sourceValue == null) {
+                    add(fieldPath, field.getValue());
+                } else {
+                    diff(fieldPath, sourceValue, field.getValue());
+                }
+            }
+        } else if (source.isArray() && target.isArray() && source.size() == target.size()) {
+            for (int i = 0; i < source.size(); i++) {
+                diff(path + '/' + i, source.get(i), target.get(i));
+            }
+        } else {
+            replace(path, target);
+        }
+    }
+
+    /**
+     * Applies the operations to a copy of the document.
+     *
+     * @param document the original document
+     * @return the patched document
+     * @throws ManipulationException in case an operation is not supported or its path does not exist
+     */
+    public JsonNode apply(JsonNode document) throws ManipulationException {
+        JsonNode root = document.deepCopy();
+        for (JsonNode operation : operations) {
+            String op = operation.path("op").asText();
+            String path = operation.path("path").asText();
+            switch (op) {
+                case "add":
+                case "replace":
+                    root = set(root, path, operation.get("value"), op);
+                    break;
+                case "remove":
+                    take(root, path);
+                    break;
+                case "move":
+                    root = set(root, path, take(root, operation.path("from").asText()), "add");
+                    break;
+                default:
+                    throw new ManipulationException("Unsupported JSON Patch operation {}.", op);
+            }
+        }
+        return root;
+    }
+
+    private static JsonNode set(JsonNode root, String path, JsonNode value, String op) throws ManipulationException {
+        if (path.isEmpty()) {
+            return value;
+        }
+        List<String> tokens = tokens(path);
+        JsonNode parent = parent(root, tokens, path);
+        String last = tokens.get(tokens.size() - 1);
+        if (parent.isObject()) {
+            if ("replace".equals(op) && !parent.has(last)) {
+                throw new ManipulationException("JSON Patch path {} does not exist.", path);
+            }
+            ((ObjectNode) parent).set(last, value);
+        } else {
+            ArrayNode array = (ArrayNode) parent;
+            int index = "-".equals(last) ? array.size() : index(last, path);
+            if ("replace".equals(op)) {
+                array.set(index, value);
+            } else {
+                array.insert(index, value);
+            }
+        }
+        return root;
+    }
+
+    private static JsonNode take(JsonNode root, String path) throws ManipulationException {
+        List<String> tokens = tokens(path);
+        if (tokens.isEmpty()) {
+            throw new ManipulationException("The JSON Patch cannot remove the whole document.");
+        }
+        JsonNode parent = parent(root, tokens, path);
+        String last = tokens.get(tokens.size() - 1);
+        JsonNode removed = parent.isObject() ? ((ObjectNode) parent).remove(last)
+                : ((ArrayNode) parent).remove(index(last, path));
+        if (removed == null) {
+            throw new ManipulationException("JSON Patch path {} does not exist.", path);
+        }
+        return removed;
+    }
+
+    private static JsonNode parent(JsonNode root, List<String> tokens, String path) throws ManipulationException {
+        JsonNode node = root;
+        for (String token : tokens.subList(0, tokens.size() - 1)) {
+            node = node.isArray() ? node.get(index(token, path)) : node.get(token);
+            if (node == null) {
+                throw new ManipulationException("JSON Patch path {} does not exist.", path);
+            }
+        }
+        if (!node.isContainerNode()) {
+            throw new ManipulationException("JSON Patch path {} does not exist.", path);
+        }
+        return node;
+    }
+
+    private static int index(String token, String path) throws ManipulationException {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException ex) {
+            throw new ManipulationException("Invalid array index in JSON Patch path {}.", path);
+        }
+    }
+
+    private static List<String> tokens(String path) {
+        List<String> tokens = new ArrayList<>();
+        if (!path.isEmpty()) {
+            for (String token : path.substring(1).split("/", -1)) {
+                tokens.add(token.replace("~1", "/").replace("~0", "~"));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Escapes a field name to be used as a JSON Pointer reference token.
+     *
+     * @param name the field name
+     * @return the escaped name
+     */
+    public static String escape(String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+
+}
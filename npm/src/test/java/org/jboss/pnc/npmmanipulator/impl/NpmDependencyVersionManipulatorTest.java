@@ -19,21 +19,35 @@ package org.jboss.pnc.npmmanipulator.impl;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
 import org.jboss.pnc.npmmanipulator.api.Project;
+import org.jboss.pnc.npmmanipulator.impl.lock.PackageLock;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
  * Test class for {@link NpmDependencyVersionManipulatorTest}.
@@ -42,6 +56,9 @@ import org.junit.Test;
  */
 public class NpmDependencyVersionManipulatorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Tests applying the dependency version update with an override.
      *
@@ -114,4 +131,155 @@ public class NpmDependencyVersionManipulatorTest {
         // Not overridden
         assertEquals("~1.0.1", changedProject.getDevDependencies().get("deep-equal"));
     }
+
+    /**
+     * Tests that the overrides update the matching lock file entries and leave the other ones untouched.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesUpdatesLockFile() throws Exception {
+        File dir = copyResourceDir("lock");
+        File packageJson = new File(dir, "package.json");
+        File packageLock = new File(dir, "package-lock.json");
+
+        Map<String, String> userDependenciesMap = new LinkedHashMap<>();
+        userDependenciesMap.put("@ourscope/*", "2.0.1");
+        userDependenciesMap.put("express", "^4.17.0");
+        Map<String, String> userDevDependenciesMap = new LinkedHashMap<>();
+        userDevDependenciesMap.put("grunt", "1.0.5");
+
+        NpmDependencyVersionManipulator manipulator = new NpmDependencyVersionManipulator(
+                userDependenciesMap,
+                userDevDependenciesMap);
+        List<Project> projects = new ArrayList<>();
+        projects.add(new NpmPackageImpl(packageJson, packageLock));
+
+        Set<Project> changed = manipulator.applyChanges(projects);
+        assertEquals(1, changed.size());
+        for (Project project : changed) {
+            project.update();
+        }
+
+        JsonNode lock = new ObjectMapper().readTree(packageLock);
+        JsonNode root = lock.get("packages").get("");
+        assertEquals("2.0.1", root.get("dependencies").get("@ourscope/core").asText());
+        assertEquals("^4.17.0", root.get("dependencies").get("express").asText());
+        assertEquals("1.0.5", root.get("devDependencies").get("grunt").asText());
+
+        for (JsonNode core : new JsonNode[] { lock.get("packages").get("node_modules/@ourscope/core"),
+                lock.get("dependencies").get("@ourscope/core") }) {
+            assertEquals("2.0.1", core.get("version").asText());
+            assertEquals("https://registry.npmjs.org/@ourscope/core/-/core-2.0.1.tgz", core.get("resolved").asText());
+            assertFalse(core.has("integrity"));
+        }
+
+        // a range cannot be resolved without a registry, so the installed entries stay
+        JsonNode express = lock.get("packages").get("node_modules/express");
+        assertEquals("4.16.4", express.get("version").asText());
+        assertEquals("sha512-BBBB", express.get("integrity").asText());
+        JsonNode nestedExpress = lock.get("packages").get("node_modules/some-lib/node_modules/express");
+        assertEquals("3.0.0", nestedExpress.get("version").asText());
+
+        JsonNode grunt = lock.get("dependencies").get("grunt");
+        assertEquals("1.0.5", grunt.get("version").asText());
+        assertEquals("https://registry.npmjs.org/grunt/-/grunt-1.0.5.tgz", grunt.get("resolved").asText());
+        assertTrue(grunt.get("dev").asBoolean());
+    }
+
+    /**
+     * Tests that an exact override of a workspace package dependency updates the copy the package resolves to, i.e.
+     * its own nested copy instead of the hoisted one.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesUpdatesResolvedCopy() throws Exception {
+        File dir = copyResourceDir("workspace");
+        File packageLock = new File(dir, "package-lock.json");
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode lock = (ObjectNode) mapper.readTree(packageLock);
+        ObjectNode nested = ((ObjectNode) lock.get("packages")).putObject("packages/app/node_modules/express");
+        nested.put("version", "4.0.0");
+        nested.put("resolved", "https://registry.npmjs.org/express/-/express-4.0.0.tgz");
+        mapper.writeValue(packageLock, lock);
+
+        NpmPackage app = new NpmPackageImpl(
+                new File(dir, "packages/app/package.json"),
+                new PackageLock(packageLock, new ObjectMapper()),
+                "packages/app");
+        List<Project> projects = new ArrayList<>();
+        projects.add(app);
+        new NpmDependencyVersionManipulator(Collections.singletonMap("express", "4.17.1"), Collections.emptyMap())
+                .applyChanges(projects);
+        app.update();
+
+        JsonNode packages = mapper.readTree(packageLock).get("packages");
+        JsonNode appExpress = packages.get("packages/app/node_modules/express");
+        assertEquals("4.17.1", appExpress.get("version").asText());
+        assertEquals("https://registry.npmjs.org/express/-/express-4.17.1.tgz", appExpress.get("resolved").asText());
+        assertEquals("4.16.4", packages.get("node_modules/express").get("version").asText());
+        // the legacy section has no entry of a copy nested in a workspace package, the hoisted one is kept
+        JsonNode legacyExpress = mapper.readTree(packageLock).get("dependencies").get("express");
+        assertEquals("4.16.4", legacyExpress.get("version").asText());
+        assertEquals("sha512-BBBB", legacyExpress.get("integrity").asText());
+
+        assertArrayEquals(
+                new String[] { "dependencies", "some-lib", "dependencies", "@ourscope/core" },
+                NpmPackageImpl.getLegacyEntry("node_modules/some-lib/node_modules/@ourscope/core"));
+        assertNull(NpmPackageImpl.getLegacyEntry("packages/app/node_modules/express"));
+    }
+
+    /**
+     * Tests that the overrides of all the dependency sections are applied and reported.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesToAllSections() throws Exception {
+        File dir = folder.newFolder("sections");
+        File packageJson = new File(dir, "package.json");
+        FileUtils.writeStringToFile(
+                packageJson,
+                "{\"name\": \"sections\", \"version\": \"1.0.0\", \"dependencies\": {\"express\": \"^4.16.0\"}, "
+                        + "\"peerDependencies\": {\"react\": \"^17.0.0\", \"express\": \"^4.0.0\"}, "
+                        + "\"optionalDependencies\": {\"fsevents\": \"^2.0.0\"}}",
+                StandardCharsets.UTF_8);
+
+        Properties userProps = new Properties();
+        userProps.setProperty("dependencyOverride.express", "4.17.1");
+        userProps.setProperty("peerDependencyOverride.react", "^18.0.0");
+        userProps.setProperty("optionalDependencyOverride.fsevents", "2.3.3");
+        NpmManipulationSession session = new NpmManipulationSession(dir, null, new Properties(), userProps);
+        NpmDependencyVersionManipulator manipulator = new NpmDependencyVersionManipulator();
+        assertTrue(manipulator.init(session));
+
+        NpmPackage npmPackage = new NpmPackageImpl(packageJson, null);
+        Map<String, String> peerDependencies = npmPackage.getDependencyView()
+                .asMap(DependencySection.PEER_DEPENDENCIES);
+        assertEquals(1, manipulator.applyChanges(Collections.singletonList(npmPackage)).size());
+
+        DependencyView view = npmPackage.getDependencyView();
+        assertEquals("4.17.1", view.get(DependencySection.DEPENDENCIES, "express"));
+        assertEquals("^4.0.0", view.get(DependencySection.PEER_DEPENDENCIES, "express"));
+        assertEquals("^18.0.0", view.get(DependencySection.PEER_DEPENDENCIES, "react"));
+        assertEquals("2.3.3", view.get(DependencySection.OPTIONAL_DEPENDENCIES, "fsevents"));
+        assertNull(view.get(DependencySection.DEV_DEPENDENCIES, "express"));
+        // the view is backed by the package tree
+        assertEquals("^18.0.0", peerDependencies.get("react"));
+        assertEquals(2, peerDependencies.size());
+
+        NpmResult result = session.getResult();
+        assertEquals(Collections.singletonMap("express", "4.17.1"), result.getDependenciesMap());
+        assertEquals(Collections.singletonMap("react", "^18.0.0"), result.getPeerDependenciesMap());
+        assertEquals(Collections.singletonMap("fsevents", "2.3.3"), result.getOptionalDependenciesMap());
+        assertTrue(result.getDevDependenciesMap().isEmpty());
+    }
+
+    private File copyResourceDir(String name) throws IOException {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(name);
+        File dir = folder.newFolder(name);
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+        return dir;
+    }
 }
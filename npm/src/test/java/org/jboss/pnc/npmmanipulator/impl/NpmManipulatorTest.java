@@ -0,0 +1,265 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.jboss.pnc.npmmanipulator.dastub.DAStubServer;
+import org.jboss.pnc.npmmanipulator.impl.patch.JsonPatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.MDC;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * Test class for {@link NpmManipulator}.
+ */
+public class NpmManipulatorTest {
+
+    private static final int RUNS = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that concurrent manipulations sharing one instance do not affect each other.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void manipulateConcurrently() throws Exception {
+        NpmManipulator manipulator = new NpmManipulator();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<NpmManipulationResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < RUNS; i++) {
+                File dir = folder.newFolder("project" + i);
+                FileUtils.writeStringToFile(
+                        new File(dir, "package.json"),
+                        "{\"name\": \"package" + i + "\", \"version\": \"1.0." + i + "\"}",
+                        StandardCharsets.UTF_8);
+                NpmManipulationRequest request = NpmManipulationRequest.builder(dir)
+                        .userProperty("restURL", "http://localhost/da/rest/v-1")
+                        .userProperty("versioningStrategy", "HYPHENED")
+                        .userProperty("versionIncrementalSuffix", "redhat")
+                        .userProperty("packageScope", "scope" + i)
+                        .availableVersions(
+                                Collections.singletonMap(
+                                        "@scope" + i + "/package" + i,
+                                        Collections.singleton("1.0." + i + "-redhat-" + i)))
+                        .logContext("run" + i)
+                        .build();
+                responses.add(executor.submit(() -> manipulator.manipulate(request)));
+            }
+
+            ObjectMapper mapper = new ObjectMapper();
+            for (int i = 0; i < RUNS; i++) {
+                NpmResult result = responses.get(i).get().getResult();
+                String expectedVersion = "1.0." + i + "-redhat-" + (i + 1);
+                assertEquals("@scope" + i + "/package" + i, result.getName());
+                assertEquals(expectedVersion, result.getVersion());
+                File packageFile = new File(folder.getRoot(), "project" + i + "/package.json");
+                assertEquals(expectedVersion, mapper.readTree(packageFile).get("version").asText());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertNull(MDC.get("LOG-CONTEXT"));
+    }
+
+    /**
+     * Tests that the dry run does not touch the files and reports patches producing the same files as a real run.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void dryRun() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File dryDir = folder.newFolder("dry");
+        File realDir = folder.newFolder("real");
+        FileUtils.copyDirectory(new File(url.getPath()), dryDir);
+        FileUtils.copyDirectory(new File(url.getPath()), realDir);
+        File resultFile = new File(folder.getRoot(), "result.json");
+
+        NpmManipulator manipulator = new NpmManipulator();
+        manipulator.manipulate(overrideRequest(dryDir).userProperty("dryRun", "true").resultFile(resultFile).build());
+        manipulator.manipulate(overrideRequest(realDir).build());
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode patches = mapper.readTree(resultFile).get("patches");
+        for (String name : new String[] { "package.json", "package-lock.json" }) {
+            File original = new File(url.getPath(), name);
+            assertEquals(
+                    FileUtils.readFileToString(original, StandardCharsets.UTF_8),
+                    FileUtils.readFileToString(new File(dryDir, name), StandardCharsets.UTF_8));
+
+            JsonPatch patch = new JsonPatch();
+            patch.getOperations().addAll((ArrayNode) patches.get(name));
+            assertEquals(mapper.readTree(new File(realDir, name)), patch.apply(mapper.readTree(original)));
+        }
+    }
+
+    /**
+     * Tests that a lock file processed in bounded memory mode is changed in the same way as a loaded one.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void boundedMemory() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File boundedDir = folder.newFolder("bounded");
+        File loadedDir = folder.newFolder("loaded");
+        FileUtils.copyDirectory(new File(url.getPath()), boundedDir);
+        FileUtils.copyDirectory(new File(url.getPath()), loadedDir);
+
+        NpmManipulator manipulator = new NpmManipulator();
+        manipulator.manipulate(
+                overrideRequest(boundedDir).userProperty(NpmManipulationSession.BOUNDED_MEMORY_THRESHOLD_PARAM, "0")
+                        .build());
+        manipulator.manipulate(overrideRequest(loadedDir).build());
+
+        ObjectMapper mapper = new ObjectMapper();
+        File boundedLock = new File(boundedDir, "package-lock.json");
+        JsonNode lock = mapper.readTree(boundedLock);
+        assertEquals("@myscope/lock-example", lock.get("name").asText());
+        assertEquals("1.0.0-redhat-00001", lock.get("version").asText());
+        assertEquals(mapper.readTree(new File(loadedDir, "package-lock.json")), lock);
+    }
+
+    /**
+     * Tests that the result contains the timers and counters of the manipulation.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void metrics() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File dir = folder.newFolder("metrics");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+        File resultFile = new File(folder.getRoot(), "result.json");
+
+        new NpmManipulator().manipulate(overrideRequest(dir).resultFile(resultFile).build());
+
+        JsonNode metrics = new ObjectMapper().readTree(resultFile).get("metrics");
+        JsonNode timers = metrics.get("timers");
+        assertTrue(timers.get(ManipulationMetrics.PARSE).get("count").asInt() >= 2);
+        assertEquals(1, timers.get("manipulator.NpmPackageVersionManipulator").get("count").asInt());
+        assertEquals(1, timers.get("manipulator.NpmRegistryManipulator").get("count").asInt());
+        assertEquals(1, timers.get(ManipulationMetrics.WRITE).get("count").asInt());
+        JsonNode counters = metrics.get("counters");
+        assertEquals(1, counters.get(ManipulationMetrics.PACKAGES).asInt());
+        assertEquals(1, counters.get(ManipulationMetrics.PACKAGES_CHANGED).asInt());
+        long written = new File(dir, "package.json").length() + new File(dir, "package-lock.json").length();
+        assertEquals(written, counters.get(ManipulationMetrics.BYTES_WRITTEN).asLong());
+        assertTrue(counters.get(ManipulationMetrics.BYTES_READ).asLong() > 0);
+    }
+
+    /**
+     * Tests that the available versions of all the workspace packages are queried from Dependency Analysis in one
+     * request.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void restVersions() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("workspace");
+        File dir = folder.newFolder("rest");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+
+        try (DAStubServer server = new DAStubServer()) {
+            server.setAvailableVersions("core", "1.0.0-redhat-1", "1.0.0-redhat-2");
+            new NpmManipulator().manipulate(
+                    NpmManipulationRequest.builder(dir)
+                            .userProperty("workspaces", "true")
+                            .userProperty("restURL", server.getRestUrl())
+                            .userProperty("versioningStrategy", "HYPHENED")
+                            .userProperty("versionIncrementalSuffix", "redhat")
+                            .build());
+
+            assertEquals(1, server.getRequestCount());
+            assertEquals(3, server.getPackageCount());
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(
+                "1.0.0-redhat-3",
+                mapper.readTree(new File(dir, "packages/core/package.json")).get("version").asText());
+        assertEquals(
+                "1.0.0-redhat-1",
+                mapper.readTree(new File(dir, "packages/app/package.json")).get("version").asText());
+    }
+
+    /**
+     * Tests that an invalid numeric property is reported before any file is read.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void invalidNumericProperties() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File dir = folder.newFolder("invalid");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+
+        assertInvalid(dir, NpmManipulationSession.STRING_POOL_SIZE_PARAM, "-1");
+        assertInvalid(dir, NpmManipulationSession.STRING_POOL_SIZE_PARAM, "many");
+        assertInvalid(dir, NpmManipulationSession.BOUNDED_MEMORY_THRESHOLD_PARAM, "-5");
+        assertInvalid(dir, NpmManipulationSession.BOUNDED_MEMORY_THRESHOLD_PARAM, "64MiB");
+    }
+
+    private static void assertInvalid(File dir, String property, String value) throws Exception {
+        File packageFile = new File(dir, "package.json");
+        String original = FileUtils.readFileToString(packageFile, StandardCharsets.UTF_8);
+        try {
+            new NpmManipulator().manipulate(overrideRequest(dir).userProperty(property, value).build());
+            fail("The value " + value + " of " + property + " should be rejected");
+        } catch (ManipulationException ex) {
+            assertEquals(
+                    "Invalid value '" + value + "' of property " + property + ", a non-negative number is expected.",
+                    ex.getMessage());
+        }
+        assertEquals(original, FileUtils.readFileToString(packageFile, StandardCharsets.UTF_8));
+    }
+
+    private static NpmManipulationRequest.Builder overrideRequest(File dir) {
+        return NpmManipulationRequest.builder(dir)
+                .userProperty("versionOverride", "1.0.0-redhat-00001")
+                .userProperty("packageScope", "myscope")
+                .userProperty("dependencyOverride.express", "4.17.1")
+                .userProperty("registryOverride.https://registry.npmjs.org/", "https://mirror.example.com/npm/");
+    }
+
+}
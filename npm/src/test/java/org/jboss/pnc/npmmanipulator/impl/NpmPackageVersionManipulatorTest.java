@@ -23,16 +23,26 @@ package org.jboss.pnc.npmmanipulator.impl;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.io.File;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 
+import org.apache.commons.io.FileUtils;
 import org.jboss.pnc.npmmanipulator.api.ManipulationException;
 import org.jboss.pnc.npmmanipulator.api.Project;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 /**
  * Test class for {@link NpmPackageVersionManipulator}.
@@ -41,6 +51,9 @@ import org.junit.Test;
  */
 public class NpmPackageVersionManipulatorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Tests that the {@link NpmPackageVersionManipulator#findHighestIncrementalNum(String, Set)} returns 0 when the
      * available version set is empty.
@@ -375,19 +388,26 @@ public class NpmPackageVersionManipulatorTest {
             }
 
             @Override
-            public Map<String, String> getDependencies() throws ManipulationException {
-                return Collections.emptyMap();
+            public DependencyView getDependencyView() throws ManipulationException {
+                return new DependencyView(JsonNodeFactory.instance.objectNode());
+            }
 
+            @Override
+            public void setDependencyVersion(String dependencyName, String version, DependencySection section)
+                    throws ManipulationException {
             }
 
             @Override
-            public Map<String, String> getDevDependencies() throws ManipulationException {
-                return Collections.emptyMap();
+            public boolean rewriteLockFileField(String fieldName, UnaryOperator<String> rewriter) {
+                return false;
             }
 
             @Override
-            public void setDependencyVersion(String dependencyName, String version, boolean isDevelopment)
-                    throws ManipulationException {
+            public boolean updateDependencyReference(
+                    String dependencyName,
+                    String newName,
+                    UnaryOperator<String> rangeUpdate) {
+                return false;
             }
 
         });
@@ -397,4 +417,45 @@ public class NpmPackageVersionManipulatorTest {
         assertThat(((NpmPackage) changed.iterator().next()).getVersion(), is(versionOverride));
     }
 
+    /**
+     * Tests that in lockstep mode all the workspace packages get the same version with the suffix number higher than
+     * any available version of any of the packages.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesLockstep() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("workspace");
+        File dir = folder.newFolder("workspace");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+
+        Properties userProps = new Properties();
+        userProps.setProperty(NpmManipulationSession.WORKSPACES_PARAM, "true");
+        userProps.setProperty(NpmPackageVersionManipulator.VERSION_LOCKSTEP_PARAM, "true");
+        userProps.setProperty("restURL", "http://localhost/da/rest/v-1");
+        userProps.setProperty("versioningStrategy", "HYPHENED");
+        userProps.setProperty("versionIncrementalSuffix", "redhat");
+        userProps.setProperty("versionIncrementalSuffixPadding", "5");
+        NpmManipulationSession session = new NpmManipulationSession(dir, null, new Properties(), userProps);
+
+        Map<String, Set<String>> availableVersions = new HashMap<>();
+        availableVersions.put("core", Collections.singleton("1.0.0-redhat-00003"));
+        availableVersions.put("app", Collections.singleton("1.0.0-redhat-00001"));
+        session.setState(DAVersionsCollector.AVAILABLE_VERSIONS, availableVersions);
+
+        NpmPackageVersionManipulator manipulator = new NpmPackageVersionManipulator();
+        assertThat(manipulator.init(session), is(true));
+        List<Project> projects = session.getProjects();
+        Set<Project> changed = manipulator.applyChanges(projects);
+
+        assertThat(changed.size(), is(3));
+        for (Project project : projects) {
+            assertThat(((NpmPackage) project).getVersion(), is("1.0.0-redhat-00004"));
+        }
+        assertThat(((NpmPackage) projects.get(1)).getDependencies().get("core"), is("^1.0.0-redhat-00004"));
+        assertThat(session.getResult().getVersion(), is("1.0.0-redhat-00004"));
+        assertThat(session.getResult().getVersionsMap().size(), is(3));
+        assertThat(session.getResult().getVersionsMap().get("core"), is("1.0.0-redhat-00004"));
+    }
+
 }
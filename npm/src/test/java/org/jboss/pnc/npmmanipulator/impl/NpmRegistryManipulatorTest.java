@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test class for {@link NpmRegistryManipulator}.
+ */
+public class NpmRegistryManipulatorTest {
+
+    private static final String MIRROR = "https://mirror.example.com/api/npm/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the longest matching prefix is used.
+     */
+    @Test
+    public void rewriteLongestPrefix() {
+        Map<String, String> mappings = new LinkedHashMap<>();
+        mappings.put("https://registry.npmjs.org/", MIRROR);
+        mappings.put("https://registry.npmjs.org/@ourscope/", "https://internal.example.com/npm/@ourscope/");
+        NpmRegistryManipulator manipulator = new NpmRegistryManipulator(mappings);
+
+        assertEquals(
+                MIRROR + "express/-/express-4.16.4.tgz",
+                manipulator.rewrite("https://registry.npmjs.org/express/-/express-4.16.4.tgz"));
+        assertEquals(
+                "https://internal.example.com/npm/@ourscope/core/-/core-1.0.3.tgz",
+                manipulator.rewrite("https://registry.npmjs.org/@ourscope/core/-/core-1.0.3.tgz"));
+        assertEquals("packages/foo", manipulator.rewrite("packages/foo"));
+    }
+
+    /**
+     * Tests that the registry rewrite and a dependency override are applied to the lock file in the same pass.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesWithDependencyOverride() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File dir = folder.newFolder("lock");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+        File packageLock = new File(dir, "package-lock.json");
+
+        NpmPackage npmPackage = new NpmPackageImpl(new File(dir, "package.json"), packageLock);
+        List<Project> projects = Collections.singletonList(npmPackage);
+
+        new NpmDependencyVersionManipulator(Collections.singletonMap("express", "4.17.1"), Collections.emptyMap())
+                .applyChanges(projects);
+        new NpmRegistryManipulator(Collections.singletonMap("https://registry.npmjs.org/", MIRROR))
+                .applyChanges(projects);
+        npmPackage.update();
+
+        JsonNode packages = new ObjectMapper().readTree(packageLock).get("packages");
+        assertEquals(
+                MIRROR + "express/-/express-4.17.1.tgz",
+                packages.get("node_modules/express").get("resolved").asText());
+        assertEquals(
+                MIRROR + "@ourscope/core/-/core-1.0.3.tgz",
+                packages.get("node_modules/@ourscope/core").get("resolved").asText());
+        assertEquals(
+                MIRROR + "express/-/express-3.0.0.tgz",
+                packages.get("node_modules/some-lib/node_modules/express").get("resolved").asText());
+    }
+
+    /**
+     * Tests that the rewrite is found out to change a lock file only when it is streamed, and that a lock file whose
+     * URLs are already rewritten is left untouched.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesToRewrittenLock() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File dir = folder.newFolder("lock");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+        File packageLock = new File(dir, "package-lock.json");
+        NpmRegistryManipulator manipulator = new NpmRegistryManipulator(
+                Collections.singletonMap("https://registry.npmjs.org/", MIRROR));
+
+        NpmPackageImpl npmPackage = new NpmPackageImpl(new File(dir, "package.json"), packageLock);
+        assertTrue(manipulator.applyChanges(Collections.singletonList(npmPackage)).isEmpty());
+        assertTrue(npmPackage.hasLockFileEdits());
+        assertTrue(npmPackage.updateLockFile());
+        long modified = packageLock.lastModified();
+        byte[] content = FileUtils.readFileToByteArray(packageLock);
+
+        NpmPackageImpl rewritten = new NpmPackageImpl(new File(dir, "package.json"), packageLock);
+        assertTrue(manipulator.applyChanges(Collections.singletonList(rewritten)).isEmpty());
+        assertTrue(rewritten.hasLockFileEdits());
+        assertFalse(rewritten.updateLockFile());
+        assertEquals(modified, packageLock.lastModified());
+        assertArrayEquals(content, FileUtils.readFileToByteArray(packageLock));
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.ManipulationMetrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Test class for {@link ResultCache}.
+ */
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that a rerun with identical inputs replays the stored result and files and that a changed property misses
+     * the cache.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void replayIdenticalInputs() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("lock");
+        File source = new File(url.getPath());
+        File resultFile = new File(folder.getRoot(), "result.json");
+        File cacheFile = new File(resultFile.getPath() + ResultCache.CACHE_FILE_SUFFIX);
+        NpmManipulator manipulator = new NpmManipulator();
+
+        File first = folder.newFolder("first");
+        FileUtils.copyDirectory(source, first);
+        manipulator.manipulate(request(first, resultFile, "1.0.0-redhat-00001"));
+        assertTrue(cacheFile.isFile());
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode firstResult = (ObjectNode) mapper.readTree(resultFile);
+        firstResult.remove("metrics");
+        long cacheModified = cacheFile.lastModified();
+
+        // the cache is not rewritten on replay, so make the cache file distinguishable from a rewritten one
+        assertTrue(cacheFile.setLastModified(cacheModified - 10_000));
+        File second = folder.newFolder("second");
+        FileUtils.copyDirectory(source, second);
+        assertTrue(resultFile.delete());
+        manipulator.manipulate(request(second, resultFile, "1.0.0-redhat-00001"));
+
+        assertEquals(cacheModified - 10_000, cacheFile.lastModified());
+        ObjectNode secondResult = (ObjectNode) mapper.readTree(resultFile);
+        assertFalse(secondResult.path("metrics").path("counters").has(ManipulationMetrics.PACKAGES_CHANGED));
+        secondResult.remove("metrics");
+        assertEquals(firstResult, secondResult);
+        for (String name : new String[] { "package.json", "package-lock.json" }) {
+            assertEquals(
+                    FileUtils.readFileToString(new File(first, name), StandardCharsets.UTF_8),
+                    FileUtils.readFileToString(new File(second, name), StandardCharsets.UTF_8));
+        }
+
+        File third = folder.newFolder("third");
+        FileUtils.copyDirectory(source, third);
+        manipulator.manipulate(request(third, resultFile, "1.0.0-redhat-00002"));
+
+        assertFalse(cacheFile.lastModified() == cacheModified - 10_000);
+        JsonNode result = mapper.readTree(resultFile);
+        assertEquals("1.0.0-redhat-00002", result.get("version").asText());
+        JsonNode lock = mapper.readTree(new File(third, "package-lock.json"));
+        assertEquals("1.0.0-redhat-00002", lock.get("version").asText());
+    }
+
+    private static NpmManipulationRequest request(File dir, File resultFile, String version) {
+        return NpmManipulationRequest.builder(dir)
+                .userProperty(ResultCache.RESULT_CACHE_PARAM, "true")
+                .userProperty("versionOverride", version)
+                .resultFile(resultFile)
+                .build();
+    }
+
+}
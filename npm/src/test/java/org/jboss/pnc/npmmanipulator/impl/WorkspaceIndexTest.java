@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.Manipulator;
+import org.jboss.pnc.npmmanipulator.api.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Test class for {@link WorkspaceIndex}.
+ */
+public class WorkspaceIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the version is replaced only in ranges referencing exactly the old version.
+     */
+    @Test
+    public void updateRange() {
+        assertEquals("1.1.0", WorkspaceIndex.updateRange("1.0.0", "1.0.0", "1.1.0"));
+        assertEquals("^1.1.0", WorkspaceIndex.updateRange("^1.0.0", "1.0.0", "1.1.0"));
+        assertEquals(">=1.1.0", WorkspaceIndex.updateRange(">=1.0.0", "1.0.0", "1.1.0"));
+        assertEquals("workspace:~1.1.0", WorkspaceIndex.updateRange("workspace:~1.0.0", "1.0.0", "1.1.0"));
+        assertEquals("workspace:*", WorkspaceIndex.updateRange("workspace:*", "1.0.0", "1.1.0"));
+        assertEquals("^1.0.0 || ^2.0.0", WorkspaceIndex.updateRange("^1.0.0 || ^2.0.0", "1.0.0", "1.1.0"));
+    }
+
+    /**
+     * Tests that renaming and version change of a workspace package are propagated to the workspace packages depending
+     * on it in any dependency section, both in their package files and in the shared lock file.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void applyChangesUpdatesDependents() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("workspace");
+        File dir = folder.newFolder("workspace");
+        FileUtils.copyDirectory(new File(url.getPath()), dir);
+        ObjectMapper mapper = new ObjectMapper();
+        File appFile = new File(dir, "packages/app/package.json");
+        ObjectNode appPackage = (ObjectNode) mapper.readTree(appFile);
+        appPackage.putObject("peerDependencies").put("core", "^1.0.0");
+        appPackage.putArray("bundleDependencies").add("core");
+        mapper.writeValue(appFile, appPackage);
+
+        Properties userProps = new Properties();
+        userProps.setProperty(NpmManipulationSession.WORKSPACES_PARAM, "true");
+        userProps.setProperty("packageScope", "acme");
+        userProps.setProperty("versionOverride", "1.1.0");
+        NpmManipulationSession session = new NpmManipulationSession(dir, null, new Properties(), userProps);
+
+        List<Project> projects = session.getProjects();
+        assertEquals(3, projects.size());
+
+        Set<Project> changed = new HashSet<>();
+        for (Manipulator<NpmResult> manipulator : session.getActiveManipulators()) {
+            changed.addAll(manipulator.applyChanges(projects));
+        }
+        for (Project project : changed) {
+            project.update();
+        }
+
+        assertEquals("@acme/workspace-example", session.getResult().getName());
+        assertEquals("1.1.0", session.getResult().getVersion());
+
+        JsonNode app = mapper.readTree(appFile);
+        assertEquals("@acme/app", app.get("name").asText());
+        assertEquals("^1.1.0", app.get("dependencies").get("@acme/core").asText());
+        assertFalse(app.get("dependencies").has("core"));
+        assertEquals("@acme/core", app.get("dependencies").fieldNames().next());
+        assertEquals("^1.1.0", app.get("peerDependencies").get("@acme/core").asText());
+        assertEquals("@acme/core", app.get("bundleDependencies").get(0).asText());
+
+        JsonNode ignored = mapper.readTree(new File(dir, "packages/ignored/package.json"));
+        assertEquals("1.0.0", ignored.get("dependencies").get("core").asText());
+
+        JsonNode lock = mapper.readTree(new File(dir, "package-lock.json"));
+        JsonNode packages = lock.get("packages");
+        assertEquals("@acme/workspace-example", lock.get("name").asText());
+        assertEquals("1.1.0", packages.get("").get("version").asText());
+        assertEquals("@acme/core", packages.get("packages/core").get("name").asText());
+        assertEquals("1.1.0", packages.get("packages/core").get("version").asText());
+        assertEquals("^1.1.0", packages.get("packages/app").get("dependencies").get("@acme/core").asText());
+        assertEquals("packages/core", packages.get("node_modules/@acme/core").get("resolved").asText());
+        assertNull(packages.get("node_modules/core"));
+        assertEquals("file:packages/core", lock.get("dependencies").get("@acme/core").get("version").asText());
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.da;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.commonjava.atlas.npm.ident.ref.NpmPackageRef;
+import org.jboss.pnc.npmmanipulator.dastub.DAStubServer;
+import org.jboss.pnc.npmmanipulator.dastub.DAStubServer.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.zafarkhaja.semver.Version;
+
+/**
+ * Test class for {@link DAClient} against the {@link DAStubServer}.
+ */
+public class DAClientTest {
+
+    private static final NpmPackageRef EXPRESS = new NpmPackageRef("express", Version.valueOf("4.16.4"));
+
+    private static final NpmPackageRef CORE = new NpmPackageRef("@ourscope/core", Version.valueOf("1.0.3"));
+
+    private DAStubServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new DAStubServer();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    /**
+     * Tests that all the packages are sent in one request and the versions are read from the response.
+     */
+    @Test
+    public void availableVersions() {
+        server.setAvailableVersions("express", "4.16.4-redhat-1", "4.16.4-redhat-2").setVersionsPerPackage(1);
+
+        Map<NpmPackageRef, List<String>> versions = client(10).getExistingVersions(Arrays.asList(EXPRESS, CORE));
+
+        assertEquals(Arrays.asList("4.16.4-redhat-1", "4.16.4-redhat-2"), versions.get(EXPRESS));
+        assertEquals(Collections.singletonList("1.0.3-redhat-1"), versions.get(CORE));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(Arrays.asList("express", "@ourscope/core"), server.getRequests().get(0));
+    }
+
+    /**
+     * Tests the error responses handled by {@link ReportMapper}.
+     */
+    @Test
+    public void errorResponses() {
+        server.enqueue(Response.error(500, "IllegalArgumentException", "Bad request", "No packages"))
+                .enqueue(Response.html(502, "<html><body><h1>Bad Gateway</h1></body></html>"))
+                .enqueue(Response.empty(503));
+
+        assertFailure("Received response status 500 with message: IllegalArgumentException Bad request No packages");
+        assertFailure("Received response status 502 with message: Bad Gateway");
+        assertFailure("Received response status 503 with message: No content to read.");
+        assertEquals(3, server.getRequestCount());
+
+        // the queue is drained, so the versions are served again
+        assertEquals(1, client(10).getExistingVersions(Collections.singletonList(EXPRESS)).size());
+    }
+
+    /**
+     * Tests that a response slower than the socket timeout fails the request.
+     */
+    @Test
+    public void latencyOverSocketTimeout() {
+        server.setLatency(1500);
+        try {
+            client(1).getExistingVersions(Collections.singletonList(EXPRESS));
+            fail("The request should time out");
+        } catch (DAException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("express"));
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private DAClient client(long socketTimeout) {
+        return new DAClient(server.getRestUrl(), null, 1, socketTimeout);
+    }
+
+    private void assertFailure(String message) {
+        try {
+            client(10).getExistingVersions(Collections.singletonList(EXPRESS));
+            fail("The request should fail with " + message);
+        } catch (DAException ex) {
+            assertEquals(message, ex.getMessage());
+        }
+    }
+
+}
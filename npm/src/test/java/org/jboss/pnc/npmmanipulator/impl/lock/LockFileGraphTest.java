@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Test class for {@link LockFileGraph}.
+ */
+public class LockFileGraphTest {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    /**
+     * Tests that the dependencies resolve to the nearest installed copy and workspace links to the linked packages.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void readPackages() throws Exception {
+        LockFileGraph graph = read("workspace");
+        int root = graph.getNode("");
+        int app = graph.getNode("packages/app");
+        int core = graph.getNode("packages/core");
+        int express = graph.getNode("node_modules/express");
+
+        assertEquals("workspace-example", graph.getName(root));
+        assertEquals("core", graph.getName(core));
+        assertEquals("4.16.4", graph.getVersion(express));
+        assertEquals(core, graph.resolve(app, "core"));
+        assertEquals(express, graph.resolve(app, "express"));
+        assertArrayEquals(new int[] { app }, graph.getDependents(core));
+        assertArrayEquals(new int[] { app }, graph.getDependents(express));
+        assertEquals(-1, graph.getNode("node_modules/missing"));
+
+        LockFileGraph nested = read("lock");
+        assertEquals(2, nested.getNodes("express").length);
+        assertEquals("node_modules/express", nested.getPath(nested.resolve(nested.getNode(""), "express")));
+        assertEquals("node_modules/grunt", nested.getPath(nested.resolve(nested.getNode(""), "grunt")));
+    }
+
+    /**
+     * Tests the nested dependencies of a lock file version 1.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void readDependencies() throws Exception {
+        String lock = "{\"lockfileVersion\": 1, \"dependencies\": {"
+                + "\"app\": {\"version\": \"file:packages/app\", \"requires\": {\"lib\": \"^1.0.0\"}},"
+                + "\"lib\": {\"version\": \"1.0.0\", \"requires\": {\"util\": \"^2.0.0\"},"
+                + "  \"dependencies\": {\"util\": {\"version\": \"2.0.0\"}}},"
+                + "\"util\": {\"version\": \"1.0.0\"}}}";
+        LockFileGraph graph;
+        try (JsonParser parser = factory.createParser(lock)) {
+            graph = LockFileGraph.read(parser);
+        }
+        int app = graph.getNode("packages/app");
+        int lib = graph.getNode("node_modules/lib");
+        int nestedUtil = graph.getNode("node_modules/lib/node_modules/util");
+
+        assertEquals(lib, graph.resolve(app, "lib"));
+        assertEquals(nestedUtil, graph.resolve(lib, "util"));
+        assertEquals("2.0.0", graph.getVersion(nestedUtil));
+        assertArrayEquals(new int[0], graph.getDependents(graph.getNode("node_modules/util")));
+        BitSet dependents = graph.getTransitiveDependents(nestedUtil);
+        assertEquals(2, dependents.cardinality());
+        assertTrue(dependents.get(app));
+    }
+
+    /**
+     * Tests the transitive closures on a chain of many packages.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void transitiveClosures() throws Exception {
+        int size = 50_000;
+        StringBuilder lock = new StringBuilder("{\"lockfileVersion\": 3, \"packages\": {");
+        lock.append("\"\": {\"name\": \"root\", \"dependencies\": {\"pkg-0\": \"1.0.0\"}}");
+        for (int i = 0; i < size; i++) {
+            lock.append(", \"node_modules/pkg-").append(i).append("\": {\"version\": \"1.0.0\"");
+            if (i + 1 < size) {
+                lock.append(", \"dependencies\": {\"pkg-").append(i + 1).append("\": \"1.0.0\"}");
+            }
+            lock.append('}');
+        }
+        lock.append("}}");
+        LockFileGraph graph;
+        try (JsonParser parser = factory.createParser(lock.toString())) {
+            graph = LockFileGraph.read(parser);
+        }
+
+        int last = graph.getNode("node_modules/pkg-" + (size - 1));
+        assertEquals(size + 1, graph.size());
+        assertEquals(size, graph.getTransitiveDependents(last).cardinality());
+        assertEquals(size, graph.getTransitiveDependencies(graph.getNode("")).cardinality());
+        assertArrayEquals(new int[] { last - 1 }, graph.getDependents(last));
+    }
+
+    private LockFileGraph read(String resource) throws IOException {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(resource);
+        try (JsonParser parser = factory.createParser(new File(url.getPath(), "package-lock.json"))) {
+            return LockFileGraph.read(parser);
+        }
+    }
+
+}
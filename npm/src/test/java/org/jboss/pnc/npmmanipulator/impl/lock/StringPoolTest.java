@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test class for {@link StringPool}.
+ */
+public class StringPoolTest {
+
+    private static final String INTEGRITY = "sha512-" + "a".repeat(86) + "==";
+
+    /**
+     * Tests that the short values of separately parsed trees share the text nodes and the long ones do not.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void shareParsedValues() throws Exception {
+        StringPool pool = new StringPool(StringPool.DEFAULT_MAX_SIZE);
+        ObjectMapper mapper = new ObjectMapper().setNodeFactory(pool.nodeFactory());
+        String json = "{\"express\": {\"version\": \"4.16.4\", \"integrity\": \"" + INTEGRITY + "\"}, "
+                + "\"debug\": {\"version\": \"4.16.4\", \"integrity\": \"" + INTEGRITY + "\"}}";
+
+        JsonNode first = mapper.readTree(json);
+        JsonNode second = mapper.readTree(json);
+
+        assertSame(first.at("/express/version"), first.at("/debug/version"));
+        assertSame(first.at("/express/version"), second.at("/express/version"));
+        assertNotSame(first.at("/express/integrity"), second.at("/express/integrity"));
+        assertEquals(INTEGRITY, second.at("/express/integrity").asText());
+        assertEquals(1, pool.size());
+    }
+
+    /**
+     * Tests that no strings are added over the maximum size, but the pooled ones are still shared.
+     */
+    @Test
+    public void boundedSize() {
+        StringPool pool = new StringPool(2);
+        String first = pool.canonicalize(new String("1.0.0"));
+        pool.canonicalize("2.0.0");
+        String third = new String("3.0.0");
+
+        assertSame(third, pool.canonicalize(third));
+        assertSame(first, pool.canonicalize(new String("1.0.0")));
+        assertEquals(2, pool.size());
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.override;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.npmmanipulator.api.ManipulationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link OverrideManifest}.
+ */
+public class OverrideManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests loading of a JSON manifest mixing grouped and flat keys.
+     */
+    @Test
+    public void loadJson() throws IOException, ManipulationException {
+        File file = write(
+                "overrides.json",
+                "{\"dependencyOverride\": {\"@ourscope/*\": \"^2.0.0\", \"async\": \"1.5.2\"},\n"
+                        + " \"devDependencyOverride.grunt\": \"~1.0.1\"}");
+
+        OverrideManifest manifest = OverrideManifest.load(file);
+
+        assertEquals(2, manifest.getRules("dependencyOverride").size());
+        assertEquals("^2.0.0", manifest.getRules("dependencyOverride").get("@ourscope/*"));
+        assertEquals("1.5.2", manifest.getRules("dependencyOverride").get("async"));
+        assertEquals("~1.0.1", manifest.getRules("devDependencyOverride").get("grunt"));
+        assertTrue(manifest.getRules("unknownOverride").isEmpty());
+    }
+
+    /**
+     * Tests loading of a properties manifest.
+     */
+    @Test
+    public void loadProperties() throws IOException, ManipulationException {
+        File file = write(
+                "overrides.properties",
+                "dependencyOverride.@ourscope/*=^2.0.0\ndevDependencyOverride.some.dotted.name=3.0.0\n");
+
+        OverrideManifest manifest = OverrideManifest.load(file);
+
+        assertEquals("^2.0.0", manifest.getRules("dependencyOverride").get("@ourscope/*"));
+        assertEquals("3.0.0", manifest.getRules("devDependencyOverride").get("some.dotted.name"));
+    }
+
+    /**
+     * Tests that an unchanged file is parsed only once and a modified one is parsed again.
+     */
+    @Test
+    public void loadCached() throws IOException, ManipulationException {
+        File file = write("overrides.properties", "dependencyOverride.async=1.5.2\n");
+
+        OverrideManifest first = OverrideManifest.load(file);
+        assertSame(first, OverrideManifest.load(file));
+
+        FileUtils.writeStringToFile(file, "dependencyOverride.async=1.5.3\n", StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+        OverrideManifest second = OverrideManifest.load(file);
+        assertNotSame(first, second);
+        assertEquals("1.5.3", second.getRules("dependencyOverride").get("async"));
+    }
+
+    /**
+     * Tests that only the most recently used files are kept in the cache.
+     */
+    @Test
+    public void loadEvicted() throws IOException, ManipulationException {
+        File file = write("overrides.properties", "dependencyOverride.async=1.5.2\n");
+        OverrideManifest first = OverrideManifest.load(file);
+
+        for (int i = 0; i < OverrideManifest.CACHE_SIZE; i++) {
+            OverrideManifest.load(write("other-" + i + ".properties", "dependencyOverride.async=1.5.2\n"));
+        }
+
+        assertNotSame(first, OverrideManifest.load(file));
+    }
+
+    @Test(expected = ManipulationException.class)
+    public void loadInvalidKey() throws IOException, ManipulationException {
+        OverrideManifest.load(write("overrides.json", "{\"async\": \"1.5.2\"}"));
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = folder.newFile(name);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+}
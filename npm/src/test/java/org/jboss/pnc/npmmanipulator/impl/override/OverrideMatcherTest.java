@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.override;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link OverrideMatcher}.
+ */
+public class OverrideMatcherTest {
+
+    /**
+     * Tests that exact names match only themselves.
+     */
+    @Test
+    public void matchExactName() {
+        OverrideMatcher matcher = OverrideMatcher.builder().add("express", "4.16.5").add("cors", "2.7.1").build();
+
+        assertEquals("4.16.5", matcher.match("express"));
+        assertEquals("2.7.1", matcher.match("cors"));
+        assertNull(matcher.match("express-bunyan-logger"));
+        assertNull(matcher.match("expres"));
+    }
+
+    /**
+     * Tests that scope patterns and bare scopes match all the packages in the scope and nothing else.
+     */
+    @Test
+    public void matchScope() {
+        OverrideMatcher matcher = OverrideMatcher.builder()
+                .add("@ourscope/*", "^2.0.0")
+                .add("@other", "^3.0.0")
+                .build();
+
+        assertEquals("^2.0.0", matcher.match("@ourscope/core"));
+        assertEquals("^2.0.0", matcher.match("@ourscope/ui-kit"));
+        assertEquals("^3.0.0", matcher.match("@other/lib"));
+        assertNull(matcher.match("@ourscopes/core"));
+        assertNull(matcher.match("ourscope"));
+        assertNull(matcher.match("@other"));
+    }
+
+    /**
+     * Tests wildcards in various positions of the pattern.
+     */
+    @Test
+    public void matchWildcards() {
+        OverrideMatcher matcher = OverrideMatcher.builder()
+                .add("grunt-*", "~1.0.0")
+                .add("*-loader", "^5.0.0")
+                .add("@babel/plugin-*-syntax", "7.0.0")
+                .build();
+
+        assertEquals("~1.0.0", matcher.match("grunt-fh-build"));
+        assertEquals("~1.0.0", matcher.match("grunt-"));
+        assertEquals("^5.0.0", matcher.match("css-loader"));
+        assertEquals("7.0.0", matcher.match("@babel/plugin-jsx-syntax"));
+        assertEquals("7.0.0", matcher.match("@babel/plugin-a-b-syntax"));
+        assertNull(matcher.match("grunt"));
+        assertNull(matcher.match("css-loaders"));
+        assertNull(matcher.match("@babel/plugin-jsx-syntax-extra"));
+    }
+
+    /**
+     * Tests the precedence of exact names over patterns and of more specific patterns over less specific ones.
+     */
+    @Test
+    public void matchPrecedence() {
+        OverrideMatcher matcher = OverrideMatcher.builder()
+                .add("*", "1.0.0")
+                .add("@ourscope/*", "2.0.0")
+                .add("@ourscope/core-*", "3.0.0")
+                .add("@ourscope/core-utils", "4.0.0")
+                .build();
+
+        assertEquals("1.0.0", matcher.match("express"));
+        assertEquals("2.0.0", matcher.match("@ourscope/ui"));
+        assertEquals("3.0.0", matcher.match("@ourscope/core-api"));
+        assertEquals("4.0.0", matcher.match("@ourscope/core-utils"));
+    }
+
+    /**
+     * Tests that a large number of rules compiles and still matches correctly.
+     */
+    @Test
+    public void matchManyRules() {
+        OverrideMatcher.Builder builder = OverrideMatcher.builder();
+        for (int i = 0; i < 10000; i++) {
+            builder.add("package-" + i, "1.0." + i);
+            builder.add("@scope" + i + "/*", "2.0." + i);
+        }
+        OverrideMatcher matcher = builder.build();
+
+        assertEquals(20000, matcher.size());
+        assertEquals("1.0.4242", matcher.match("package-4242"));
+        assertEquals("2.0.4242", matcher.match("@scope4242/anything"));
+        assertNull(matcher.match("@scope10000/anything"));
+        assertTrue(OverrideMatcher.builder().build().isEmpty());
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018-2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.npmmanipulator.impl.patch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.jboss.pnc.npmmanipulator.impl.lock.LockFileEdits;
+import org.jboss.pnc.npmmanipulator.impl.lock.LockFileRewriter;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test class for {@link JsonPatch}.
+ */
+public class JsonPatchTest {
+
+    private static final String DOCUMENT = "{\"name\": \"a/b\", \"version\": \"1.0.0\", \"files\": [\"lib\", \"bin\"],"
+            + " \"packages\": {\"\": {\"name\": \"a/b\"}, \"node_modules/x~y\": {\"version\": \"1.0.0\","
+            + " \"resolved\": \"https://registry.npmjs.org/x~y/-/x~y-1.0.0.tgz\", \"integrity\": \"sha512-abc\"}},"
+            + " \"list\": [{\"resolved\": \"https://registry.npmjs.org/z.tgz\"}]}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Tests that the difference of two trees applied to the source produces the target.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void diffAndApply() throws Exception {
+        JsonNode source = mapper.readTree(DOCUMENT);
+        JsonNode target = mapper.readTree(
+                "{\"name\": \"@s/a/b\", \"files\": [\"lib\", \"dist\"], \"packages\": {\"\": {\"name\": \"@s/a/b\"},"
+                        + " \"node_modules/x~y\": {\"version\": \"2.0.0\"}}, \"list\": [], \"private\": true}");
+
+        JsonPatch patch = new JsonPatch();
+        patch.diff(source, target);
+
+        assertEquals(target, patch.apply(source));
+        assertEquals(
+                "{\"op\":\"remove\",\"path\":\"/packages/node_modules~1x~0y/resolved\"}",
+                patch.getOperations().get(4).toString());
+    }
+
+    /**
+     * Tests that the edits recorded while streaming a document applied to the input produce the output.
+     *
+     * @throws Exception in case of an error
+     */
+    @Test
+    public void recordStreamedEdits() throws Exception {
+        LockFileEdits edits = new LockFileEdits();
+        edits.rename("node_modules/x~z", "packages", "node_modules/x~y");
+        edits.setValue("2.0.0", "packages", "node_modules/x~y", "version");
+        edits.remove("packages", "node_modules/x~y", "integrity");
+        edits.setValue("2.0.0", "version");
+        edits.rewriteField("resolved", url -> url.replace("registry.npmjs.org", "mirror.example.com"));
+
+        JsonPatch patch = new JsonPatch();
+        StringWriter output = new StringWriter();
+        try (JsonParser parser = mapper.getFactory().createParser(DOCUMENT);
+                JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+            new LockFileRewriter(edits, patch).rewrite(parser, generator);
+        }
+
+        assertEquals(6, patch.size());
+        assertEquals(mapper.readTree(output.toString()), patch.apply(mapper.readTree(DOCUMENT)));
+    }
+
+}